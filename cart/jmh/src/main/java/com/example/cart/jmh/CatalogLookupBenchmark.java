@@ -0,0 +1,48 @@
+package com.example.cart.jmh;
+
+import com.example.cart.pricing.PriceCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** One catalog lookup per op, cycling through 1,024 names in client spelling (mixed case, padded). */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CatalogLookupBenchmark {
+
+    private static final int MASK = 1023;
+
+    private PriceCatalog catalog;
+    private final String[] names = new String[MASK + 1];
+    private final int[] skus = new int[MASK + 1];
+    private int next;
+
+    @Setup
+    public void setUp(CatalogState state) {
+        catalog = state.catalog;
+        for (int i = 0; i <= MASK; i++) {
+            String name = state.catalog.nameOf((i * 7919) % state.catalog.skuCount());
+            names[i] = i % 2 == 0 ? " " + name.toUpperCase() : name;
+            skus[i] = catalog.idOf(name);
+        }
+    }
+
+    @Benchmark
+    public int idOf() {
+        return catalog.idOf(names[next++ & MASK]);
+    }
+
+    @Benchmark
+    public int priceOfName() {
+        return catalog.priceOf(names[next++ & MASK]);
+    }
+
+    @Benchmark
+    public int priceOfSku() {
+        return catalog.priceOf(skus[next++ & MASK]);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.cart.jmh;
+
+import com.example.cart.pricing.PriceCatalog;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A price catalog loaded the way the application loads it, without the web stack.
+ *   fruit  the bundled four-item catalog (price-catalog.properties), held on the heap
+ *   csv    100,000 SKUs from a .csv data file, compiled to an image and memory-mapped
+ */
+@State(Scope.Benchmark)
+public class CatalogState {
+
+    static final int CSV_SKUS = 100_000;
+
+    @Param({"fruit", "csv"})
+    public String mix;
+
+    public PriceCatalog catalog;
+
+    private AnnotationConfigApplicationContext context;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        String file = "";
+        if (mix.equals("csv")) {
+            dir = Files.createTempDirectory("jmh-catalog");
+            Path csv = dir.resolve("catalog.csv");
+            Random rnd = new Random(42);
+            try (BufferedWriter out = Files.newBufferedWriter(csv)) {
+                for (int i = 0; i < CSV_SKUS; i++) {
+                    String offer = i % 7 == 0 ? ",BOGO" : i % 5 == 0 ? ",THREE_FOR_TWO" : "";
+                    out.write("sku" + i + "," + (20 + rnd.nextInt(480)) + offer + "\n");
+                }
+            }
+            file = csv.toString();
+        }
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("jmh", Map.of("cart.catalog.file", file)));
+        context.register(PriceCatalog.class);
+        context.refresh();
+        catalog = context.getBean(PriceCatalog.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        context.close();
+        if (dir != null) FileSystemUtils.deleteRecursively(dir);
+    }
+
+    /** units item names drawn at random from the catalog, as a client would send them. */
+    public List<String> basket(int units, long seed) {
+        Random rnd = new Random(seed);
+        List<String> items = new ArrayList<>(units);
+        for (int i = 0; i < units; i++) items.add(catalog.nameOf(rnd.nextInt(catalog.skuCount())));
+        return items;
+    }
+}
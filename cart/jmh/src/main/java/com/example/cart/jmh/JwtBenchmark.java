@@ -0,0 +1,37 @@
+package com.example.cart.jmh;
+
+import com.example.cart.auth.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** HS256 token issue and full verification (signature, issuer, expiry), as on login and every request. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private JwtService jwt;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwt = new JwtService("dev-secret-0123456789abcdef0123456789abcdef", "shopping-cart", 120);
+        token = jwt.generateToken("shopper");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwt.generateToken("shopper");
+    }
+
+    @Benchmark
+    public Jws<Claims> parse() {
+        return jwt.parse(token);
+    }
+}
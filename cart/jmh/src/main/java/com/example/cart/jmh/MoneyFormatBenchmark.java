@@ -0,0 +1,50 @@
+package com.example.cart.jmh;
+
+import com.example.cart.util.MoneyFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting a total for the response. numberFormat is the per-call
+ * NumberFormat through double that MoneyFormat replaced, kept as the baseline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyFormatBenchmark {
+
+    private static final long[] AMOUNTS = {235, 5, 123_456, 99, 10_000_000, 1_999};
+
+    @Param({"GBP:en-GB", "EUR:de-DE"})
+    public String format;
+
+    private String currency;
+    private Locale locale;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] parts = format.split(":");
+        currency = parts[0];
+        locale = Locale.forLanguageTag(parts[1]);
+    }
+
+    @Benchmark
+    public String moneyFormat() {
+        return MoneyFormat.format(AMOUNTS[next++ % AMOUNTS.length], currency, locale);
+    }
+
+    @Benchmark
+    public String numberFormat() {
+        NumberFormat nf = NumberFormat.getCurrencyInstance(locale);
+        nf.setCurrency(Currency.getInstance(currency));
+        return nf.format(AMOUNTS[next++ % AMOUNTS.length] / 100.0);
+    }
+}
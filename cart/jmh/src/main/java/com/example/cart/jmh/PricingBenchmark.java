@@ -0,0 +1,40 @@
+package com.example.cart.jmh;
+
+import com.example.cart.model.CartLine;
+import com.example.cart.service.ShoppingCartService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Basket pricing through ShoppingCartService, by basket size (units) and catalog. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PricingBenchmark {
+
+    @Param({"4", "100", "10000"})
+    public int units;
+
+    private ShoppingCartService service;
+    private List<String> basket;
+
+    @Setup
+    public void setUp(CatalogState state) {
+        service = new ShoppingCartService(state.catalog);
+        basket = state.basket(units, 7);
+    }
+
+    @Benchmark
+    public List<CartLine> calculateLines() {
+        return service.calculateLines(basket);
+    }
+
+    @Benchmark
+    public int calculateTotalPence() {
+        return service.calculateTotalPence(basket);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.cart.jmh;
+
+import com.example.cart.model.CartLine;
+import com.example.cart.model.CartTotalResponse;
+import com.example.cart.model.Discount;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** The /total response body, written by a mapper configured as Spring Boot configures its own. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"4", "100"})
+    public int lines;
+
+    private ObjectMapper mapper;
+    private CartTotalResponse response;
+
+    @Setup
+    public void setUp() {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        List<CartLine> out = new ArrayList<>(lines);
+        int total = 0;
+        for (int i = 0; i < lines; i++) {
+            int qty = 1 + i % 5;
+            int chargeable = i % 3 == 0 ? (qty + 1) / 2 : qty;
+            int unit = 20 + i * 7 % 480;
+            List<Discount> discounts = i % 4 == 0 ? List.of(new Discount("promo-" + i, 10)) : List.of();
+            int lineTotal = chargeable * unit - (discounts.isEmpty() ? 0 : 10);
+            out.add(new CartLine("Item " + i, qty, chargeable, unit, lineTotal, discounts));
+            total += lineTotal;
+        }
+        response = new CartTotalResponse("GBP", total, "£" + total / 100 + "." + total % 100, out, 1);
+    }
+
+    @Benchmark
+    public byte[] writeTotal() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(response);
+    }
+}
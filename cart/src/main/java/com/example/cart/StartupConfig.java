@@ -0,0 +1,23 @@
+package com.example.cart;
+
+import com.example.cart.pricing.CatalogWatcher;
+import com.example.cart.service.ShoppingCartService;
+import com.example.cart.store.CartStore;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Beans created at startup even with spring.main.lazy-initialization (the
+ * fast-startup profile): the cart store, which replays the journal before
+ * the first request; the catalog watcher, which nothing else asks for; and
+ * the pricing path, so the first priced request does not pay for it.
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(CartStore.class, CatalogWatcher.class, ShoppingCartService.class);
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.cart.admission;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides, before a request is parsed, whether this node will serve it.
+ *
+ * Each user has a token bucket (rate tokens/s, holding up to burst), kept as
+ * a "theoretical arrival time" (GCRA) and updated with a single CAS, no locks.
+ * Buckets sit in a table of stripes, each tagged with its user's 64-bit
+ * fingerprint (a hash seeded per process, so users cannot aim at one slot).
+ * A user takes the first of a few slots from its home that is its own, empty,
+ * or idle; an idle bucket is full, so reusing it loses nothing. Only when all
+ * of them hold other users' live buckets does it get its own entry in an
+ * overflow map, so a flooder never spends anyone else's tokens. Size stripes
+ * at a few times the users active within one burst.
+ *
+ * A request costs 1 token plus one per bytes-per-token of body. One costing
+ * more than burst is let in when its bucket is full and leaves it in debt.
+ * A body of unknown length (chunked) costs a burst, but no more than a
+ * quarter of max-in-flight, so it is still admitted next to other traffic.
+ *
+ * Independently, the cost of admitted requests still running is capped at
+ * max-in-flight; past it requests are shed at once rather than queued, so
+ * the ones already admitted keep their latency.
+ */
+@Component
+public class AdmissionControl {
+
+    /** Snapshot of the counters. */
+    public record Stats(long admitted, long rejectedUser, long rejectedOverload, long inFlight) {}
+
+    /** Admitted, or a reason to refuse and how long to wait before retrying. */
+    public record Decision(boolean admitted, String reason, long retryAfterNanos) {
+        static final Decision ADMIT = new Decision(true, null, 0);
+    }
+
+    public static final String USER = "user";
+    public static final String OVERLOAD = "overload";
+
+    // slots looked at from a user's home before it overflows
+    private static final int PROBES = 8;
+
+    /** One user's bucket: its fingerprint and theoretical arrival time. Replaced, never mutated. */
+    private record Bucket(long subject, long tat) {}
+
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final ConcurrentHashMap<Long, AtomicLong> overflow = new ConcurrentHashMap<>();
+    private volatile int overflowSweepAt = 1024;
+    private final long seed = new SecureRandom().nextLong();
+    private final int mask;
+    private final long interval;
+    private final long burstNanos;
+    private final long bytesPerToken;
+    private final long maxInFlight;
+    private final long unknownLengthCost;
+    private final long overloadRetryNanos;
+    private final LongSupplier clock;
+    private final long origin;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedUser = new LongAdder();
+    private final LongAdder rejectedOverload = new LongAdder();
+
+    @Autowired
+    public AdmissionControl(@Value("${cart.admission.rate:100}") double rate,
+                            @Value("${cart.admission.burst:200}") int burst,
+                            @Value("${cart.admission.bytes-per-token:1KB}") DataSize bytesPerToken,
+                            @Value("${cart.admission.stripes:16384}") int stripes,
+                            @Value("${cart.admission.max-in-flight:0}") long maxInFlight,
+                            @Value("${cart.admission.overload-retry-after:1s}") Duration overloadRetryAfter) {
+        this(rate, burst, bytesPerToken.toBytes(), stripes,
+                maxInFlight > 0 ? maxInFlight : 32L * Runtime.getRuntime().availableProcessors(),
+                overloadRetryAfter, System::nanoTime);
+    }
+
+    AdmissionControl(double rate, int burst, long bytesPerToken, int stripes, long maxInFlight,
+                     Duration overloadRetryAfter, LongSupplier clock) {
+        if (rate <= 0 || burst < 1) throw new IllegalArgumentException("cart.admission.rate and burst must be positive");
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.buckets = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+        this.interval = Math.max(1, Math.round(1e9 / rate));
+        this.burstNanos = burst * interval;
+        this.bytesPerToken = Math.max(1, bytesPerToken);
+        this.maxInFlight = maxInFlight;
+        this.unknownLengthCost = Math.max(1, Math.min(burst, maxInFlight / 4));
+        this.overloadRetryNanos = overloadRetryAfter.toNanos();
+        this.clock = clock;
+        // TATs start at 0, i.e. every bucket full
+        this.origin = clock.getAsLong() - burstNanos;
+    }
+
+    /** Tokens a request with this body length costs (-1 = unknown, e.g. chunked: a burst, capped at max-in-flight / 4). */
+    public long costOf(long contentLength) {
+        if (contentLength < 0) return unknownLengthCost;
+        return 1 + (contentLength + bytesPerToken - 1) / bytesPerToken;
+    }
+
+    /**
+     * Charges cost to subject's bucket and reserves cost of in-flight capacity.
+     * When admitted, the caller must {@link #release} cost once the request is done.
+     */
+    public Decision admit(String subject, long cost) {
+        if (!reserve(cost)) {
+            rejectedOverload.increment();
+            return new Decision(false, OVERLOAD, overloadRetryNanos);
+        }
+        long wait = take(subject, cost);
+        if (wait > 0) {
+            release(cost);
+            rejectedUser.increment();
+            return new Decision(false, USER, wait);
+        }
+        admitted.increment();
+        return Decision.ADMIT;
+    }
+
+    /**
+     * Reserves cost of in-flight capacity only, for a request whose user a peer already charged.
+     * When admitted, the caller must {@link #release} cost once the request is done.
+     */
+    public Decision occupy(long cost) {
+        if (!reserve(cost)) {
+            rejectedOverload.increment();
+            return new Decision(false, OVERLOAD, overloadRetryNanos);
+        }
+        return Decision.ADMIT;
+    }
+
+    /** Charges cost to subject's bucket only, for long-lived requests that do no work while open. */
+    public Decision charge(String subject, long cost) {
+        long wait = take(subject, cost);
+        if (wait > 0) {
+            rejectedUser.increment();
+            return new Decision(false, USER, wait);
+        }
+        admitted.increment();
+        return Decision.ADMIT;
+    }
+
+    public void release(long cost) {
+        inFlight.addAndGet(-cost);
+    }
+
+    public Stats stats() {
+        return new Stats(admitted.sum(), rejectedUser.sum(), rejectedOverload.sum(), inFlight.get());
+    }
+
+    // an idle node admits anything, so one request above the cap cannot be refused forever
+    private boolean reserve(long cost) {
+        while (true) {
+            long current = inFlight.get();
+            if (current > 0 && current + cost > maxInFlight) return false;
+            if (inFlight.compareAndSet(current, current + cost)) return true;
+        }
+    }
+
+    /** 0 if cost was taken from subject's bucket, else nanoseconds until it could be. */
+    private long take(String subject, long cost) {
+        long fingerprint = fingerprint(subject);
+        int home = (int) (fingerprint & mask);
+        long increment = cost * interval;
+        long needed = Math.min(increment, burstNanos); // more than a burst needs a full bucket
+        retry:
+        while (true) {
+            long now = clock.getAsLong() - origin;
+            int free = -1;
+            Bucket freeWas = null;
+            for (int k = 0; k < PROBES; k++) {
+                int i = (home + k) & mask;
+                Bucket b = buckets.get(i);
+                if (b != null && b.subject() == fingerprint) {
+                    long from = Math.max(b.tat(), now);
+                    long wait = from + needed - now - burstNanos;
+                    if (wait > 0) return wait;
+                    if (buckets.compareAndSet(i, b, new Bucket(fingerprint, from + increment))) return 0;
+                    continue retry;
+                }
+                if (free < 0 && (b == null || b.tat() <= now)) {
+                    free = i;
+                    freeWas = b;
+                }
+            }
+            if (free >= 0 && !overflow.containsKey(fingerprint)) {
+                // a full bucket: from = now, and wait = needed - burst is never positive
+                if (buckets.compareAndSet(free, freeWas, new Bucket(fingerprint, now + increment))) return 0;
+                continue;
+            }
+            return takeOverflow(fingerprint, now, needed, increment);
+        }
+    }
+
+    private long takeOverflow(long fingerprint, long now, long needed, long increment) {
+        AtomicLong tat = overflow.get(fingerprint);
+        if (tat == null) {
+            tat = overflow.computeIfAbsent(fingerprint, k -> new AtomicLong());
+            if (overflow.size() > overflowSweepAt) {
+                // idle entries are full buckets; dropping one loses at most a charge racing the sweep
+                long idle = now;
+                overflow.values().removeIf(t -> t.get() <= idle);
+                overflowSweepAt = Math.max(1024, 2 * overflow.size());
+            }
+        }
+        while (true) {
+            long current = tat.get();
+            long from = Math.max(current, now);
+            long wait = from + needed - now - burstNanos;
+            if (wait > 0) return wait;
+            if (tat.compareAndSet(current, from + increment)) return 0;
+            now = Math.max(now, clock.getAsLong() - origin);
+        }
+    }
+
+    // FNV-1a over the UTF-8 bytes from a per-process seed, then a 64-bit finaliser
+    private long fingerprint(String subject) {
+        long h = seed;
+        for (byte b : subject.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.cart.admission;
+
+import com.example.cart.cluster.PeerAuthFilter;
+import com.example.cart.web.ApiError;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control for /api/cart, keyed by the token's subject. Runs after
+ * the security chain (which names the subject) and before shard routing, and
+ * answers 429 with Retry-After before the body is read. A request a peer
+ * forwarded (PeerAuthFilter) was charged to its user there, but still counts
+ * against this node's max-in-flight, since this node does the work.
+ *
+ * Event streams are charged their token but are not counted as in flight:
+ * an open stream holds no thread and does no work between events.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final String EVENTS = "/api/cart/events";
+
+    private final AdmissionControl admission;
+    private final ObjectMapper mapper;
+    private final boolean enabled;
+
+    public AdmissionFilter(AdmissionControl admission, ObjectMapper mapper,
+                           @Value("${cart.admission.enabled:true}") boolean enabled) {
+        this.admission = admission;
+        this.mapper = mapper;
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest req) {
+        if (!enabled) return true;
+        return !req.getRequestURI().startsWith("/api/cart");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws ServletException, IOException {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String subject = auth == null ? "anon" : auth.getName();
+        long cost = admission.costOf(bodyLength(req));
+        boolean forwarded = PeerAuthFilter.isForwarded(req);
+
+        if (req.getRequestURI().equals(EVENTS)) {
+            AdmissionControl.Decision decision = forwarded
+                    ? AdmissionControl.Decision.ADMIT
+                    : admission.charge(subject, cost);
+            if (!decision.admitted()) reject(req, res, decision);
+            else chain.doFilter(req, res);
+            return;
+        }
+
+        AdmissionControl.Decision decision = forwarded ? admission.occupy(cost) : admission.admit(subject, cost);
+        if (!decision.admitted()) {
+            reject(req, res, decision);
+            return;
+        }
+        boolean async = false;
+        try {
+            chain.doFilter(req, res);
+            if (req.isAsyncStarted()) {
+                // streamed batch totals finish on another thread
+                req.getAsyncContext().addListener(new Release(cost));
+                async = true;
+            }
+        } finally {
+            if (!async) admission.release(cost);
+        }
+    }
+
+    // async dispatches re-enter with the request already admitted
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return true;
+    }
+
+    /** Content-Length; 0 with no body at all; -1 when a body comes without a length (chunked). */
+    private static long bodyLength(HttpServletRequest req) {
+        long length = req.getContentLengthLong();
+        if (length >= 0) return length;
+        return req.getHeader(HttpHeaders.TRANSFER_ENCODING) != null ? -1 : 0;
+    }
+
+    private void reject(HttpServletRequest req, HttpServletResponse res, AdmissionControl.Decision decision)
+            throws IOException {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(decision.retryAfterNanos() + 999_999_999));
+        String message = AdmissionControl.USER.equals(decision.reason())
+                ? "Too many requests for this user"
+                : "Server is at capacity";
+        HttpStatus status = HttpStatus.TOO_MANY_REQUESTS;
+        res.setStatus(status.value());
+        res.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        mapper.writeValue(res.getOutputStream(), new ApiError(Instant.now(), status.value(), status.getReasonPhrase(),
+                message, List.of("Retry after " + seconds + "s"), req.getRequestURI()));
+    }
+
+    private final class Release implements AsyncListener {
+        private final long cost;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Release(long cost) {
+            this.cost = cost;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) admission.release(cost);
+        }
+
+        @Override public void onComplete(AsyncEvent event) { release(); }
+        @Override public void onTimeout(AsyncEvent event) { release(); }
+        @Override public void onError(AsyncEvent event) { release(); }
+        @Override public void onStartAsync(AsyncEvent event) { event.getAsyncContext().addListener(this); }
+    }
+}
@@ -21,9 +21,11 @@ import java.util.Collections;
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtService jwt;
+    private final VerifiedTokenCache verified;
 
-    public JwtAuthFilter(JwtService jwt) {
+    public JwtAuthFilter(JwtService jwt, VerifiedTokenCache verified) {
         this.jwt = jwt;
+        this.verified = verified;
     }
 
     @Override
@@ -34,10 +36,14 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7);
             try {
-                Jws<Claims> jws = jwt.parse(token);
-                String username = jws.getBody().getSubject();
+                // a token verified earlier skips signature check and claim parsing
+                User principal = verified.get(token);
+                if (principal == null) {
+                    Jws<Claims> jws = jwt.parse(token);
+                    principal = new User(jws.getBody().getSubject(), "", Collections.emptyList());
+                    verified.put(token, principal, jws.getBody().getExpiration());
+                }
 
-                var principal = new User(username, "", Collections.emptyList());
                 var auth = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
                 auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(req));
                 SecurityContextHolder.getContext().setAuthentication(auth);
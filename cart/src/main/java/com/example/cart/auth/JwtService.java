@@ -1,7 +1,9 @@
 package com.example.cart.auth;
 
+import com.example.cart.metrics.CartMetrics;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -17,14 +19,30 @@ public class JwtService {
     private final String issuer;
     private final long expirationMinutes;
 
+    // thread-safe and immutable: built once, shared by every request
+    private final JwtParser parser;
+    private final CartMetrics metrics;
+
+    @Autowired
     public JwtService(
             @Value("${jwt.secret}") String secret,
             @Value("${jwt.issuer}") String issuer,
-            @Value("${jwt.expiration-minutes}") long expirationMinutes
+            @Value("${jwt.expiration-minutes}") long expirationMinutes,
+            CartMetrics metrics
     ) {
+        this.metrics = metrics;
         this.key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
         this.issuer = issuer;
         this.expirationMinutes = expirationMinutes;
+        this.parser = Jwts.parserBuilder()
+                .requireIssuer(issuer)
+                .setSigningKey(key)
+                .build();
+    }
+
+    /** Without metrics, for tests and tools. */
+    public JwtService(String secret, String issuer, long expirationMinutes) {
+        this(secret, issuer, expirationMinutes, CartMetrics.NONE);
     }
 
     public String generateToken(String subject) {
@@ -39,10 +57,11 @@ public class JwtService {
     }
 
     public Jws<Claims> parse(String token) {
-        return Jwts.parserBuilder()
-                .requireIssuer(issuer)
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token);
+        long start = System.nanoTime();
+        try {
+            return parser.parseClaimsJws(token);
+        } finally {
+            metrics.jwtParse(System.nanoTime() - start);
+        }
     }
 }
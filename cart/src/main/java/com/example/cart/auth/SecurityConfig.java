@@ -1,13 +1,19 @@
 // src/main/java/com/example/cart/auth/SecurityConfig.java
 package com.example.cart.auth;
 
+import com.example.cart.cluster.PeerAuthFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementPortType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authorization.AuthenticatedAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -27,9 +33,11 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class SecurityConfig {
 
     private final JwtAuthFilter jwtFilter;
+    private final PeerAuthFilter peerFilter;
 
-    public SecurityConfig(JwtAuthFilter jwtFilter) {
+    public SecurityConfig(JwtAuthFilter jwtFilter, PeerAuthFilter peerFilter) {
         this.jwtFilter = jwtFilter;
+        this.peerFilter = peerFilter;
     }
 
     // DEV user for quick testing; replace with JPA-backed service later
@@ -60,7 +68,9 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, Environment env) throws Exception {
+        // actuator normally listens only on management.server.port; on the public port the scrape needs a token
+        boolean managementPort = ManagementPortType.get(env) == ManagementPortType.DIFFERENT;
         http
                 .csrf(csrf -> csrf.disable())          // JWT: no sessions/csrf tokens
                 .cors(Customizer.withDefaults())       // use the CORS bean below
@@ -70,10 +80,20 @@ public class SecurityConfig {
                         .requestMatchers("/auth/**").permitAll()
                         // 💡 always allow preflight
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+                        // health checks, and the Prometheus scrape when it is on the internal management port
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/prometheus").access(managementPort
+                                ? (authentication, ctx) -> new AuthorizationDecision(true)
+                                : AuthenticatedAuthorizationManager.authenticated())
+                        // node-to-node: only peers holding cart.cluster.secret, never a shopper's token
+                        .requestMatchers("/internal/cluster/**").hasRole(PeerAuthFilter.ROLE)
+                        // the request was authorised when it started; its async dispatches (SSE, NDJSON) carry no token
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // everything else requires JWT
                         .anyRequest().authenticated()
                 )
-                .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(peerFilter, JwtAuthFilter.class);
 
         return http.build();
     }
@@ -88,8 +108,8 @@ public class SecurityConfig {
                 registry.addMapping("/**")
                         .allowedOriginPatterns("*")
                         .allowedMethods("GET","POST","PUT","DELETE","PATCH","OPTIONS")
-                        .allowedHeaders("Authorization","Content-Type","X-User-Id")
-                        .exposedHeaders("Authorization");
+                        .allowedHeaders("Authorization","Content-Type","X-User-Id","If-Match","If-None-Match")
+                        .exposedHeaders("Authorization","ETag","Retry-After");
             }
         };
     }
@@ -101,8 +121,8 @@ public class SecurityConfig {
         var cfg = new CorsConfiguration();
         cfg.setAllowedOrigins(java.util.Arrays.asList(originsCsv.split("\\s*,\\s*")));
         cfg.setAllowedMethods(java.util.Arrays.asList("GET","POST","PUT","DELETE","PATCH","OPTIONS"));
-        cfg.setAllowedHeaders(java.util.Arrays.asList("Authorization","Content-Type","X-User-Id","X-Requested-With"));
-        cfg.setExposedHeaders(java.util.Arrays.asList("Authorization"));
+        cfg.setAllowedHeaders(java.util.Arrays.asList("Authorization","Content-Type","X-User-Id","X-Requested-With","If-Match","If-None-Match"));
+        cfg.setExposedHeaders(java.util.Arrays.asList("Authorization","ETag","Retry-After"));
         cfg.setAllowCredentials(true); // optional; fine for dev
 
         var source = new UrlBasedCorsConfigurationSource();
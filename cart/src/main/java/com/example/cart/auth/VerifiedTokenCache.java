@@ -0,0 +1,131 @@
+package com.example.cart.auth;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of already-verified bearer tokens: SHA-256 digest -> principal.
+ * A hit skips signature verification and claim parsing entirely.
+ * Entries never outlive the token's own exp; the raw token is never stored.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    /** Snapshot of the cache counters. */
+    public record Stats(long hits, long misses, int size) {}
+
+    // first 128 bits of SHA-256(token)
+    private record Key(long hi, long lo) {}
+
+    private record Entry(User principal, long expiresAtMillis) {}
+
+    // ordered by expiry so the soonest-expiring entry is always first
+    private record Expiry(long atMillis, long seq, Key key) implements Comparable<Expiry> {
+        @Override public int compareTo(Expiry o) {
+            int c = Long.compare(atMillis, o.atMillis);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    // cloned per key rather than kept per thread: virtual threads would each build their own
+    private static final MessageDigest SHA256 = sha256();
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Expiry, Boolean> expiries = new ConcurrentSkipListMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final int maxSize;
+    private final LongSupplier clock;
+
+    @Autowired
+    public VerifiedTokenCache(@Value("${jwt.cache.max-size:10000}") int maxSize) {
+        this(maxSize, System::currentTimeMillis);
+    }
+
+    VerifiedTokenCache(int maxSize, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+    /** The cached principal for a still-valid token, or null. */
+    public User get(String token) {
+        if (maxSize <= 0) return null;
+        Key key = keyOf(token);
+        Entry e = entries.get(key);
+        if (e == null || e.expiresAtMillis() <= clock.getAsLong()) {
+            if (e != null) entries.remove(key, e);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return e.principal();
+    }
+
+    /** Remembers a token that has just passed full verification, until its expiration. */
+    public void put(String token, User principal, Date expiration) {
+        if (maxSize <= 0 || expiration == null) return;
+        long now = clock.getAsLong();
+        long exp = expiration.getTime();
+        if (exp <= now) return;
+
+        evictExpired(now);
+        while (entries.size() >= maxSize) {
+            var first = expiries.pollFirstEntry();
+            if (first == null) break;
+            Expiry soonest = first.getKey();
+            entries.computeIfPresent(soonest.key(), (k, e) -> e.expiresAtMillis() == soonest.atMillis() ? null : e);
+        }
+
+        Key key = keyOf(token);
+        entries.put(key, new Entry(principal, exp));
+        expiries.put(new Expiry(exp, seq.incrementAndGet(), key), Boolean.TRUE);
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), entries.size());
+    }
+
+    private void evictExpired(long now) {
+        for (var first = expiries.firstEntry();
+             first != null && first.getKey().atMillis() <= now;
+             first = expiries.firstEntry()) {
+            Expiry x = first.getKey();
+            if (expiries.remove(x) != null) {
+                entries.computeIfPresent(x.key(), (k, e) -> e.expiresAtMillis() <= now ? null : e);
+            }
+        }
+    }
+
+    private static Key keyOf(String token) {
+        MessageDigest md;
+        try {
+            md = (MessageDigest) SHA256.clone(); // skips the provider lookup getInstance does
+        } catch (CloneNotSupportedException e) {
+            md = sha256();
+        }
+        ByteBuffer d = ByteBuffer.wrap(md.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        return new Key(d.getLong(), d.getLong());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
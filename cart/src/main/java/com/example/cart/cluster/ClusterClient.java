@@ -0,0 +1,118 @@
+package com.example.cart.cluster;
+
+import com.example.cart.model.CartHandoff;
+import com.example.cart.model.ClusterMembers;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+/** Node-to-node HTTP: one shared keep-alive client for forwarding and rebalancing. */
+@Component
+public class ClusterClient {
+
+    /** Marks a request already routed by a peer, so it is served where it lands (no routing loops). */
+    public static final String FORWARDED_BY = "X-Cart-Forwarded-By";
+    /** Carries cart.cluster.secret on every node-to-node call; see PeerAuthFilter. */
+    public static final String PEER_SECRET = "X-Cart-Cluster-Secret";
+
+    private final HttpClient http;
+    private final ObjectMapper mapper;
+    private final Duration timeout;
+    private final String secret;
+
+    public ClusterClient(ObjectMapper mapper, @Value("${cart.cluster.timeout:2s}") Duration timeout,
+                         @Value("${cart.cluster.secret:}") String secret) {
+        this.mapper = mapper;
+        this.timeout = timeout;
+        this.secret = secret;
+        // relayed streams are written from the client's threads; virtual ones cost nothing while a subscriber is slow
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /** Replays a request on another node and returns its response. */
+    public HttpResponse<byte[]> forward(String node, String method, String pathAndQuery,
+                                        Map<String, String> headers, byte[] body, String self)
+            throws IOException, InterruptedException {
+        return http.send(forwardRequest(node, method, pathAndQuery, headers, body, self),
+                HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * As forward(), for a response that streams (server-sent events), without waiting:
+     * the body is published chunk by chunk as it arrives. The timeout covers only its headers.
+     */
+    public CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> forwardStream(
+            String node, String method, String pathAndQuery, Map<String, String> headers, String self) {
+        return http.sendAsync(forwardRequest(node, method, pathAndQuery, headers, new byte[0], self),
+                HttpResponse.BodyHandlers.ofPublisher());
+    }
+
+    private HttpRequest forwardRequest(String node, String method, String pathAndQuery,
+                                       Map<String, String> headers, byte[] body, String self) {
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(node + pathAndQuery))
+                .timeout(timeout)
+                .method(method, body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body))
+                .header(FORWARDED_BY, self);
+        if (!secret.isEmpty()) req.header(PEER_SECRET, secret);
+        headers.forEach(req::header);
+        return req.build();
+    }
+
+    /** Tells a peer about the new membership (it does not propagate further). */
+    public void pushMembers(String node, ClusterMembers members, String self) {
+        send(node, "/internal/cluster/members", members, self);
+    }
+
+    /** Hands a cart over to its new owner, which takes it unless it has written that cart itself since. */
+    public void pushCart(String node, String userId, CartHandoff handoff, String self) {
+        send(node, "/internal/cluster/carts/" + UriUtils.encodePathSegment(userId, StandardCharsets.UTF_8),
+                handoff, self);
+    }
+
+    private void send(String node, String path, Object body, String self) {
+        try {
+            HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(node + path))
+                    .timeout(timeout)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .header(FORWARDED_BY, self)
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)));
+            if (!secret.isEmpty()) req.header(PEER_SECRET, secret);
+            HttpResponse<Void> res = http.send(req.build(), HttpResponse.BodyHandlers.discarding());
+            if (res.statusCode() / 100 != 2) {
+                throw new IllegalStateException("PUT " + node + path + " answered HTTP " + res.statusCode());
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("PUT " + node + path + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted calling " + node, e);
+        }
+    }
+}
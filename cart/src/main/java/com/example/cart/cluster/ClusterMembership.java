@@ -0,0 +1,90 @@
+package com.example.cart.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This node's view of the cluster: its own base URL plus the current ring.
+ * With no members configured the ring is empty and every cart is local.
+ */
+@Component
+public class ClusterMembership {
+
+    private final int vnodes;
+    private final List<String> configuredNodes;
+    private final AtomicReference<HashRing> ring = new AtomicReference<>();
+    private final ReentrantReadWriteLock serving = new ReentrantReadWriteLock();
+    private volatile String self;
+
+    public ClusterMembership(
+            @Value("${cart.cluster.self:}") String self,
+            @Value("${cart.cluster.nodes:}") String nodesCsv,
+            @Value("${cart.cluster.virtual-nodes:512}") int vnodes
+    ) {
+        this.vnodes = vnodes;
+        this.self = self.isBlank() ? null : normalize(self);
+        this.configuredNodes = Arrays.stream(nodesCsv.split(","))
+                .map(String::trim).filter(s -> !s.isEmpty()).map(ClusterMembership::normalize).toList();
+        this.ring.set(new HashRing(configuredNodes, vnodes));
+    }
+
+    /** Without cart.cluster.self, a node is known as http://localhost:{port}. */
+    @EventListener
+    public void onWebServer(WebServerInitializedEvent event) {
+        if (self == null) self = "http://localhost:" + event.getWebServer().getPort();
+    }
+
+    public String self() {
+        return self;
+    }
+
+    public HashRing ring() {
+        return ring.get();
+    }
+
+    /** The node that owns userId's cart; this node when standalone. */
+    public String ownerOf(String userId) {
+        String owner = ring.get().owner(userId);
+        return owner == null ? self : owner;
+    }
+
+    public boolean isLocal(String node) {
+        return node == null || node.equals(self);
+    }
+
+    /**
+     * Held shared by a request served here, from its ownership check until it is done,
+     * so a ring swap cannot hand its cart off while it is still writing.
+     */
+    public Lock servingLock() {
+        return serving.readLock();
+    }
+
+    /**
+     * Swaps in a ring over the given members and returns the previous one. Waits for the
+     * requests being served under the old ring; once it returns, none of them is still running.
+     */
+    public HashRing update(Collection<String> nodes) {
+        HashRing next = new HashRing(nodes.stream().map(ClusterMembership::normalize).toList(), vnodes);
+        serving.writeLock().lock();
+        try {
+            return ring.getAndSet(next);
+        } finally {
+            serving.writeLock().unlock();
+        }
+    }
+
+    static String normalize(String node) {
+        String n = node.trim();
+        return n.endsWith("/") ? n.substring(0, n.length() - 1) : n;
+    }
+}
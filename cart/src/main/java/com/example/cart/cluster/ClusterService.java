@@ -0,0 +1,168 @@
+package com.example.cart.cluster;
+
+import com.example.cart.model.CartHandoff;
+import com.example.cart.model.ClusterMembers;
+import com.example.cart.model.RebalanceResult;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.service.CartEventService;
+import com.example.cart.store.CartStore;
+import com.example.cart.store.Versioned;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Membership changes. The node that receives the change passes it on to every
+ * old and new peer; each node then hands off only the carts whose owner moved.
+ * A peer that cannot be told is reported in the result, and the handoff goes
+ * ahead regardless.
+ *
+ * Requests for a moved cart are routed to the new owner as soon as the ring is
+ * swapped. The handoff replaces the new owner's copy unless a request there has
+ * already written it, in which case that write wins; a repeated handoff is a
+ * no-op. A cart leaves this node only once its new owner has it: one whose push
+ * fails stays here and is pushed again every cart.cluster.handoff-retry.
+ * Event streams open here for a moved cart are closed, so their clients
+ * reconnect through the new owner.
+ * Only peers holding cart.cluster.secret may call these (see PeerAuthFilter).
+ */
+@Service
+public class ClusterService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterService.class);
+
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final CartStore store;
+    private final CartEventService events;
+    private final long retryMillis;
+    private final ReentrantLock rebalancing = new ReentrantLock();
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService retries =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("cart-handoff-retry").factory());
+
+    private record Sweep(int moved, int pending) {}
+
+    public ClusterService(ClusterMembership membership, ClusterClient client, CartStore store,
+                          CartEventService events,
+                          @Value("${cart.cluster.handoff-retry:5s}") Duration handoffRetry) {
+        this.membership = membership;
+        this.client = client;
+        this.store = store;
+        this.events = events;
+        this.retryMillis = handoffRetry.toMillis();
+    }
+
+    public ClusterMembers members() {
+        return new ClusterMembers(membership.ring().nodes());
+    }
+
+    /** Applies the new membership here (and on peers if propagate), then hands off moved carts. */
+    public RebalanceResult changeMembers(ClusterMembers members, boolean propagate) {
+        if (members.nodes() == null || members.nodes().isEmpty()) {
+            throw new IllegalArgumentException("nodes must list at least one member");
+        }
+        // waits for requests already being served here under the old ring, so none can write after the handoff
+        HashRing previous = membership.update(members.nodes());
+        HashRing current = membership.ring();
+        String self = membership.self();
+
+        List<String> unreachable = new ArrayList<>();
+        if (propagate) {
+            Set<String> peers = new LinkedHashSet<>(previous.nodes());
+            peers.addAll(current.nodes());
+            peers.remove(self);
+            for (String peer : peers) {
+                try {
+                    client.pushMembers(peer, new ClusterMembers(current.nodes()), self);
+                } catch (RuntimeException e) {
+                    log.warn("Could not tell {} about the new membership", peer, e);
+                    unreachable.add(peer);
+                }
+            }
+        }
+
+        Sweep sweep = handOffStrays();
+        log.info("Cluster is now {}; handed off {} carts, {} pending", current.nodes(), sweep.moved(), sweep.pending());
+        return new RebalanceResult(current.nodes(), sweep.moved(), sweep.pending(), unreachable);
+    }
+
+    /** Takes a cart handed off by its previous owner (see CartStore.handOff). */
+    public void receiveCart(String userId, CartHandoff handoff) {
+        if (handoff.items() == null) throw new IllegalArgumentException("items is required");
+        if (!store.handOff(userId, handoff.version(), handoff.items())) {
+            log.info("Kept cart {}: written here since it moved, so handoff {} is ignored", userId, handoff.version());
+        }
+    }
+
+    /** Hands off every cart held here that another node owns; one whose push fails stays for the retry. */
+    private Sweep handOffStrays() {
+        rebalancing.lock();
+        try {
+            int moved = 0;
+            int pending = 0;
+            for (String userId : store.userIds()) {
+                String owner = membership.ownerOf(userId);
+                if (membership.isLocal(owner)) continue;
+                try {
+                    if (handOff(userId, owner)) moved++;
+                } catch (RuntimeException e) {
+                    log.debug("Handoff of cart {} to {} failed", userId, owner, e);
+                    pending++;
+                }
+            }
+            if (pending > 0) {
+                log.warn("{} carts could not be handed off; retrying in {}ms", pending, retryMillis);
+                scheduleRetry();
+            }
+            return new Sweep(moved, pending);
+        } finally {
+            rebalancing.unlock();
+        }
+    }
+
+    /** Pushes userId's cart to owner and drops it here once that succeeded; false if there was nothing to push. */
+    private boolean handOff(String userId, String owner) {
+        // every write here under the old ring has finished, and new ones are routed to the owner
+        events.close(userId); // a stream left open here would read the cart back into this node
+        Versioned<SkuCounts> held = store.versionedCounts(userId);
+        boolean any = !held.value().isEmpty();
+        if (any) {
+            client.pushCart(owner, userId, new CartHandoff(store.etag(held.version()),
+                    store.toQuantities(held.value()).cart()), membership.self());
+        }
+        store.evict(userId);
+        return any;
+    }
+
+    private void scheduleRetry() {
+        if (!retryScheduled.compareAndSet(false, true)) return;
+        try {
+            retries.schedule(() -> {
+                retryScheduled.set(false);
+                handOffStrays();
+            }, retryMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down: the carts stay here, in the journal
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retries.shutdownNow();
+    }
+}
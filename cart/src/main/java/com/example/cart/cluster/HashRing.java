@@ -0,0 +1,75 @@
+package com.example.cart.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable consistent-hash ring. Each node is placed at vnodes points, and a
+ * key belongs to the first point clockwise from its hash. Adding or removing
+ * a node moves only the keys of the arcs it gains or loses, about 1/N of them.
+ */
+public final class HashRing {
+
+    private final List<String> nodes;
+    private final long[] points;   // sorted ring positions
+    private final int[] owners;    // index into nodes, parallel to points
+
+    public HashRing(Collection<String> nodes, int vnodes) {
+        if (vnodes < 1) throw new IllegalArgumentException("vnodes must be at least 1");
+        this.nodes = nodes.stream().distinct().sorted().toList();
+
+        int n = this.nodes.size() * vnodes;
+        long[][] pairs = new long[n][];
+        for (int i = 0, k = 0; i < this.nodes.size(); i++) {
+            for (int v = 0; v < vnodes; v++, k++) {
+                pairs[k] = new long[]{hash(this.nodes.get(i) + "#" + v), i};
+            }
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[n];
+        this.owners = new int[n];
+        for (int k = 0; k < n; k++) {
+            points[k] = pairs[k][0];
+            owners[k] = (int) pairs[k][1];
+        }
+    }
+
+    /** The node owning key, or null on an empty ring. */
+    public String owner(String key) {
+        if (points.length == 0) return null;
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) i = -i - 1;
+        if (i == points.length) i = 0; // wrap around
+        return nodes.get(owners[i]);
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    /** FNV-1a over UTF-8, finished with a murmur3 mix so nearby strings spread over the ring. */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "HashRing" + nodes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.cart.cluster;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Recognises node-to-node calls by the shared cart.cluster.secret in
+ * X-Cart-Cluster-Secret. Only a recognised request counts as a peer's: its
+ * X-Cart-Forwarded-By is trusted, and on /internal/cluster/** it is
+ * authenticated with ROLE_PEER. Forwarded shopper requests still need the
+ * shopper's own token. With no secret set no request is a peer's, so the
+ * node cannot be joined to a cluster.
+ */
+@Component
+public class PeerAuthFilter extends OncePerRequestFilter {
+
+    public static final String ROLE = "PEER";
+    private static final String PEER = PeerAuthFilter.class.getName() + ".peer";
+
+    private final byte[] secret;
+
+    public PeerAuthFilter(@Value("${cart.cluster.secret:}") String secret) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** True if the request came from a peer holding the cluster secret. */
+    public static boolean isPeer(HttpServletRequest req) {
+        return Boolean.TRUE.equals(req.getAttribute(PEER));
+    }
+
+    /** True if a peer routed the request here, so it must not be routed again. */
+    public static boolean isForwarded(HttpServletRequest req) {
+        return isPeer(req) && req.getHeader(ClusterClient.FORWARDED_BY) != null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws ServletException, IOException {
+        String presented = req.getHeader(ClusterClient.PEER_SECRET);
+        if (presented != null && secret.length > 0
+                && MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8))) {
+            req.setAttribute(PEER, Boolean.TRUE);
+            if (req.getRequestURI().startsWith("/internal/cluster/")) {
+                SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("cluster-peer", null,
+                        List.of(new SimpleGrantedAuthority("ROLE_" + ROLE))));
+            }
+        }
+        chain.doFilter(req, res);
+    }
+}
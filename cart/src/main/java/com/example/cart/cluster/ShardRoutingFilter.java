@@ -0,0 +1,256 @@
+package com.example.cart.cluster;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Sends cart requests to the node that owns the cart, keyed like CartController
+ * (X-User-Id, "anon" when absent). Runs after the security chain, so only
+ * authenticated requests are routed; the owner verifies the token again.
+ *
+ * routing=forward proxies the request and relays the answer (clients need not
+ * know the ring); routing=redirect answers 307 to the owner instead.
+ * Stateless pricing (a /total with a body, /total/batch) is served locally.
+ * Event streams (/api/cart/events) are relayed chunk by chunk as the owner writes them.
+ *
+ * A request a peer forwarded (PeerAuthFilter) is never routed again: if the ring
+ * moved the cart away meanwhile it is answered 503 and the client retries.
+ * Requests served here hold the membership's serving lock, so a ring swap waits
+ * for them before handing their carts off.
+ */
+@Component
+public class ShardRoutingFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRoutingFilter.class);
+    private static final String EVENTS = "/api/cart/events";
+    private static final List<String> FORWARDED_HEADERS = List.of(
+            HttpHeaders.AUTHORIZATION, HttpHeaders.CONTENT_TYPE, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE,
+            HttpHeaders.IF_MATCH, HttpHeaders.IF_NONE_MATCH, "X-User-Id");
+    // connection-level headers; everything else the owner answered is relayed as is
+    private static final Set<String> HOP_BY_HOP = Set.of(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "te", "trailer", "upgrade",
+            "content-length", "date");
+
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final boolean redirect;
+
+    public ShardRoutingFilter(ClusterMembership membership, ClusterClient client,
+                              @Value("${cart.cluster.routing:forward}") String routing) {
+        this.membership = membership;
+        this.client = client;
+        this.redirect = switch (routing) {
+            case "forward" -> false;
+            case "redirect" -> true;
+            default -> throw new IllegalArgumentException("cart.cluster.routing must be forward or redirect: " + routing);
+        };
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest req) {
+        String path = req.getRequestURI();
+        if (!path.startsWith("/api/cart")) return true;
+        if (path.startsWith("/api/cart/total/batch")) return true;
+        return path.equals("/api/cart/total") && req.getContentLengthLong() != 0; // ad-hoc basket
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws ServletException, IOException {
+        String header = req.getHeader("X-User-Id");
+        String userId = (header == null || header.isBlank()) ? "anon" : header;
+        boolean events = req.getRequestURI().equals(EVENTS);
+
+        // an event stream stays open for minutes and only reads; it does not hold up a ring swap
+        Lock serving = events ? null : membership.servingLock();
+        if (serving != null) serving.lock();
+        String owner;
+        try {
+            owner = membership.ownerOf(userId);
+            if (membership.isLocal(owner)) {
+                chain.doFilter(req, res);
+                return;
+            }
+        } finally {
+            if (serving != null) serving.unlock();
+        }
+
+        if (PeerAuthFilter.isForwarded(req)) {
+            // routed here under a ring this node has already left; the sender's view catches up
+            res.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Cart moved to " + owner);
+            return;
+        }
+
+        String target = req.getRequestURI() + (req.getQueryString() == null ? "" : "?" + req.getQueryString());
+        if (redirect) {
+            res.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+            res.setHeader(HttpHeaders.LOCATION, owner + target);
+            return;
+        }
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : FORWARDED_HEADERS) {
+            String value = req.getHeader(name);
+            if (value != null) headers.put(name, value);
+        }
+        if (events) {
+            relayStream(req, owner, target, headers);
+            return;
+        }
+
+        byte[] body = req.getInputStream().readAllBytes();
+        HttpResponse<byte[]> answer;
+        try {
+            answer = client.forward(owner, req.getMethod(), target, headers, body, membership.self());
+        } catch (IOException e) {
+            log.warn("Forwarding {} {} to {} failed: {}", req.getMethod(), target, owner, e.toString());
+            res.sendError(HttpServletResponse.SC_BAD_GATEWAY, "Cart owner " + owner + " unreachable");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        res.setStatus(answer.statusCode());
+        copyHeaders(answer, res);
+        if (!HttpMethod.HEAD.matches(req.getMethod())) res.getOutputStream().write(answer.body());
+    }
+
+    /**
+     * Relays an event stream from the owner as it arrives. The request goes async and no
+     * thread waits on either side: each chunk is written when the owner sends it.
+     */
+    private void relayStream(HttpServletRequest req, String owner, String target, Map<String, String> headers) {
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0); // the owner closes the stream after cart.events.timeout
+        Relay relay = new Relay(async);
+        client.forwardStream(owner, req.getMethod(), target, headers, membership.self())
+                .whenComplete((answer, failure) -> {
+                    if (failure != null) {
+                        log.warn("Forwarding {} to {} failed: {}", target, owner, failure.toString());
+                        relay.fail(HttpServletResponse.SC_BAD_GATEWAY);
+                        return;
+                    }
+                    HttpServletResponse res = (HttpServletResponse) async.getResponse();
+                    res.setStatus(answer.statusCode());
+                    copyHeaders(answer, res);
+                    answer.body().subscribe(relay);
+                });
+    }
+
+    private static void copyHeaders(HttpResponse<?> answer, HttpServletResponse res) {
+        answer.headers().map().forEach((name, values) -> {
+            if (name.startsWith(":") || HOP_BY_HOP.contains(name.toLowerCase(Locale.ROOT))) return;
+            for (String value : values) res.addHeader(name, value);
+        });
+    }
+
+    /** Writes the owner's chunks to the client one at a time; stops reading when the client goes away. */
+    private static final class Relay implements Flow.Subscriber<List<ByteBuffer>>, AsyncListener {
+        private final AsyncContext async;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Flow.Subscription subscription;
+
+        Relay(AsyncContext async) {
+            this.async = async;
+            async.addListener(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            if (done.get()) {
+                s.cancel();
+                return;
+            }
+            try {
+                async.getResponse().flushBuffer(); // status and headers before the first event
+                s.request(1);
+            } catch (IOException | IllegalStateException e) {
+                stop();
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> chunk) {
+            try {
+                var out = async.getResponse().getOutputStream();
+                for (ByteBuffer buf : chunk) {
+                    byte[] bytes = new byte[buf.remaining()];
+                    buf.get(bytes);
+                    out.write(bytes);
+                }
+                async.getResponse().flushBuffer();
+                subscription.request(1);
+            } catch (IOException | IllegalStateException e) {
+                stop(); // the client is gone
+            }
+        }
+
+        @Override public void onError(Throwable failure) { complete(); }
+        @Override public void onComplete() { complete(); }
+
+        void fail(int status) {
+            if (done.get()) return;
+            try {
+                ((HttpServletResponse) async.getResponse()).setStatus(status);
+            } catch (IllegalStateException ignored) {
+                // already completed by the container
+            }
+            complete();
+        }
+
+        private void stop() {
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+            complete();
+        }
+
+        private void complete() {
+            if (!done.compareAndSet(false, true)) return;
+            try {
+                async.complete();
+            } catch (IllegalStateException ignored) {
+                // already completed by the container
+            }
+        }
+
+        // the container ended the request (client gone, error): stop reading from the owner
+        @Override public void onComplete(AsyncEvent event) { closed(); }
+        @Override public void onTimeout(AsyncEvent event) { closed(); }
+        @Override public void onError(AsyncEvent event) { closed(); }
+        @Override public void onStartAsync(AsyncEvent event) {}
+
+        private void closed() {
+            done.set(true);
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+        }
+    }
+}
@@ -1,101 +1,264 @@
 package com.example.cart.controller;
 
 import com.example.cart.model.AddItemRequest;
+import com.example.cart.model.BasketCounts;
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartQuantitiesView;
 import com.example.cart.model.CartRequest;
 import com.example.cart.model.CartTotalResponse;
+import com.example.cart.model.CartUpdateRequest;
+import com.example.cart.model.CartUpdateResponse;
 import com.example.cart.model.CartView;
-import com.example.cart.model.CartLine;
+import com.example.cart.pricing.FxRates;
+import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.service.BatchPricingService;
+import com.example.cart.service.CartEventService;
 import com.example.cart.service.ShoppingCartService;
+import com.example.cart.store.CartStore;
+import com.example.cart.store.Versioned;
+import com.example.cart.web.CartMediaTypes;
+import com.example.cart.web.ETags;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
 
+/**
+ * Stored-cart responses carry the cart's version as an ETag. Reads answer
+ * If-None-Match with 304 before copying, pricing or serialising anything;
+ * mutations with If-Match fail with 412 if the cart has changed since.
+ */
 @CrossOrigin(
         origins = "http://localhost:3000",
-        allowedHeaders = {"Authorization", "Content-Type", "X-User-Id"},
-        exposedHeaders = {"Authorization"}
+        allowedHeaders = {"Authorization", "Content-Type", "X-User-Id", "If-Match", "If-None-Match"},
+        exposedHeaders = {"Authorization", "ETag", "Retry-After"}
 )
 
 @RestController
 @RequestMapping(value = "/api/cart", produces = MediaType.APPLICATION_JSON_VALUE)
 public class CartController {
 
+    // the two cart formats are different representations, so they get different tags
+    private static final String QUANTITIES_TAG = ".q";
+
     private final ShoppingCartService service;
+    private final BatchPricingService batch;
+    private final ObjectMapper mapper;
+    private final FxRates fx;
+    private final PriceCatalog catalog;
+    private final CartEventService events;
 
-    // super-simple in-memory store: X-User-Id -> list of item names
-    private final Map<String, List<String>> carts = new ConcurrentHashMap<>();
+    // in-memory store: X-User-Id -> SKU quantity vector
+    private final CartStore store;
 
-    public CartController(ShoppingCartService service) {
+    public CartController(ShoppingCartService service, BatchPricingService batch, ObjectMapper mapper, FxRates fx,
+                          PriceCatalog catalog, CartEventService events, CartStore store) {
         this.service = service;
+        this.batch = batch;
+        this.mapper = mapper;
+        this.fx = fx;
+        this.catalog = catalog;
+        this.events = events;
+        this.store = store;
     }
 
     private String userIdFromHeaderOrDefault(String header) {
         return (header == null || header.isBlank()) ? "anon" : header;
     }
 
-    private List<String> getCart(String userId) {
-        return carts.computeIfAbsent(userId, _k -> new ArrayList<>());
-    }
-
     /** GET /api/cart — return current cart for the user */
     @GetMapping
-    public CartView view(@RequestHeader(value = "X-User-Id", required = false) String userHeader) {
+    public ResponseEntity<CartView> view(@RequestHeader(value = "X-User-Id", required = false) String userHeader,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String userId = userIdFromHeaderOrDefault(userHeader);
-        List<String> cart = List.copyOf(getCart(userId));
-        return new CartView(cart, cart.size());
+        String etag = store.etag(store.version(userId));
+        if (ETags.matches(ifNoneMatch, etag)) return notModified(etag);
+        return listResponse(store.versionedCounts(userId));
     }
 
-    /** POST /api/cart/items — add one item to cart */
-    @PostMapping(value = "/items", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public CartView addItem(@RequestHeader(value = "X-User-Id", required = false) String userHeader,
-                            @Valid @RequestBody AddItemRequest req) {
+    /** GET /api/cart (Accept: application/vnd.cart.quantities+json) — current cart as name -> qty */
+    @GetMapping(produces = CartMediaTypes.QUANTITIES_JSON_VALUE)
+    public ResponseEntity<CartQuantitiesView> viewQuantities(
+            @RequestHeader(value = "X-User-Id", required = false) String userHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String userId = userIdFromHeaderOrDefault(userHeader);
-        List<String> cart = getCart(userId);
-        cart.add(req.item().trim());
-        return new CartView(List.copyOf(cart), cart.size());
+        String etag = store.etag(store.version(userId)) + QUANTITIES_TAG;
+        if (ETags.matches(ifNoneMatch, etag)) return notModified(etag);
+        return quantitiesResponse(store.versionedCounts(userId));
+    }
+
+    /**
+     * GET /api/cart/events — server-sent events for the user's cart, instead of polling
+     * The first "cart" event carries the whole cart, later ones only the changed lines (see CartDelta).
+     * Rapid changes are coalesced; ?currency and Accept-Language apply as for /total.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@RequestHeader(value = "X-User-Id", required = false) String userHeader,
+                             @RequestParam(required = false) String currency,
+                             Locale locale) {
+        return events.subscribe(userIdFromHeaderOrDefault(userHeader), fx.resolve(currency), locale);
+    }
+
+    /** POST /api/cart/items — add one item (or qty items) to cart; If-Match makes it conditional */
+    @PostMapping(value = "/items", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CartView> addItem(@RequestHeader(value = "X-User-Id", required = false) String userHeader,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                            @Valid @RequestBody AddItemRequest req) {
+        return listResponse(store.add(userIdFromHeaderOrDefault(userHeader), req.item(), req.qtyOrOne(),
+                ETags.parseStrong(ifMatch)));
+    }
+
+    /** POST /api/cart/items (Accept: quantities) — as above, answering with name -> qty */
+    @PostMapping(value = "/items", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = CartMediaTypes.QUANTITIES_JSON_VALUE)
+    public ResponseEntity<CartQuantitiesView> addItemQuantities(
+            @RequestHeader(value = "X-User-Id", required = false) String userHeader,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @Valid @RequestBody AddItemRequest req) {
+        return quantitiesResponse(store.add(userIdFromHeaderOrDefault(userHeader), req.item(), req.qtyOrOne(),
+                ETags.parseStrong(ifMatch)));
     }
 
     /** DELETE /api/cart/items/{item} — remove one matching item */
     @DeleteMapping("/items/{item}")
-    public CartView removeItem(@RequestHeader(value = "X-User-Id", required = false) String userHeader,
-                               @PathVariable String item) {
-        String userId = userIdFromHeaderOrDefault(userHeader);
-        List<String> cart = getCart(userId);
-        for (int i = 0; i < cart.size(); i++) {
-            if (cart.get(i).equalsIgnoreCase(item)) {
-                cart.remove(i);
-                break;
-            }
-        }
-        return new CartView(List.copyOf(cart), cart.size());
+    public ResponseEntity<CartView> removeItem(@RequestHeader(value = "X-User-Id", required = false) String userHeader,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                               @PathVariable String item) {
+        return listResponse(store.remove(userIdFromHeaderOrDefault(userHeader), item, ETags.parseStrong(ifMatch)));
+    }
+
+    /** DELETE /api/cart/items/{item} (Accept: quantities) — as above, answering with name -> qty */
+    @DeleteMapping(value = "/items/{item}", produces = CartMediaTypes.QUANTITIES_JSON_VALUE)
+    public ResponseEntity<CartQuantitiesView> removeItemQuantities(
+            @RequestHeader(value = "X-User-Id", required = false) String userHeader,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @PathVariable String item) {
+        return quantitiesResponse(store.remove(userIdFromHeaderOrDefault(userHeader), item, ETags.parseStrong(ifMatch)));
     }
 
     /** DELETE /api/cart — clear the cart */
     @DeleteMapping
-    public void clear(@RequestHeader(value = "X-User-Id", required = false) String userHeader) {
-        String userId = userIdFromHeaderOrDefault(userHeader);
-        carts.put(userId, new ArrayList<>());
+    public ResponseEntity<Void> clear(@RequestHeader(value = "X-User-Id", required = false) String userHeader,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        long version = store.clear(userIdFromHeaderOrDefault(userHeader), ETags.parseStrong(ifMatch));
+        return ResponseEntity.ok().eTag(store.etag(version)).build();
+    }
+
+    /**
+     * PATCH /api/cart — apply a list of changes and answer with the cart and its bill, in one round trip
+     *   {"ops":[{"op":"add","item":"Melon","qty":2},{"op":"remove","item":"Lime"},{"op":"set","item":"Apple","qty":0},{"op":"clear"}]}
+     * The ops are applied atomically (all or none, If-Match checked once); an empty list just reads.
+     * ?currency and Accept-Language apply to the bill, as for /total.
+     */
+    @PatchMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CartUpdateResponse> update(
+            @RequestHeader(value = "X-User-Id", required = false) String userHeader,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(required = false) String currency,
+            Locale locale,
+            @Valid @RequestBody CartUpdateRequest req) {
+        String code = fx.resolve(currency);
+        Versioned<Bill> bill = store.update(userIdFromHeaderOrDefault(userHeader), req.ops(), ETags.parseStrong(ifMatch));
+        CartTotalResponse total = CartTotalResponse.of(code, locale, fx.convert(bill.value(), code));
+        return ResponseEntity.ok().eTag(store.etag(bill.version())).body(CartUpdateResponse.of(total));
     }
 
     /**
      * POST /api/cart/total — price the cart
-     * If body has items -> price those (ad-hoc).
-     * Else -> price the stored cart for the user.
+     * If body has items -> price those (ad-hoc), counted while the body is parsed.
+     *   application/json: {"items":["Melon","Melon"]}
+     *   application/vnd.cart.quantities+json: {"Melon":2}
+     * Else -> price the stored cart for the user, tagged with the cart and catalog versions
+     *   (If-None-Match -> 304 while neither has changed).
+     * ?currency=EUR converts the bill (cart.fx.rates); the total is formatted for Accept-Language.
      */
-    @PostMapping(value = "/total", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public CartTotalResponse total(@RequestHeader(value = "X-User-Id", required = false) String userHeader,
-                                   @RequestBody(required = false) CartRequest request) {
+    @PostMapping(value = "/total", consumes = {MediaType.APPLICATION_JSON_VALUE, CartMediaTypes.QUANTITIES_JSON_VALUE})
+    public ResponseEntity<CartTotalResponse> total(
+            @RequestHeader(value = "X-User-Id", required = false) String userHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestParam(required = false) String currency,
+            Locale locale,
+            @RequestBody(required = false) BasketCounts request) {
+        String code = fx.resolve(currency); // unsupported currencies fail before any pricing
+
+        // ad-hoc baskets are priced in one pass
+        if (request != null && request.counts() != null) {
+            return ResponseEntity.ok(CartTotalResponse.of(code, locale, fx.convert(service.price(request.counts()), code)));
+        }
+
+        // stored carts carry a running bill
         String userId = userIdFromHeaderOrDefault(userHeader);
-        List<String> items = (request != null && request.items() != null) ? request.items() : getCart(userId);
+        if (ifNoneMatch != null) {
+            String etag = totalTag(store.version(userId), catalog.snapshot().version(), fx.version(), code, locale);
+            if (ETags.matches(ifNoneMatch, etag)) return notModified(etag);
+        }
+        long rates = fx.version(); // read before converting, so the tag is never newer than the body
+        Versioned<Bill> bill = store.versionedBill(userId);
+        return ResponseEntity.ok()
+                .eTag(totalTag(bill.version(), bill.value().catalogVersion(), rates, code, locale))
+                .body(CartTotalResponse.of(code, locale, fx.convert(bill.value(), code)));
+    }
+
+    /**
+     * POST /api/cart/total/batch — price many ad-hoc baskets in one call
+     * Streams one NDJSON line per basket: {"index":0,"result":{...}} or {"index":1,"error":"..."}.
+     * order=input (default) keeps request order; order=completion emits as baskets finish.
+     * ?currency and Accept-Language apply to every basket, as for /total.
+     */
+    @PostMapping(value = "/total/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> totalBatch(@RequestParam(defaultValue = "input") String order,
+                                                            @RequestParam(required = false) String currency,
+                                                            Locale locale,
+                                                            @RequestBody List<CartRequest> baskets) {
+        boolean inputOrder = switch (order.toLowerCase(Locale.ROOT)) {
+            case "input" -> true;
+            case "completion" -> false;
+            default -> throw new IllegalArgumentException("Unknown order: " + order + " (use input or completion)");
+        };
+
+        // reject oversized batches up front, while we can still answer 400
+        batch.checkBatchSize(baskets);
+        String code = fx.resolve(currency);
+
+        StreamingResponseBody body = out -> batch.priceAll(baskets, inputOrder, code, locale, result -> {
+            try {
+                out.write(mapper.writeValueAsBytes(result));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
 
-        // Service should return total in pence + line items
-        int totalPence = service.calculateTotalPence(items);
-        List<CartLine> lines = service.calculateLines(items);
+    private ResponseEntity<CartView> listResponse(Versioned<SkuCounts> cart) {
+        return ResponseEntity.ok().eTag(store.etag(cart.version())).body(store.toView(cart.value()));
+    }
+
+    private ResponseEntity<CartQuantitiesView> quantitiesResponse(Versioned<SkuCounts> cart) {
+        return ResponseEntity.ok().eTag(store.etag(cart.version()) + QUANTITIES_TAG)
+                .body(store.toQuantities(cart.value()));
+    }
+
+    /** A total depends on the cart, the catalog it was priced with, the FX rates, and how it is presented. */
+    private String totalTag(long cartVersion, long catalogVersion, long rates, String currency, Locale locale) {
+        return store.etag(cartVersion) + ".c" + catalogVersion + ".r" + rates + "." + currency + "." + locale.toLanguageTag();
+    }
 
-        // Build response using static factory
-        return CartTotalResponse.ofPence("GBP", totalPence, lines);
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
     }
 }
@@ -0,0 +1,46 @@
+package com.example.cart.controller;
+
+import com.example.cart.cluster.ClusterService;
+import com.example.cart.cluster.PeerAuthFilter;
+import com.example.cart.model.CartHandoff;
+import com.example.cart.model.ClusterMembers;
+import com.example.cart.model.RebalanceResult;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+/** Node-to-node API for the sharded cart store. Only callers holding cart.cluster.secret get in (PeerAuthFilter). */
+@RestController
+@RequestMapping(value = "/internal/cluster", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ClusterController {
+
+    private final ClusterService cluster;
+
+    public ClusterController(ClusterService cluster) {
+        this.cluster = cluster;
+    }
+
+    /** GET /internal/cluster/members — current ring members */
+    @GetMapping("/members")
+    public ClusterMembers members() {
+        return cluster.members();
+    }
+
+    /**
+     * PUT /internal/cluster/members — replace the membership, e.g. {"nodes":["http://localhost:8081",...]}
+     * Sent to any one node; it updates its peers and every node hands off the carts it no longer owns.
+     */
+    @PutMapping(value = "/members", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public RebalanceResult changeMembers(HttpServletRequest req, @RequestBody ClusterMembers members) {
+        return cluster.changeMembers(members, !PeerAuthFilter.isForwarded(req));
+    }
+
+    /**
+     * PUT /internal/cluster/carts/{userId} — take a cart handed off by its previous owner,
+     * e.g. {"version":"k3x.41","items":{"Melon":2}}
+     */
+    @PutMapping(value = "/carts/{userId}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void receiveCart(@PathVariable String userId, @RequestBody CartHandoff handoff) {
+        cluster.receiveCart(userId, handoff);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.cart.metrics;
+
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartLine;
+import com.example.cart.pricing.CatalogSnapshot;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.pricing.offers.Offer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters recorded on the request path, scraped from /actuator/prometheus.
+ * Each is registered once and held here, so recording is a timer update or a
+ * counter increment with no registry lookup. HTTP endpoints are timed by
+ * Spring MVC itself (http.server.requests); gauges over the store and caches
+ * are read only at scrape time (see MetricsConfig).
+ */
+@Component
+public class CartMetrics {
+
+    /** Records nothing; for tests and tools. */
+    public static final CartMetrics NONE = new CartMetrics(new CompositeMeterRegistry());
+
+    private final MeterRegistry registry;
+    private final Timer pricing;
+    private final Timer jwtParse;
+    private final Counter unknownItems;
+    private final ConcurrentHashMap<String, Counter> offers = new ConcurrentHashMap<>();
+
+    public CartMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.pricing = Timer.builder("cart.pricing")
+                .description("Pricing one basket: catalog offers and promotions, lines and total")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(500))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(registry);
+        this.jwtParse = Timer.builder("cart.jwt.parse")
+                .description("Bearer token verification (signature and claims), on token-cache misses")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(500))
+                .maximumExpectedValue(Duration.ofMillis(100))
+                .register(registry);
+        this.unknownItems = Counter.builder("cart.items.unknown")
+                .description("Requests rejected for naming an item the catalog does not sell")
+                .register(registry);
+    }
+
+    public void pricing(long nanos) {
+        pricing.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void jwtParse(long nanos) {
+        jwtParse.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void unknownItem() {
+        unknownItems.increment();
+    }
+
+    /** Counts the bill's lines that a catalog offer made cheaper; lines are in counts order. */
+    public void offersApplied(Bill bill, SkuCounts counts, CatalogSnapshot snapshot) {
+        List<CartLine> lines = bill.lines();
+        for (int i = 0; i < lines.size(); i++) {
+            CartLine line = lines.get(i);
+            if (line.chargeableQty() < line.qty()) offerApplied(snapshot.offerOf(counts.skuAt(i)));
+        }
+    }
+
+    private void offerApplied(Offer offer) {
+        Counter c = offers.get(offer.name());
+        if (c == null) {
+            c = offers.computeIfAbsent(offer.name(), name -> Counter.builder("cart.offers.applied")
+                    .description("Bill lines discounted by a catalog offer")
+                    .tag("offer", name)
+                    .register(registry));
+        }
+        c.increment();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.cart.metrics;
+
+import com.example.cart.admission.AdmissionControl;
+import com.example.cart.auth.VerifiedTokenCache;
+import com.example.cart.pricing.promotions.PromotionEngine;
+import com.example.cart.service.BillCache;
+import com.example.cart.service.CartEventService;
+import com.example.cart.store.CartStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/** Gauges and counters read from existing components at scrape time; nothing is recorded per request. */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    MeterBinder cartStoreMetrics(CartStore store) {
+        return registry -> {
+            Gauge.builder("cart.store.carts", store, CartStore::size)
+                    .description("Carts held in memory on this node")
+                    .register(registry);
+            Gauge.builder("cart.store.units", store, CartStore::units)
+                    .description("Units held across the carts in memory on this node")
+                    .register(registry);
+            Gauge.builder("cart.store.bytes", store, s -> s.stats().estimatedBytes())
+                    .description("Estimated heap held by carts, against cart.store.max-size")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("cart.store.spilled", store, s -> s.stats().spilled())
+                    .description("Carts spilled to disk on this node")
+                    .register(registry);
+            FunctionCounter.builder("cart.store.evictions", store, s -> s.stats().evictedForSize())
+                    .description("Carts spilled from memory")
+                    .tag("cause", "size")
+                    .register(registry);
+            FunctionCounter.builder("cart.store.evictions", store, s -> s.stats().evictedIdle())
+                    .description("Carts spilled from memory")
+                    .tag("cause", "idle")
+                    .register(registry);
+            FunctionCounter.builder("cart.store.expirations", store, s -> s.stats().expired())
+                    .description("Carts dropped at cart.store.absolute-ttl")
+                    .register(registry);
+            FunctionCounter.builder("cart.store.reloads", store, s -> s.stats().reloads())
+                    .description("Carts read back from the spill")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    MeterBinder tokenCacheMetrics(VerifiedTokenCache cache) {
+        return registry -> {
+            FunctionCounter.builder("cart.jwt.cache.hits", cache, c -> c.stats().hits())
+                    .description("Bearer tokens answered from the verified-token cache")
+                    .register(registry);
+            FunctionCounter.builder("cart.jwt.cache.misses", cache, c -> c.stats().misses())
+                    .description("Bearer tokens that needed full verification")
+                    .register(registry);
+            Gauge.builder("cart.jwt.cache.size", cache, c -> c.stats().size())
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    MeterBinder promotionMetrics(PromotionEngine promotions) {
+        return registry -> FunctionCounter.builder("cart.promotions.budget.exhausted", promotions,
+                        PromotionEngine::budgetExhausted)
+                .description("Baskets whose promotion search ran out of cart.promotions.solver-budget")
+                .register(registry);
+    }
+
+    @Bean
+    MeterBinder billCacheMetrics(BillCache cache) {
+        return registry -> {
+            FunctionCounter.builder("cart.pricing.cache.hits", cache, c -> c.stats().hits())
+                    .description("Baskets answered from the priced-basket cache")
+                    .register(registry);
+            FunctionCounter.builder("cart.pricing.cache.misses", cache, c -> c.stats().misses())
+                    .description("Baskets that had to be priced")
+                    .register(registry);
+            FunctionCounter.builder("cart.pricing.cache.evictions", cache, c -> c.stats().evictions())
+                    .register(registry);
+            Gauge.builder("cart.pricing.cache.size", cache, c -> c.stats().size())
+                    .register(registry);
+            Gauge.builder("cart.pricing.cache.bytes", cache, c -> c.stats().estimatedBytes())
+                    .description("Estimated heap held by cached bills")
+                    .baseUnit("bytes")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    MeterBinder cartEventMetrics(CartEventService events) {
+        return registry -> Gauge.builder("cart.events.subscribers", events, CartEventService::subscriptions)
+                .description("Open GET /api/cart/events streams on this node")
+                .register(registry);
+    }
+
+    @Bean
+    MeterBinder admissionMetrics(AdmissionControl admission) {
+        return registry -> {
+            FunctionCounter.builder("cart.admission.admitted", admission, a -> a.stats().admitted())
+                    .description("Cart API requests let in by admission control")
+                    .register(registry);
+            FunctionCounter.builder("cart.admission.rejected", admission, a -> a.stats().rejectedUser())
+                    .description("Cart API requests answered 429")
+                    .tag("reason", AdmissionControl.USER)
+                    .register(registry);
+            FunctionCounter.builder("cart.admission.rejected", admission, a -> a.stats().rejectedOverload())
+                    .description("Cart API requests answered 429")
+                    .tag("reason", AdmissionControl.OVERLOAD)
+                    .register(registry);
+            Gauge.builder("cart.admission.in.flight", admission, a -> a.stats().inFlight())
+                    .description("Cost of admitted cart API requests still running, against cart.admission.max-in-flight")
+                    .register(registry);
+        };
+    }
+}
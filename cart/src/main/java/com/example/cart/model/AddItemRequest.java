@@ -1,7 +1,17 @@
 package com.example.cart.model;
 
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 
 public record AddItemRequest(
-        @NotBlank String item
-) {}
+        @NotBlank String item,
+        @Positive @Max(MAX_QTY) Integer qty   // optional; defaults to 1
+) {
+    /** Most units of one item a request may add, set or price, and a cart may hold. */
+    public static final int MAX_QTY = 10_000;
+
+    public int qtyOrOne() {
+        return qty == null ? 1 : qty;
+    }
+}
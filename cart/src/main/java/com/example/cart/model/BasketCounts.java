@@ -0,0 +1,11 @@
+package com.example.cart.model;
+
+import com.example.cart.pricing.SkuCounts;
+
+/**
+ * A /total request body counted straight into SKU quantities while it is parsed.
+ * counts is null when the body carried no "items" (price the stored cart instead).
+ */
+public record BasketCounts(
+        SkuCounts counts
+) {}
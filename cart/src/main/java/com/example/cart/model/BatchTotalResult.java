@@ -0,0 +1,19 @@
+package com.example.cart.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/** One NDJSON line of a batch pricing response: either a result or an error for the basket at {@code index}. */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchTotalResult(
+        int index,                  // position in the request array
+        CartTotalResponse result,   // null when the basket was rejected
+        String error                // e.g. "Unknown item: Orange"
+) {
+    public static BatchTotalResult ok(int index, CartTotalResponse result) {
+        return new BatchTotalResult(index, result, null);
+    }
+
+    public static BatchTotalResult failed(int index, String error) {
+        return new BatchTotalResult(index, null, error);
+    }
+}
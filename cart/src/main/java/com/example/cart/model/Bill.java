@@ -0,0 +1,21 @@
+package com.example.cart.model;
+
+import com.example.cart.util.Money;
+
+import java.util.List;
+
+/** Priced basket: bill lines plus grand total, produced together in one pass against one catalog version. */
+public record Bill(
+        List<CartLine> lines,
+        int totalPence,       // 235
+        long catalogVersion
+) {
+    public static Bill empty(long catalogVersion) {
+        return new Bill(List.of(), 0, catalogVersion);
+    }
+
+    /** The total as Money; a bill's amounts are in the currency it was priced in or converted to. */
+    public Money total(String currency) {
+        return Money.of(totalPence, currency);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.cart.model;
+
+import java.util.List;
+
+/**
+ * One "cart" event on GET /api/cart/events: the lines that changed since the
+ * subscriber's previous event, the items that left the cart, and the new total.
+ * The first event after subscribing is full (every line, nothing removed).
+ */
+public record CartDelta(
+        long version,          // cart version, as in the cart's ETag
+        boolean full,          // true: lines is the whole cart; replace, don't merge
+        List<CartLine> lines,  // added or changed lines, in cart order
+        List<String> removed,  // items no longer in the cart
+        int count,             // units across the cart
+        String currency,
+        int totalPence,
+        String totalFormatted
+) {}
@@ -0,0 +1,6 @@
+package com.example.cart.model;
+
+import java.util.Map;
+
+/** A cart passed to its new owner: its lines, and its entity tag on the node that held it. */
+public record CartHandoff(String version, Map<String, Integer> items) {}
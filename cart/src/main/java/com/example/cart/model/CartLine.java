@@ -1,9 +1,16 @@
 package com.example.cart.model;
 
+import java.util.List;
+
 public record CartLine(
         String item,          // "Apple"
         int qty,              // 4
         int chargeableQty,    // 3 (if 3-for-2)
         int unitPricePence,   // 35
-        int lineTotalPence    // 105
-) {}
+        int lineTotalPence,   // 105, after discounts
+        List<Discount> discounts // promotions applied to this line, if any
+) {
+    public CartLine(String item, int qty, int chargeableQty, int unitPricePence, int lineTotalPence) {
+        this(item, qty, chargeableQty, unitPricePence, lineTotalPence, List.of());
+    }
+}
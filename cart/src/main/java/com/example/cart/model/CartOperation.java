@@ -0,0 +1,36 @@
+package com.example.cart.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+/** One change in a PATCH /api/cart: {"op":"add","item":"Melon","qty":2}, {"op":"clear"}. */
+public record CartOperation(
+        @NotNull Type op,
+        String item,              // required except for clear
+        @PositiveOrZero @Max(AddItemRequest.MAX_QTY) Integer qty   // add/remove: units (default 1); set: the new quantity (required)
+) {
+    public enum Type {
+        @JsonProperty("add") ADD,
+        @JsonProperty("remove") REMOVE,
+        @JsonProperty("set") SET,
+        @JsonProperty("clear") CLEAR
+    }
+
+    public static CartOperation add(String item, int qty) {
+        return new CartOperation(Type.ADD, item, qty);
+    }
+
+    public static CartOperation remove(String item, int qty) {
+        return new CartOperation(Type.REMOVE, item, qty);
+    }
+
+    public static CartOperation set(String item, int qty) {
+        return new CartOperation(Type.SET, item, qty);
+    }
+
+    public static CartOperation clear() {
+        return new CartOperation(Type.CLEAR, null, null);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.cart.model;
+
+import java.util.Map;
+
+/** Compact cart representation: {"cart":{"Melon":200,"Lime":3},"count":203}. */
+public record CartQuantitiesView(
+        Map<String, Integer> cart,
+        int count
+) {}
@@ -1,16 +1,22 @@
 package com.example.cart.model;
 
-import com.example.cart.util.MoneyUtil;
+import com.example.cart.util.Money;
 
 import java.util.List;
+import java.util.Locale;
 
+/** A priced basket as returned to clients; every *Pence amount is in minor units of currency. */
 public record CartTotalResponse(
         String currency,      // "GBP"
         int totalPence,       // 235
         String totalFormatted,// "£2.35"
-        List<CartLine> lines
+        List<CartLine> lines,
+        long catalogVersion   // price catalog version the bill was computed with
 ) {
-    public static CartTotalResponse ofPence(String currency, int totalPence, List<CartLine> lines) {
-        return new CartTotalResponse(currency, totalPence, MoneyUtil.formatGBP(totalPence), List.copyOf(lines));
+    /** A bill already in currency, with its total formatted for locale. */
+    public static CartTotalResponse of(String currency, Locale locale, Bill bill) {
+        Money total = bill.total(currency);
+        return new CartTotalResponse(currency, bill.totalPence(), total.format(locale),
+                List.copyOf(bill.lines()), bill.catalogVersion());
     }
 }
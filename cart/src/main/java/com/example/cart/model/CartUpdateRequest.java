@@ -0,0 +1,13 @@
+package com.example.cart.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/** PATCH /api/cart body: operations applied in order, all or none. An empty list just reads the cart. */
+public record CartUpdateRequest(
+        @NotNull @Size(max = 1000)
+        List<@NotNull @Valid CartOperation> ops
+) {}
@@ -0,0 +1,22 @@
+package com.example.cart.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The stored cart after a PATCH, as name -> qty, together with its bill. */
+public record CartUpdateResponse(
+        Map<String, Integer> cart,
+        int count,
+        CartTotalResponse bill
+) {
+    /** The bill's lines are the cart's lines, so the quantities are read straight off it. */
+    public static CartUpdateResponse of(CartTotalResponse bill) {
+        Map<String, Integer> cart = new LinkedHashMap<>();
+        int count = 0;
+        for (CartLine line : bill.lines()) {
+            cart.put(line.item(), line.qty());
+            count += line.qty();
+        }
+        return new CartUpdateResponse(cart, count, bill);
+    }
+}
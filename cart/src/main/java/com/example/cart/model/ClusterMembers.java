@@ -0,0 +1,6 @@
+package com.example.cart.model;
+
+import java.util.List;
+
+/** Base URLs of the nodes sharing the cart ring, e.g. http://localhost:8081. */
+public record ClusterMembers(List<String> nodes) {}
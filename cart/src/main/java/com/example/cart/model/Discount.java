@@ -0,0 +1,7 @@
+package com.example.cart.model;
+
+/** A promotion's saving on one bill line. */
+public record Discount(
+        String promotion,     // "meal-deal"
+        int savingPence       // 120
+) {}
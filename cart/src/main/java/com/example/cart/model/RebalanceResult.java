@@ -0,0 +1,10 @@
+package com.example.cart.model;
+
+import java.util.List;
+
+/**
+ * Outcome of a membership change on one node: the new ring, how many carts it handed off,
+ * how many it still holds for an owner it could not reach (retried), and the peers it could
+ * not tell about the change.
+ */
+public record RebalanceResult(List<String> nodes, int cartsHandedOff, int cartsPending, List<String> unreachable) {}
@@ -0,0 +1,12 @@
+package com.example.cart.pricing;
+
+/**
+ * A quantity or money amount past int range, built from the request's own numbers.
+ * Still an IllegalArgumentException, so still a 400; see {@link Amounts}.
+ */
+public class AmountOverflowException extends IllegalArgumentException {
+
+    public AmountOverflowException() {
+        super("Quantity or total too large");
+    }
+}
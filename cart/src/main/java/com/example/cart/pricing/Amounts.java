@@ -0,0 +1,48 @@
+package com.example.cart.pricing;
+
+/**
+ * Exact arithmetic on quantities and minor units. Overflow there means the request asked
+ * for too much, so it throws {@link AmountOverflowException} (a 400); any other
+ * ArithmeticException is left to surface as the bug it is.
+ */
+public final class Amounts {
+
+    private Amounts() {}
+
+    public static int add(int a, int b) {
+        try {
+            return Math.addExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new AmountOverflowException();
+        }
+    }
+
+    public static long add(long a, long b) {
+        try {
+            return Math.addExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new AmountOverflowException();
+        }
+    }
+
+    public static int multiply(int a, int b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new AmountOverflowException();
+        }
+    }
+
+    public static long multiply(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new AmountOverflowException();
+        }
+    }
+
+    public static int toInt(long value) {
+        if ((int) value != value) throw new AmountOverflowException();
+        return (int) value;
+    }
+}
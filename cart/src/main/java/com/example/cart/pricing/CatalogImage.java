@@ -0,0 +1,274 @@
+package com.example.cart.pricing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a catalog data file into a memory-mappable image and maps it back.
+ *
+ * Source (UTF-8, one SKU per line, '#' comments): name,pricePence[,offer]
+ * e.g. "Melon,50,BOGO". The name as written is the canonical display name;
+ * lookups match it case-insensitively. Names must not contain commas.
+ *
+ * Image layout (big-endian, one file, under 2 GB):
+ *   header    magic, format, n SKUs, m slots, b buckets, section offsets
+ *   buckets   int[b]  CHD displacement per bucket (about 3 SKUs per bucket)
+ *   slots     int[m]  SKU id per hash slot, -1 = empty (m = n + 5%)
+ *   records   12 bytes per SKU id: int name offset, int price,
+ *             short name length, byte offer type (high bit = retired), pad
+ *   blob      UTF-8 display names
+ *
+ * A name is found with one hash pass, three reads (bucket, slot, record)
+ * and one verifying compare against the blob, so lookups cost the same at
+ * 4 or 4 million SKUs and nothing is copied onto the heap. Everything about
+ * one SKU sits in one record, so a lookup plus its price touches few pages.
+ */
+public final class CatalogImage {
+
+    static final int MAGIC = 0x534B5549; // "SKUI"
+    static final int FORMAT = 1;
+    static final int HEADER = 64;
+    static final int RECORD = 12;
+    static final int BUCKET_SIZE = 3;        // average keys per bucket
+    static final int MAX_DISPLACEMENT = 1 << 24;
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private CatalogImage() {}
+
+    /** One catalog line, in SKU id order. */
+    record Entry(String name, int price, int offerId, boolean active) {}
+
+    /**
+     * Compiles source into image. SKUs known to previous keep their ids (and
+     * stay in the image as retired when the source drops them); new SKUs are
+     * numbered after them, in source order. The image is written to a temp
+     * file and moved into place, so a mapped older image is never torn.
+     */
+    public static int compile(Path source, Path image, CatalogSnapshot previous) throws IOException {
+        Map<String, Entry> rows = readSource(source);
+        List<Entry> entries = new ArrayList<>(rows.size());
+        if (previous != null) {
+            for (int id = 0; id < previous.skuCount(); id++) {
+                String name = previous.nameOf(id);
+                Entry row = rows.remove(CatalogSnapshot.normalize(name));
+                entries.add(row != null ? row
+                        : new Entry(name, previous.priceOf(id), previous.offerIdOf(id), false));
+            }
+        }
+        entries.addAll(rows.values());
+        write(entries, image);
+        return entries.size();
+    }
+
+    /** Maps a compiled image read-only. */
+    static MappedSkuTable map(Path image) throws IOException {
+        try (FileChannel ch = FileChannel.open(image, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Catalog image over 2 GB: " + image);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new MappedSkuTable(buf, image);
+        }
+    }
+
+    private static Map<String, Entry> readSource(Path source) throws IOException {
+        Map<String, Entry> rows = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            int lineNo = 0;
+            for (String line; (line = in.readLine()) != null; ) {
+                lineNo++;
+                String t = line.strip();
+                if (t.isEmpty() || t.startsWith("#")) continue;
+                String[] f = t.split(",", -1);
+                if (f.length < 2 || f.length > 3 || f[0].isBlank()) {
+                    throw new IllegalArgumentException(source + ":" + lineNo + ": expected name,pricePence[,offer]");
+                }
+                String name = f[0].strip();
+                int price;
+                try {
+                    price = Integer.parseInt(f[1].strip());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(source + ":" + lineNo + ": bad price '" + f[1] + "'");
+                }
+                if (price < 0) throw new IllegalArgumentException(source + ":" + lineNo + ": negative price");
+                int offer = CatalogSnapshot.offerId(f.length == 3 ? f[2] : null);
+                if (rows.putIfAbsent(CatalogSnapshot.normalize(name), new Entry(name, price, offer, true)) != null) {
+                    throw new IllegalArgumentException(source + ":" + lineNo + ": duplicate item '" + name + "'");
+                }
+            }
+        }
+        return rows;
+    }
+
+    static void write(List<Entry> entries, Path image) throws IOException {
+        int n = entries.size();
+        int m = n + n / 20 + 1;
+        int b = Math.max(1, n / BUCKET_SIZE);
+
+        long[] hashes = new long[n];
+        byte[][] names = new byte[n][];
+        long blobSize = 0;
+        for (int id = 0; id < n; id++) {
+            String name = entries.get(id).name();
+            hashes[id] = hash(name, 0, name.length());
+            names[id] = name.getBytes(StandardCharsets.UTF_8);
+            if (names[id].length > 0xFFFF) throw new IllegalArgumentException("Item name too long: " + name);
+            blobSize += names[id].length;
+        }
+        int[] buckets = new int[b];
+        int[] slots = displace(hashes, m, buckets);
+
+        long bucketsOff = HEADER;
+        long slotsOff = bucketsOff + 4L * b;
+        long recordsOff = slotsOff + 4L * m;
+        long blobOff = recordsOff + (long) RECORD * n;
+        long length = blobOff + blobSize;
+        if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("Catalog image would exceed 2 GB");
+
+        Path tmp = image.resolveSibling(image.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            out.putInt(0, MAGIC).putInt(4, FORMAT).putInt(8, n).putInt(12, m).putInt(16, b)
+                    .putInt(20, (int) bucketsOff).putInt(24, (int) slotsOff).putInt(28, (int) recordsOff)
+                    .putInt(32, (int) blobOff).putInt(36, (int) length);
+            for (int i = 0; i < b; i++) out.putInt((int) bucketsOff + 4 * i, buckets[i]);
+            for (int i = 0; i < m; i++) out.putInt((int) slotsOff + 4 * i, slots[i]);
+            int nameOff = 0;
+            for (int id = 0; id < n; id++) {
+                Entry e = entries.get(id);
+                int r = (int) recordsOff + RECORD * id;
+                out.putInt(r, nameOff)
+                        .putInt(r + 4, e.price())
+                        .putShort(r + 8, (short) names[id].length)
+                        .put(r + 10, (byte) (e.offerId() | (e.active() ? 0 : 0x80)));
+                out.put((int) blobOff + nameOff, names[id]);
+                nameOff += names[id].length;
+            }
+            out.force();
+        }
+        Files.move(tmp, image, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * CHD ("compress, hash, displace"): keys are grouped into buckets; buckets
+     * are placed largest first, each trying displacements d = 0, 1, ... until
+     * all of its keys land in free slots. Returns slot -> id.
+     */
+    private static int[] displace(long[] hashes, int m, int[] displacement) {
+        int n = hashes.length;
+        int b = displacement.length;
+
+        // keys grouped by bucket (counting sort)
+        int[] start = new int[b + 1];
+        for (long h : hashes) start[bucketOf(h, b) + 1]++;
+        for (int i = 0; i < b; i++) start[i + 1] += start[i];
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(start, b);
+        for (int id = 0; id < n; id++) members[fill[bucketOf(hashes[id], b)]++] = id;
+
+        // buckets largest first (counting sort by size)
+        int maxSize = 0;
+        for (int i = 0; i < b; i++) maxSize = Math.max(maxSize, start[i + 1] - start[i]);
+        int[] bySize = new int[maxSize + 2];
+        for (int i = 0; i < b; i++) bySize[maxSize - (start[i + 1] - start[i]) + 1]++;
+        for (int i = 0; i <= maxSize; i++) bySize[i + 1] += bySize[i];
+        int[] order = new int[b];
+        for (int i = 0; i < b; i++) order[bySize[maxSize - (start[i + 1] - start[i])]++] = i;
+
+        int[] slots = new int[m];
+        Arrays.fill(slots, -1);
+        int[] tried = new int[maxSize];
+        for (int bucket : order) {
+            int from = start[bucket], size = start[bucket + 1] - from;
+            if (size == 0) break;
+            for (int d = 0; ; d++) {
+                if (d == MAX_DISPLACEMENT) {
+                    throw new IllegalStateException("Cannot place bucket " + bucket + "; duplicate names?");
+                }
+                int placed = 0;
+                for (; placed < size; placed++) {
+                    int s = slotOf(hashes[members[from + placed]], d, m);
+                    if (slots[s] != -1) break;
+                    slots[s] = members[from + placed];
+                    tried[placed] = s;
+                }
+                if (placed == size) {
+                    displacement[bucket] = d;
+                    break;
+                }
+                for (int i = 0; i < placed; i++) slots[tried[i]] = -1; // undo partial placement
+            }
+        }
+        return slots;
+    }
+
+    static int bucketOf(long h, int buckets) {
+        return (int) Long.remainderUnsigned(h, buckets);
+    }
+
+    static int slotOf(long h, int d, int slots) {
+        return (int) Long.remainderUnsigned(mix(h + d * GOLDEN), slots);
+    }
+
+    /** 64-bit FNV-1a over the lower-cased chars of s[start, end); trimming is the caller's job. */
+    static long hash(CharSequence s, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= Character.toLowerCase(s.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static long hash(char[] s, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= Character.toLowerCase(s[i]);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Offline build: CatalogImage source.csv out.idx
+     * (the server also compiles a .csv catalog itself when its image is missing or stale)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: CatalogImage <source.csv> <image.idx>");
+            System.exit(2);
+        }
+        long t0 = System.nanoTime();
+        int n = compile(Path.of(args[0]), Path.of(args[1]), null);
+        System.out.printf("%d SKUs -> %s (%d bytes) in %d ms%n", n, args[1], Files.size(Path.of(args[1])),
+                (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    static ByteBuffer header(ByteBuffer buf) {
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT) throw new IllegalArgumentException("Not a catalog image");
+        if (buf.getInt(36) != buf.capacity()) throw new IllegalArgumentException("Truncated catalog image");
+        return buf;
+    }
+}
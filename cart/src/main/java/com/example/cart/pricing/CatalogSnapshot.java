@@ -0,0 +1,183 @@
+package com.example.cart.pricing;
+
+import com.example.cart.pricing.offers.BuyOneGetOneFree;
+import com.example.cart.pricing.offers.Offer;
+import com.example.cart.pricing.offers.ThreeForTwo;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One immutable, versioned state of the price catalog. Pricing code takes
+ * a snapshot once and uses it for the whole basket, so a reload in the
+ * middle never mixes old and new prices.
+ *
+ * SKU ids are stable across versions: a SKU keeps its id for as long as
+ * the process runs, new SKUs get new ids, and a SKU dropped from the price
+ * table is retired rather than renumbered. Retired SKUs can no longer be
+ * looked up by name, but carts already holding one still price it at its
+ * last known price.
+ *
+ * Storage is a {@link SkuTable}: heap arrays for a properties catalog, or a
+ * memory-mapped {@link CatalogImage} for a data-file catalog of any size.
+ */
+public final class CatalogSnapshot {
+
+    static final Offer NO_OFFER = count -> count;
+
+    /** Offer strategies by offer id; id 0 = pay for every unit. */
+    static final Offer[] OFFER_TYPES = {NO_OFFER, new BuyOneGetOneFree(), new ThreeForTwo()};
+
+    private final long version;
+    private final SkuTable table;
+
+    private CatalogSnapshot(long version, SkuTable table) {
+        this.version = version;
+        this.table = table;
+    }
+
+    /**
+     * Builds the next version from a price table and offer types held on the heap.
+     * previous may be null for the first version.
+     */
+    static CatalogSnapshot build(CatalogSnapshot previous, Map<String, Integer> priceTable, Map<String, String> offerTypes) {
+        Map<String, Integer> offersByName = new HashMap<>();
+        offerTypes.forEach((k, v) -> offersByName.put(normalize(k), offerId(v)));
+
+        Map<String, Integer> byName = new LinkedHashMap<>();
+        priceTable.forEach((k, v) -> {
+            if (v == null || v < 0) throw new IllegalArgumentException("Bad price for " + k + ": " + v);
+            byName.putIfAbsent(normalize(k), v);
+        });
+
+        // existing ids first, in id order; then new SKUs in price-table order
+        int kept = previous == null ? 0 : previous.skuCount();
+        int n = kept;
+        for (String key : byName.keySet()) {
+            if (previous == null || previous.table.find(key) < 0) n++; // retired keys are still indexed
+        }
+        String[] keys = new String[n];
+        String[] names = new String[n];
+        int[] prices = new int[n];
+        byte[] offers = new byte[n];
+        boolean[] active = new boolean[n];
+
+        for (int id = 0; id < kept; id++) {
+            names[id] = previous.nameOf(id);
+            keys[id] = normalize(names[id]);
+            Integer price = byName.remove(keys[id]);
+            active[id] = price != null;
+            prices[id] = active[id] ? price : previous.priceOf(id);
+            offers[id] = (byte) (active[id] ? offersByName.getOrDefault(keys[id], 0) : previous.offerIdOf(id));
+        }
+        int id = kept;
+        for (Map.Entry<String, Integer> e : byName.entrySet()) {
+            keys[id] = e.getKey();
+            names[id] = displayName(e.getKey());
+            prices[id] = e.getValue();
+            offers[id] = (byte) (int) offersByName.getOrDefault(e.getKey(), 0);
+            active[id] = true;
+            id++;
+        }
+
+        return new CatalogSnapshot(nextVersion(previous), new HeapSkuTable(keys, names, prices, offers, active));
+    }
+
+    /**
+     * Wraps a mapped catalog image as the next version. The image must keep
+     * every SKU id of previous (CatalogImage.compile with previous does).
+     */
+    static CatalogSnapshot mapped(CatalogSnapshot previous, MappedSkuTable table) {
+        if (previous != null) {
+            if (table.size() < previous.skuCount()) {
+                throw new IllegalArgumentException("Catalog image " + table.file() + " drops SKU ids");
+            }
+            for (int id = 0; id < previous.skuCount(); id++) {
+                if (!normalize(previous.nameOf(id)).equals(normalize(table.nameOf(id)))) {
+                    throw new IllegalArgumentException("Catalog image " + table.file() + " renumbers SKU "
+                            + previous.nameOf(id) + "; compile it against the running catalog");
+                }
+            }
+        }
+        return new CatalogSnapshot(nextVersion(previous), table);
+    }
+
+    private static long nextVersion(CatalogSnapshot previous) {
+        return previous == null ? 1 : previous.version + 1;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /** Dense SKU id for the item (throws IllegalArgumentException for unknowns). */
+    public int idOf(String rawName) {
+        int id = findId(rawName);
+        if (id < 0) throw new UnknownItemException(rawName);
+        return id;
+    }
+
+    /** Dense SKU id for the item, or -1 if it is not (or no longer) sold. Does not allocate. */
+    public int findId(CharSequence rawName) {
+        int id = table.find(rawName);
+        return id >= 0 && table.isActive(id) ? id : -1;
+    }
+
+    /** As findId(CharSequence), for a name held in a parser's char buffer. */
+    public int findId(char[] buf, int off, int len) {
+        int id = table.find(buf, off, len);
+        return id >= 0 && table.isActive(id) ? id : -1;
+    }
+
+    /** Canonical display name for a SKU id. */
+    public String nameOf(int sku) {
+        return table.nameOf(sku);
+    }
+
+    /** Unit price in pence for a SKU id. */
+    public int priceOf(int sku) {
+        return table.priceOf(sku);
+    }
+
+    /** Offer for a SKU id (pay-for-every-unit when none is configured). */
+    public Offer offerOf(int sku) {
+        return OFFER_TYPES[table.offerIdOf(sku)];
+    }
+
+    /** Offer for a raw item name (pay-for-every-unit for unknown items or when none is configured). */
+    public Offer offerOf(String rawName) {
+        int id = findId(rawName);
+        return id < 0 ? NO_OFFER : offerOf(id);
+    }
+
+    int offerIdOf(int sku) {
+        return table.offerIdOf(sku);
+    }
+
+    /** Number of SKU ids ever assigned, retired ones included. */
+    public int skuCount() {
+        return table.size();
+    }
+
+    static String normalize(String s) {
+        if (s == null) return "";
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Properties catalogs only have lower-case keys; data-file catalogs carry their own display names. */
+    private static String displayName(String key) {
+        return key.isEmpty() ? key : key.substring(0, 1).toUpperCase(Locale.ROOT) + key.substring(1);
+    }
+
+    static int offerId(String type) {
+        if (type == null) return 0;
+
+        return switch (type.trim().toUpperCase(Locale.ROOT)) {
+            case "BOGO", "BUY_ONE_GET_ONE_FREE" -> 1;
+            case "THREE_FOR_TWO", "3_FOR_2"     -> 2;
+            default                             -> 0;
+        };
+    }
+}
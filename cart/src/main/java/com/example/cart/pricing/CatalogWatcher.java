@@ -0,0 +1,86 @@
+package com.example.cart.pricing;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the catalog when cart.catalog.file changes. Editors often write a
+ * file in several steps, so events are coalesced for a short quiet period
+ * before reloading. A file that fails to parse is logged and ignored; the
+ * previous version keeps serving.
+ */
+@Component
+public class CatalogWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogWatcher.class);
+    private static final long QUIET_PERIOD_MS = 100;
+
+    private final PriceCatalog catalog;
+    private WatchService watcher;
+    private Thread thread;
+
+    public CatalogWatcher(PriceCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        Path file = catalog.catalogFile();
+        if (file == null) return;
+
+        Path dir = file.toAbsolutePath().getParent();
+        watcher = FileSystems.getDefault().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = Thread.ofPlatform().daemon().name("catalog-watcher").start(() -> watch(file.getFileName()));
+        log.info("Watching {} for price changes (catalog version {})", file, catalog.snapshot().version());
+    }
+
+    private void watch(Path name) {
+        try {
+            while (true) {
+                if (!touches(watcher.take(), name)) continue;
+                // drain the burst, then reload once
+                for (WatchKey more; (more = watcher.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) != null; ) {
+                    touches(more, name);
+                }
+                try {
+                    CatalogSnapshot s = catalog.reload();
+                    log.info("Price catalog reloaded: version {} ({} SKUs)", s.version(), s.skuCount());
+                } catch (RuntimeException e) {
+                    log.warn("Price catalog reload failed; keeping version {}: {}",
+                            catalog.snapshot().version(), e.toString());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+
+    private static boolean touches(WatchKey key, Path name) {
+        boolean hit = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (name.equals(event.context())) hit = true;
+        }
+        key.reset();
+        return hit;
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (watcher != null) watcher.close();
+        if (thread != null) thread.interrupt();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.cart.pricing;
+
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartLine;
+import com.example.cart.model.Discount;
+import com.example.cart.util.Money;
+import com.example.cart.util.MoneyFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory exchange rates from the catalog's currency (cart.fx.base) to the
+ * currencies shoppers may see. Baskets are always priced in the base currency;
+ * a bill is converted afterwards, line by line, so lines still add up to the
+ * total. Without cart.fx.rates only the base currency is offered.
+ */
+@Component
+public class FxRates {
+
+    private final String base;
+    private volatile Map<String, BigDecimal> factors; // currency -> target minor units per base minor unit
+    private final AtomicLong version = new AtomicLong();
+
+    @Autowired
+    public FxRates(@Value("${cart.fx.base:GBP}") String base, @Value("${cart.fx.rates:}") String rates) {
+        this(base, parse(rates));
+    }
+
+    /** For tests and tools: rates as units of each currency per one unit of base. */
+    public FxRates(String base, Map<String, BigDecimal> rates) {
+        this.base = base.toUpperCase(Locale.ROOT);
+        MoneyFormat.fractionDigits(this.base); // rejects unknown codes
+        this.factors = factors(this.base, rates);
+    }
+
+    public String base() {
+        return base;
+    }
+
+    /** Bumped by every update(), so anything cached from converted amounts can tell it is stale. */
+    public long version() {
+        return version.get();
+    }
+
+    /** Replaces the whole table and bumps version(); bills converted from now on use the new rates. */
+    public void update(Map<String, BigDecimal> rates) {
+        this.factors = factors(base, rates);
+        version.incrementAndGet(); // after the table: a reader that sees the new version converts with the new rates
+    }
+
+    private static Map<String, BigDecimal> factors(String base, Map<String, BigDecimal> rates) {
+        Map<String, BigDecimal> next = new HashMap<>();
+        next.put(base, BigDecimal.ONE);
+        rates.forEach((code, rate) -> {
+            String currency = code.toUpperCase(Locale.ROOT);
+            if (rate.signum() <= 0) throw new IllegalArgumentException("Bad FX rate for " + currency + ": " + rate);
+            int shift = MoneyFormat.fractionDigits(currency) - MoneyFormat.fractionDigits(base);
+            if (!currency.equals(base)) next.put(currency, rate.movePointRight(shift));
+        });
+        return Map.copyOf(next);
+    }
+
+    /** The currency to price in: base when none is asked for; IllegalArgumentException when there is no rate. */
+    public String resolve(String currency) {
+        if (currency == null || currency.isBlank()) return base;
+        String code = currency.trim().toUpperCase(Locale.ROOT);
+        if (!factors.containsKey(code)) throw new IllegalArgumentException("Unsupported currency: " + currency);
+        return code;
+    }
+
+    /** An amount in the base currency in currency, rounded half-even to its minor unit. */
+    public Money convert(Money amount, String currency) {
+        if (!amount.currency().equals(base)) {
+            throw new IllegalArgumentException("Rates convert from " + base + ", not " + amount.currency());
+        }
+        String code = resolve(currency);
+        BigDecimal factor = factors.get(code);
+        if (factor.equals(BigDecimal.ONE)) return amount;
+        try {
+            return Money.of(BigDecimal.valueOf(amount.minor()).multiply(factor).setScale(0, RoundingMode.HALF_EVEN)
+                    .longValueExact(), code);
+        } catch (ArithmeticException e) {
+            throw new AmountOverflowException();
+        }
+    }
+
+    /**
+     * The bill in currency. Unit prices and discounts are converted; line totals
+     * are recomputed from them and the total is their sum, so the converted bill
+     * adds up the same way the original does.
+     */
+    public Bill convert(Bill bill, String currency) {
+        String code = resolve(currency);
+        if (code.equals(base)) return bill;
+        List<CartLine> lines = new ArrayList<>(bill.lines().size());
+        int total = 0;
+        for (CartLine line : bill.lines()) {
+            int unit = Amounts.toInt(convert(Money.of(line.unitPricePence(), base), code).minor());
+            int lineTotal = Amounts.multiply(line.chargeableQty(), unit);
+            List<Discount> discounts = new ArrayList<>(line.discounts().size());
+            for (Discount d : line.discounts()) {
+                int saving = Amounts.toInt(convert(Money.of(d.savingPence(), base), code).minor());
+                discounts.add(new Discount(d.promotion(), saving));
+                lineTotal -= saving;
+            }
+            lines.add(new CartLine(line.item(), line.qty(), line.chargeableQty(), unit, lineTotal, List.copyOf(discounts)));
+            total = Amounts.add(total, lineTotal);
+        }
+        return new Bill(List.copyOf(lines), total, bill.catalogVersion());
+    }
+
+    /** "EUR:1.17,USD:1.27" */
+    static Map<String, BigDecimal> parse(String rates) {
+        Map<String, BigDecimal> parsed = new HashMap<>();
+        if (rates == null || rates.isBlank()) return parsed;
+        for (String entry : rates.split(",")) {
+            String[] kv = entry.split("[:=]");
+            if (kv.length != 2) throw new IllegalArgumentException("Bad FX rate: " + entry.trim() + " (use CODE:rate)");
+            parsed.put(kv[0].trim(), new BigDecimal(kv[1].trim()));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.cart.pricing;
+
+/** SkuTable on plain arrays, for catalogs small enough to build at startup from properties. */
+final class HeapSkuTable implements SkuTable {
+
+    private final SkuIndex index;
+    private final String[] names;
+    private final int[] prices;
+    private final byte[] offerIds;
+    private final boolean[] active;
+
+    HeapSkuTable(String[] keys, String[] names, int[] prices, byte[] offerIds, boolean[] active) {
+        this.index = new SkuIndex(keys);
+        this.names = names;
+        this.prices = prices;
+        this.offerIds = offerIds;
+        this.active = active;
+    }
+
+    @Override public int find(CharSequence raw) { return index.find(raw); }
+    @Override public int find(char[] buf, int off, int len) { return index.find(buf, off, len); }
+    @Override public int size() { return names.length; }
+    @Override public String nameOf(int id) { return names[id]; }
+    @Override public int priceOf(int id) { return prices[id]; }
+    @Override public int offerIdOf(int id) { return offerIds[id]; }
+    @Override public boolean isActive(int id) { return active[id]; }
+}
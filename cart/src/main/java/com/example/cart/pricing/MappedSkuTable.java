@@ -0,0 +1,139 @@
+package com.example.cart.pricing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * SkuTable over a mapped {@link CatalogImage}. Only the header is read at
+ * startup; pages fault in on first use, and the table costs a few fields of
+ * heap whatever the catalog size. Absolute reads only, so it is safe to share.
+ */
+final class MappedSkuTable implements SkuTable {
+
+    private final ByteBuffer buf;
+    private final Path file;
+    private final int n, m, b;
+    private final int bucketsOff, slotsOff, recordsOff, blobOff;
+
+    MappedSkuTable(ByteBuffer buf, Path file) {
+        this.buf = CatalogImage.header(buf);
+        this.file = file;
+        this.n = buf.getInt(8);
+        this.m = buf.getInt(12);
+        this.b = buf.getInt(16);
+        this.bucketsOff = buf.getInt(20);
+        this.slotsOff = buf.getInt(24);
+        this.recordsOff = buf.getInt(28);
+        this.blobOff = buf.getInt(32);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    @Override
+    public int find(CharSequence raw) {
+        if (raw == null) return -1;
+        int start = 0, end = raw.length();
+        while (start < end && raw.charAt(start) <= ' ') start++;
+        while (end > start && raw.charAt(end - 1) <= ' ') end--;
+
+        int id = candidate(CatalogImage.hash(raw, start, end));
+        if (id < 0) return -1;
+        int r = record(id);
+        int p = blobOff + buf.getInt(r), q = p + Short.toUnsignedInt(buf.getShort(r + 8));
+        for (int i = start; i < end; i++) {
+            if (p >= q) return -1;
+            int c = buf.get(p) & 0xff;
+            if (c < 0x80) { // ASCII fast path
+                if (Character.toLowerCase((char) c) != Character.toLowerCase(raw.charAt(i))) return -1;
+                p++;
+            } else {
+                int cp = Character.codePointAt(raw, i);
+                int len = utf8Length(c);
+                if (Character.toLowerCase(decode(p, len)) != Character.toLowerCase(cp)) return -1;
+                p += len;
+                i += Character.charCount(cp) - 1;
+            }
+        }
+        return p == q ? id : -1;
+    }
+
+    @Override
+    public int find(char[] chars, int off, int len) {
+        int start = off, end = off + len;
+        while (start < end && chars[start] <= ' ') start++;
+        while (end > start && chars[end - 1] <= ' ') end--;
+
+        int id = candidate(CatalogImage.hash(chars, start, end));
+        if (id < 0) return -1;
+        int r = record(id);
+        int p = blobOff + buf.getInt(r), q = p + Short.toUnsignedInt(buf.getShort(r + 8));
+        for (int i = start; i < end; i++) {
+            if (p >= q) return -1;
+            int c = buf.get(p) & 0xff;
+            if (c < 0x80) {
+                if (Character.toLowerCase((char) c) != Character.toLowerCase(chars[i])) return -1;
+                p++;
+            } else {
+                int cp = Character.codePointAt(chars, i, end);
+                int width = utf8Length(c);
+                if (Character.toLowerCase(decode(p, width)) != Character.toLowerCase(cp)) return -1;
+                p += width;
+                i += Character.charCount(cp) - 1;
+            }
+        }
+        return p == q ? id : -1;
+    }
+
+    /** The only id the name can have (still to be verified), or -1. */
+    private int candidate(long h) {
+        if (n == 0) return -1;
+        int d = buf.getInt(bucketsOff + 4 * CatalogImage.bucketOf(h, b));
+        return buf.getInt(slotsOff + 4 * CatalogImage.slotOf(h, d, m));
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public String nameOf(int id) {
+        int r = record(id);
+        byte[] bytes = new byte[Short.toUnsignedInt(buf.getShort(r + 8))];
+        buf.get(blobOff + buf.getInt(r), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int priceOf(int id) {
+        return buf.getInt(record(id) + 4);
+    }
+
+    @Override
+    public int offerIdOf(int id) {
+        return buf.get(record(id) + 10) & 0x7f;
+    }
+
+    @Override
+    public boolean isActive(int id) {
+        return (buf.get(record(id) + 10) & 0x80) == 0;
+    }
+
+    private int record(int id) {
+        if (id < 0 || id >= n) throw new IndexOutOfBoundsException("SKU id " + id + " of " + n);
+        return recordsOff + CatalogImage.RECORD * id;
+    }
+
+    private static int utf8Length(int lead) {
+        return lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2;
+    }
+
+    private int decode(int at, int len) {
+        int cp = buf.get(at) & (0xFF >> (len + 1));
+        for (int i = 1; i < len; i++) cp = (cp << 6) | (buf.get(at + i) & 0x3F);
+        return cp;
+    }
+}
@@ -1,18 +1,34 @@
 package com.example.cart.pricing;
 
 
-import com.example.cart.pricing.offers.BuyOneGetOneFree;
 import com.example.cart.pricing.offers.Offer;
-import com.example.cart.pricing.offers.ThreeForTwo;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Locale;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Current price catalog. Readers take {@link #snapshot()} (one volatile read,
+ * never blocked); {@link #reload()} builds the next immutable snapshot off to
+ * the side and swaps it in. The convenience lookups below each read the
+ * current snapshot, so code pricing a whole basket should pin one snapshot.
+ *
+ * Without cart.catalog.file the catalog comes from price-catalog.properties
+ * and never changes; with it, the file is read at startup and on reload.
+ * Large catalogs use a data file (.csv), served from a memory-mapped image
+ * so heap use does not grow with the number of SKUs.
+ */
 @Component
 @PropertySource("classpath:price-catalog.properties")
 public class PriceCatalog {
@@ -25,49 +41,195 @@ public class PriceCatalog {
     @Value("#{${offers:{}}}")
     private Map<String, String> OFFER_TYPES;
 
-    // resolved strategies built from OFFER_TYPES
-    private final Map<String, Offer> OFFERS = new HashMap<>();
+    // external catalog in the same format, watched for changes; empty = use the properties above
+    @Value("${cart.catalog.file:}")
+    private String catalogFile = "";
+
+    private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>();
+    private final ReentrantLock reloading = new ReentrantLock();
 
     @PostConstruct
     void initOffers() {
-        OFFERS.clear();
-        OFFER_TYPES.forEach((k, v) -> OFFERS.put(normalize(k), toOffer(v)));
+        if (catalogFile.isBlank()) {
+            current.set(CatalogSnapshot.build(null, PRICES, OFFER_TYPES));
+        } else {
+            reload();
+        }
+    }
+
+    /** The catalog as of now; immutable, so hold on to it for a whole pricing run. */
+    public CatalogSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Re-reads cart.catalog.file and publishes it as the next version; the current one stays if the file is bad.
+     *   *.properties  prices={...} / offers={...}, held on the heap
+     *   *.csv         name,pricePence[,offer]; compiled to a sibling .idx image and mapped
+     *   *.idx         a prebuilt image (CatalogImage), mapped as is
+     */
+    public CatalogSnapshot reload() {
+        if (catalogFile.isBlank()) return current.get();
+        reloading.lock();
+        try {
+            Path file = Path.of(catalogFile);
+            CatalogSnapshot previous = current.get();
+            CatalogSnapshot next;
+            if (catalogFile.endsWith(".csv")) {
+                Path image = file.resolveSibling(file.getFileName() + ".idx");
+                // at startup a fresh image is reused as is, which is what makes startup instant
+                boolean fresh = previous == null && Files.exists(image)
+                        && Files.getLastModifiedTime(image).compareTo(Files.getLastModifiedTime(file)) >= 0;
+                if (!fresh) CatalogImage.compile(file, image, previous);
+                next = CatalogSnapshot.mapped(previous, CatalogImage.map(image));
+            } else if (catalogFile.endsWith(".idx")) {
+                next = CatalogSnapshot.mapped(previous, CatalogImage.map(file));
+            } else {
+                Properties props = load(file);
+                Map<String, Integer> prices = inlineMap(props, "prices");
+                if (prices.isEmpty()) throw new IllegalStateException("Price catalog " + file + " has no prices");
+                next = CatalogSnapshot.build(previous, prices, inlineMap(props, "offers"));
+            }
+            current.set(next);
+            return next;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read price catalog " + catalogFile, e);
+        } finally {
+            reloading.unlock();
+        }
+    }
+
+    private static Properties load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(in);
+        }
+        return props;
+    }
+
+    /** Path of the watched catalog file, or null when the catalog is fixed. */
+    public Path catalogFile() {
+        return catalogFile.isBlank() ? null : Path.of(catalogFile);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V> inlineMap(Properties props, String key) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) return Map.of();
+        try {
+            return (Map<String, V>) parseInlineMap(value.strip());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(key + " is not a map (" + e.getMessage() + "): " + value, e);
+        }
+    }
+
+    /**
+     * The inline-map syntax the @Value fields accept, {apple:35, melon:'BOGO'}, read as data:
+     * keys are names, values whole numbers or quoted strings. Nothing in the file is evaluated.
+     */
+    static Map<String, Object> parseInlineMap(String text) {
+        if (text.length() < 2 || text.charAt(0) != '{' || text.charAt(text.length() - 1) != '}') {
+            throw new IllegalArgumentException("expected {key:value, ...}");
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        String body = text.substring(1, text.length() - 1).strip();
+        int i = 0;
+        while (i < body.length()) {
+            int colon = body.indexOf(':', i);
+            if (colon < 0) throw new IllegalArgumentException("missing ':' after " + body.substring(i).strip());
+            String name = unquote(body.substring(i, colon).strip());
+            if (name.isEmpty()) throw new IllegalArgumentException("empty key");
+            int end = valueEnd(body, colon + 1);
+            String raw = body.substring(colon + 1, end).strip();
+            Object parsed;
+            if (raw.length() >= 2 && (raw.charAt(0) == '\'' || raw.charAt(0) == '"')) {
+                parsed = unquote(raw);
+            } else {
+                try {
+                    parsed = Integer.valueOf(raw);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("value of " + name + " is not a number or quoted string: " + raw);
+                }
+            }
+            if (map.put(name, parsed) != null) throw new IllegalArgumentException("duplicate key " + name);
+            i = end + 1;
+        }
+        return map;
+    }
+
+    // index of the ',' ending the value starting at from (or the end), skipping quoted text
+    private static int valueEnd(String body, int from) {
+        char quote = 0;
+        for (int i = from; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ',') {
+                return i;
+            }
+        }
+        if (quote != 0) throw new IllegalArgumentException("unterminated quote");
+        return body.length();
+    }
+
+    private static String unquote(String s) {
+        if (s.length() >= 2 && (s.charAt(0) == '\'' || s.charAt(0) == '"')) {
+            if (s.charAt(s.length() - 1) != s.charAt(0)) throw new IllegalArgumentException("unterminated quote: " + s);
+            return s.substring(1, s.length() - 1);
+        }
+        return s;
     }
 
     public int priceOf(String rawName) {
-        Integer p = PRICES.get(normalize(rawName));
-        if (p == null) throw new IllegalArgumentException("Unknown item: " + rawName);
-        return p;
+        CatalogSnapshot s = snapshot();
+        return s.priceOf(s.idOf(rawName));
     }
 
-    public Offer offerOf(String rawName) {
-        // default: pay for every unit (no offer)
-        return OFFERS.getOrDefault(normalize(rawName), count -> count);
+    /** Dense SKU id for the item (throws IllegalArgumentException for unknowns). */
+    public int idOf(String rawName) {
+        return snapshot().idOf(rawName);
     }
 
-    public String canonical(String rawName) {
-        String n = normalize(rawName);
-        return switch (n) {
-            case "apple" -> "Apple";
-            case "banana" -> "Banana";
-            case "melon" -> "Melon";
-            case "lime" -> "Lime";
-            default -> rawName;
-        };
+    /** Dense SKU id for the item, or -1 if it is not in the catalog. Does not allocate. */
+    public int findId(CharSequence rawName) {
+        return snapshot().findId(rawName);
+    }
+
+    /** As findId(CharSequence), for a name held in a parser's char buffer. */
+    public int findId(char[] buf, int off, int len) {
+        return snapshot().findId(buf, off, len);
+    }
+
+    /** Canonical display name for a SKU id (stable across versions). */
+    public String nameOf(int sku) {
+        return snapshot().nameOf(sku);
     }
 
-    private String normalize(String s) {
-        if (s == null) return "";
-        return s.trim().toLowerCase(Locale.ROOT);
+    /** Unit price in pence for a SKU id. */
+    public int priceOf(int sku) {
+        return snapshot().priceOf(sku);
     }
 
-    private Offer toOffer(String type) {
-        if (type == null) return count -> count;
+    /** Offer for a SKU id (pay-for-every-unit when none is configured). */
+    public Offer offerOf(int sku) {
+        return snapshot().offerOf(sku);
+    }
+
+    /** Number of SKUs; valid ids are 0..skuCount()-1. */
+    public int skuCount() {
+        return snapshot().skuCount();
+    }
+
+    public Offer offerOf(String rawName) {
+        // default: pay for every unit (no offer)
+        return snapshot().offerOf(rawName);
+    }
 
-        return switch (type.trim().toUpperCase(Locale.ROOT)) {
-            case "BOGO", "BUY_ONE_GET_ONE_FREE" -> new BuyOneGetOneFree();
-            case "THREE_FOR_TWO", "3_FOR_2"     -> new ThreeForTwo();
-            default                             -> (count -> count); // no offer
-        };
+    public String canonical(String rawName) {
+        CatalogSnapshot s = snapshot();
+        int id = s.findId(rawName);
+        return id < 0 ? rawName : s.nameOf(id);
     }
 }
@@ -0,0 +1,164 @@
+package com.example.cart.pricing;
+
+import java.util.Arrays;
+
+/**
+ * Sparse SKU id -> quantity vector, kept in first-added order.
+ * Memory grows with the number of distinct SKUs, never with quantity.
+ * Not thread-safe: callers guard shared instances.
+ */
+public final class SkuCounts {
+
+    // below this many lines a linear scan beats hashing
+    private static final int INDEX_THRESHOLD = 8;
+
+    private int[] skus;
+    private int[] qtys;
+    private int size;
+    private long totalUnits;
+
+    // open addressing: sku -> line + 1 (0 = empty); only built for larger baskets
+    private int[] index;
+
+    public SkuCounts() {
+        this(4);
+    }
+
+    public SkuCounts(int expectedLines) {
+        int cap = Math.max(expectedLines, 1);
+        this.skus = new int[cap];
+        this.qtys = new int[cap];
+    }
+
+    /** Adds n units of the SKU and returns its new quantity. */
+    public int add(int sku, int n) {
+        if (n < 0) throw new IllegalArgumentException("Quantity must not be negative: " + n);
+        int line = lineOf(sku);
+        if (line < 0) {
+            if (n == 0) return 0;
+            line = appendLine(sku);
+        }
+        qtys[line] = Amounts.add(qtys[line], n);
+        totalUnits = Amounts.add(totalUnits, (long) n);
+        return qtys[line];
+    }
+
+    /** Removes up to n units of the SKU and returns its new quantity (dropping the line at zero). */
+    public int remove(int sku, int n) {
+        if (n < 0) throw new IllegalArgumentException("Quantity must not be negative: " + n);
+        int line = lineOf(sku);
+        if (line < 0) return 0;
+        int removed = Math.min(n, qtys[line]);
+        qtys[line] -= removed;
+        totalUnits -= removed;
+        int left = qtys[line];
+        if (left == 0) removeLine(line);
+        return left;
+    }
+
+    public int qtyOf(int sku) {
+        int line = lineOf(sku);
+        return line < 0 ? 0 : qtys[line];
+    }
+
+    /** Number of distinct SKUs (lines). */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int skuAt(int line) {
+        return skus[line];
+    }
+
+    public int qtyAt(int line) {
+        return qtys[line];
+    }
+
+    /** Sum of all quantities. */
+    public long totalUnits() {
+        return totalUnits;
+    }
+
+    public void clear() {
+        size = 0;
+        totalUnits = 0;
+        index = null;
+    }
+
+    public SkuCounts copy() {
+        SkuCounts c = new SkuCounts(size);
+        System.arraycopy(skus, 0, c.skus, 0, size);
+        System.arraycopy(qtys, 0, c.qtys, 0, size);
+        c.size = size;
+        c.totalUnits = totalUnits;
+        if (index != null) c.index = index.clone();
+        return c;
+    }
+
+    /** Line index of the SKU, or -1 if it is not in the basket. */
+    public int lineOf(int sku) {
+        if (index == null) {
+            for (int i = 0; i < size; i++) {
+                if (skus[i] == sku) return i;
+            }
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int slot = mix(sku) & mask; ; slot = (slot + 1) & mask) {
+            int e = index[slot];
+            if (e == 0) return -1;
+            if (skus[e - 1] == sku) return e - 1;
+        }
+    }
+
+    private int appendLine(int sku) {
+        if (size == skus.length) {
+            int cap = size * 2;
+            skus = Arrays.copyOf(skus, cap);
+            qtys = Arrays.copyOf(qtys, cap);
+        }
+        int line = size++;
+        skus[line] = sku;
+        qtys[line] = 0;
+        if (index != null && size * 2 <= index.length) {
+            insert(index, sku, line);
+        } else if (size > INDEX_THRESHOLD) {
+            rebuildIndex();
+        }
+        return line;
+    }
+
+    private void removeLine(int line) {
+        int tail = size - line - 1;
+        System.arraycopy(skus, line + 1, skus, line, tail);
+        System.arraycopy(qtys, line + 1, qtys, line, tail);
+        size--;
+        if (index != null) {
+            if (size > INDEX_THRESHOLD) rebuildIndex();
+            else index = null;
+        }
+    }
+
+    private void rebuildIndex() {
+        int cap = Integer.highestOneBit(size * 4 - 1);
+        int[] idx = new int[cap];
+        for (int i = 0; i < size; i++) insert(idx, skus[i], i);
+        index = idx;
+    }
+
+    private static void insert(int[] idx, int sku, int line) {
+        int mask = idx.length - 1;
+        int slot = mix(sku) & mask;
+        while (idx[slot] != 0) slot = (slot + 1) & mask;
+        idx[slot] = line + 1;
+    }
+
+    private static int mix(int x) {
+        x *= 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.cart.pricing;
+
+/**
+ * Open-addressing name -> SKU id table that matches raw item names
+ * case-insensitively and ignoring surrounding whitespace, without
+ * allocating a normalised copy of the input.
+ */
+final class SkuIndex {
+
+    private final String[] keys;  // normalised (trimmed, lower-case) name per id
+    private final int[] table;    // id + 1, 0 = empty
+    private final int mask;
+
+    SkuIndex(String[] normalizedKeys) {
+        this.keys = normalizedKeys.clone();
+        int cap = Integer.highestOneBit(Math.max(keys.length, 1) * 4 - 1) << 1;
+        this.table = new int[cap];
+        this.mask = cap - 1;
+        for (int id = 0; id < keys.length; id++) {
+            String k = keys[id];
+            int slot = hash(k, 0, k.length()) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+    }
+
+    /** SKU id for the raw name, or -1. */
+    int find(CharSequence raw) {
+        if (raw == null) return -1;
+        int start = 0, end = raw.length();
+        while (start < end && raw.charAt(start) <= ' ') start++;
+        while (end > start && raw.charAt(end - 1) <= ' ') end--;
+
+        for (int slot = hash(raw, start, end) & mask; ; slot = (slot + 1) & mask) {
+            int e = table[slot];
+            if (e == 0) return -1;
+            if (matches(keys[e - 1], raw, start, end)) return e - 1;
+        }
+    }
+
+    /** SKU id for the raw name held in buf[off, off + len), or -1. */
+    int find(char[] buf, int off, int len) {
+        int start = off, end = off + len;
+        while (start < end && buf[start] <= ' ') start++;
+        while (end > start && buf[end - 1] <= ' ') end--;
+
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + Character.toLowerCase(buf[i]);
+        for (int slot = (h ^ (h >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+            int e = table[slot];
+            if (e == 0) return -1;
+            if (matches(keys[e - 1], buf, start, end)) return e - 1;
+        }
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + Character.toLowerCase(s.charAt(i));
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String key, CharSequence s, int start, int end) {
+        if (key.length() != end - start) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != Character.toLowerCase(s.charAt(start + i))) return false;
+        }
+        return true;
+    }
+
+    private static boolean matches(String key, char[] buf, int start, int end) {
+        if (key.length() != end - start) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != Character.toLowerCase(buf[start + i])) return false;
+        }
+        return true;
+    }
+}
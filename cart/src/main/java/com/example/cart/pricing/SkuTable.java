@@ -0,0 +1,29 @@
+package com.example.cart.pricing;
+
+/**
+ * Storage behind a {@link CatalogSnapshot}: name lookup plus per-SKU columns,
+ * all addressed by dense SKU id. Lookups match case-insensitively, ignore
+ * surrounding whitespace and do not allocate; retired SKUs are still found
+ * (the snapshot decides whether they are sold).
+ */
+interface SkuTable {
+
+    /** SKU id for the raw name, or -1. */
+    int find(CharSequence raw);
+
+    /** SKU id for the raw name held in buf[off, off + len), or -1. */
+    int find(char[] buf, int off, int len);
+
+    /** Number of SKU ids, retired ones included. */
+    int size();
+
+    /** Canonical display name. */
+    String nameOf(int id);
+
+    int priceOf(int id);
+
+    /** Index into {@link CatalogSnapshot#OFFER_TYPES}. */
+    int offerIdOf(int id);
+
+    boolean isActive(int id);
+}
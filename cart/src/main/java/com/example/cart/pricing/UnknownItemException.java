@@ -0,0 +1,9 @@
+package com.example.cart.pricing;
+
+/** An item name the catalog does not sell. Still an IllegalArgumentException, so still a 400. */
+public class UnknownItemException extends IllegalArgumentException {
+
+    public UnknownItemException(String item) {
+        super("Unknown item: " + item);
+    }
+}
@@ -4,4 +4,12 @@ public class BuyOneGetOneFree implements Offer {
     @Override public int chargeableQuantity(int count) {
         return (count / 2) + (count % 2); // ceil(count/2)
     }
+
+    @Override public int period() {
+        return 2;
+    }
+
+    @Override public String name() {
+        return "BOGO";
+    }
 }
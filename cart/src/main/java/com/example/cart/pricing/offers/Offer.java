@@ -3,4 +3,14 @@ package com.example.cart.pricing.offers;
 public interface Offer {
     /** How many items are chargeable given a raw count. */
     int chargeableQuantity(int count);
+
+    /** chargeableQuantity(count + period) - chargeableQuantity(count) is the same for every count. */
+    default int period() {
+        return 1;
+    }
+
+    /** Offer type as written in the catalog (BOGO, THREE_FOR_TWO); used to tag metrics. */
+    default String name() {
+        return "NONE";
+    }
 }
@@ -4,4 +4,12 @@ public class ThreeForTwo implements Offer {
     @Override public int chargeableQuantity(int count) {
         return count - (count / 3);
     }
+
+    @Override public int period() {
+        return 3;
+    }
+
+    @Override public String name() {
+        return "THREE_FOR_TWO";
+    }
 }
@@ -0,0 +1,42 @@
+package com.example.cart.pricing.promotions;
+
+import java.util.List;
+
+/**
+ * A promotion as configured, with items named as in the catalog.
+ * Catalog offers (BOGOF, 3-for-2) still price whatever units no promotion takes.
+ */
+public sealed interface Promotion {
+
+    String id();
+
+    /** "3 for £1": quantity units of one item for pricePence. */
+    record MultiBuy(String id, String item, int quantity, int pricePence) implements Promotion {
+        public MultiBuy {
+            if (quantity < 1 || pricePence < 0) throw new IllegalArgumentException("Bad multi-buy " + id);
+        }
+    }
+
+    /** "Meal deal": one of each item (repeat a name for more units) for pricePence. */
+    record Bundle(String id, List<String> items, int pricePence) implements Promotion {
+        public Bundle {
+            if (items.isEmpty() || pricePence < 0) throw new IllegalArgumentException("Bad bundle " + id);
+            items = List.copyOf(items);
+        }
+    }
+
+    /** percent off the unit price (to the penny) of the listed items, for units no deal takes. */
+    record PercentOff(String id, List<String> items, int percent) implements Promotion {
+        public PercentOff {
+            if (items.isEmpty() || percent < 1 || percent > 100) throw new IllegalArgumentException("Bad percent-off " + id);
+            items = List.copyOf(items);
+        }
+    }
+
+    /** "Spend £50, save £5": off the basket once its total reaches thresholdPence. */
+    record SpendThreshold(String id, int thresholdPence, int discountPence) implements Promotion {
+        public SpendThreshold {
+            if (thresholdPence < 0 || discountPence < 1) throw new IllegalArgumentException("Bad spend threshold " + id);
+        }
+    }
+}
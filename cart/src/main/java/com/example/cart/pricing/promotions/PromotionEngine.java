@@ -0,0 +1,340 @@
+package com.example.cart.pricing.promotions;
+
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartLine;
+import com.example.cart.model.Discount;
+import com.example.cart.pricing.Amounts;
+import com.example.cart.pricing.CatalogSnapshot;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.pricing.offers.Offer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies promotions on top of catalog prices and offers.
+ *
+ * Promotions are loaded from cart.promotions.file (none when empty), one per
+ * line, '#' comments:
+ *   id,MULTIBUY,item,quantity,pricePence       lemons-3-for-1,MULTIBUY,lemon,3,100
+ *   id,BUNDLE,item+item+...,pricePence         meal-deal,BUNDLE,sandwich+drink+crisps,300
+ *   id,PERCENT,item+item+...,percent           fruit-10,PERCENT,apple+banana,10
+ *   id,SPEND,thresholdPence,discountPence      spend-50-save-5,SPEND,5000,500
+ *
+ * Pricing a basket, in order:
+ *   1. deals (multi-buys, bundles) touching the basket's SKUs take units; how
+ *      often each applies is chosen by PromotionSolver to make the basket
+ *      cheapest, within cart.promotions.solver-budget per basket
+ *   2. units no deal took are charged through the catalog offer at the unit
+ *      price less the SKU's best percent-off (rounded to the penny)
+ *   3. the best spend threshold the total reaches comes off the basket
+ * Only the promotions indexed under the basket's SKUs are looked at, so cost
+ * grows with the basket, not with the number of promotions. Savings of
+ * bundles and spend thresholds are shared across their lines in proportion
+ * to price, so line totals always add up to the bill total.
+ */
+@Component
+public class PromotionEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(PromotionEngine.class);
+    private static final Duration DEFAULT_SOLVER_BUDGET = Duration.ofMillis(2);
+
+    /** No promotions: catalog prices and offers only. */
+    public static final PromotionEngine NONE = new PromotionEngine(List.of());
+
+    private final List<Promotion> promotions;
+    private final long solverBudgetNanos;
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    // promotions resolved against the catalog version last priced with; rebuilt when the catalog changes
+    private volatile PromotionIndex index;
+
+    @Autowired
+    public PromotionEngine(@Value("${cart.promotions.file:}") String file,
+                           @Value("${cart.promotions.solver-budget:2ms}") Duration solverBudget) throws IOException {
+        this(file.isBlank() ? List.of() : read(Path.of(file)), solverBudget);
+        if (!file.isBlank()) log.info("Loaded {} promotions from {}", promotions.size(), file);
+    }
+
+    public PromotionEngine(List<Promotion> promotions) {
+        this(promotions, DEFAULT_SOLVER_BUDGET);
+    }
+
+    /** solverBudget: time the exact search may spend per basket; zero = greedy only. */
+    public PromotionEngine(List<Promotion> promotions, Duration solverBudget) {
+        Set<String> ids = new HashSet<>();
+        for (Promotion p : promotions) {
+            if (!ids.add(p.id())) throw new IllegalArgumentException("Duplicate promotion id: " + p.id());
+        }
+        this.promotions = List.copyOf(promotions);
+        this.solverBudgetNanos = solverBudget.toNanos();
+    }
+
+    public boolean isEmpty() {
+        return promotions.isEmpty();
+    }
+
+    public List<Promotion> promotions() {
+        return promotions;
+    }
+
+    /** Baskets whose search ran out of solver budget and were priced with the best assignment found in time. */
+    public long budgetExhausted() {
+        return budgetExhausted.sum();
+    }
+
+    /** Prices the basket against catalog with every applicable promotion. */
+    public Bill price(SkuCounts counts, CatalogSnapshot catalog) {
+        int lines = counts.size();
+        if (lines == 0) return Bill.empty(catalog.version());
+        PromotionIndex idx = index(catalog);
+
+        int[] qty = new int[lines];
+        long[] listPrice = new long[lines];
+        long[] unitPrice = new long[lines];   // after the SKU's best percent-off
+        int[] percent = new int[lines];       // that percent-off, -1 = none
+        Offer[] offers = new Offer[lines];
+        for (int i = 0; i < lines; i++) {
+            int sku = counts.skuAt(i);
+            qty[i] = counts.qtyAt(i);
+            listPrice[i] = catalog.priceOf(sku);
+            int slot = idx.slotOf(sku);
+            percent[i] = slot < 0 ? -1 : idx.percentOf(slot);
+            unitPrice[i] = percent[i] < 0 ? listPrice[i]
+                    : listPrice[i] - (listPrice[i] * idx.percents[percent[i]] + 50) / 100;
+            offers[i] = catalog.offerOf(sku);
+        }
+
+        // 1. deals: how often each applies, then the units they take and what that saves
+        int[] deals = candidateDeals(counts, idx, catalog);
+        int[][] members = new int[deals.length][];
+        for (int j = 0; j < deals.length; j++) {
+            int[] skus = idx.dealSkus[deals[j]];
+            members[j] = new int[skus.length];
+            for (int k = 0; k < skus.length; k++) members[j][k] = counts.lineOf(skus[k]);
+        }
+        int[] applied = applications(deals, members, idx, qty, unitPrice, offers);
+
+        int[] taken = new int[lines];
+        long[] savings = new long[lines];
+        @SuppressWarnings("unchecked")
+        List<Discount>[] discounts = new List[lines];
+        for (int j = 0; j < deals.length; j++) {
+            if (applied[j] == 0) continue;
+            int d = deals[j];
+            long[] weights = new long[members[j].length];
+            for (int k = 0; k < weights.length; k++) {
+                int n = Amounts.multiply(applied[j], idx.dealUnits[d][k]);
+                taken[members[j][k]] += n;
+                weights[k] = (long) n * listPrice[members[j][k]];
+            }
+            long saving = Arrays.stream(weights).sum() - (long) applied[j] * idx.dealPrices[d];
+            long[] share = share(saving, weights);
+            for (int k = 0; k < weights.length; k++) {
+                savings[members[j][k]] += share[k];
+                note(discounts, members[j][k], idx.dealIds[d], share[k]);
+            }
+        }
+
+        // 2. what is left goes through the catalog offer at the percent-off price
+        int[] chargeable = new int[lines];
+        long[] totals = new long[lines];
+        long subtotal = 0;
+        for (int i = 0; i < lines; i++) {
+            int charged = offers[i].chargeableQuantity(qty[i] - taken[i]);
+            chargeable[i] = charged + taken[i];
+            if (percent[i] >= 0 && charged > 0) {
+                long off = (long) charged * (listPrice[i] - unitPrice[i]);
+                savings[i] += off;
+                note(discounts, i, idx.percentIds[percent[i]], off);
+            }
+            totals[i] = (long) chargeable[i] * listPrice[i] - savings[i];
+            subtotal += totals[i];
+        }
+
+        // 3. spend threshold on the basket
+        int at = idx.spendAt((int) Math.min(subtotal, Integer.MAX_VALUE));
+        if (at >= 0 && subtotal > 0) {
+            long off = Math.min(idx.spendDiscount(at), subtotal);
+            long[] share = share(off, totals);
+            for (int i = 0; i < lines; i++) {
+                if (share[i] == 0) continue;
+                totals[i] -= share[i];
+                note(discounts, i, idx.spendId(at), share[i]);
+            }
+            subtotal -= off;
+        }
+
+        CartLine[] out = new CartLine[lines];
+        for (int i = 0; i < lines; i++) {
+            int sku = counts.skuAt(i);
+            out[i] = new CartLine(catalog.nameOf(sku), counts.qtyAt(i), chargeable[i], catalog.priceOf(sku),
+                    Amounts.toInt(totals[i]), discounts[i] == null ? List.of() : List.copyOf(discounts[i]));
+        }
+        return new Bill(List.of(out), Amounts.toInt(subtotal), catalog.version());
+    }
+
+    /** Distinct deals whose items are all in the basket, biggest list-price saving first; unprofitable ones left out. */
+    private static int[] candidateDeals(SkuCounts counts, PromotionIndex idx, CatalogSnapshot catalog) {
+        int n = 0;
+        int[] found = new int[8];
+        for (int i = 0; i < counts.size(); i++) {
+            int slot = idx.slotOf(counts.skuAt(i));
+            if (slot < 0) continue;
+            for (int r = idx.dealsFrom(slot); r < idx.dealsTo(slot); r++) {
+                if (n == found.length) found = Arrays.copyOf(found, n * 2);
+                found[n++] = idx.dealAt(r);
+            }
+        }
+        Arrays.sort(found, 0, n);
+        long[] candidates = new long[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int d = found[i];
+            if (i > 0 && found[i - 1] == d) continue;
+            if (!inBasket(d, counts, idx)) continue;
+            long gain = listPrice(d, idx, catalog) - idx.dealPrices[d];
+            if (gain > 0) candidates[m++] = Math.min(gain, Integer.MAX_VALUE) << 32 | d;
+        }
+        Arrays.sort(candidates, 0, m);
+        int[] deals = new int[m];
+        for (int i = 0; i < m; i++) deals[i] = (int) candidates[m - 1 - i];
+        return deals;
+    }
+
+    private static boolean inBasket(int d, SkuCounts counts, PromotionIndex idx) {
+        for (int sku : idx.dealSkus[d]) {
+            if (counts.lineOf(sku) < 0) return false;
+        }
+        return true;
+    }
+
+    private static long listPrice(int d, PromotionIndex idx, CatalogSnapshot catalog) {
+        long list = 0;
+        for (int k = 0; k < idx.dealSkus[d].length; k++) {
+            list += (long) idx.dealUnits[d][k] * catalog.priceOf(idx.dealSkus[d][k]);
+        }
+        return list;
+    }
+
+    /**
+     * How often each deal applies: greedy first, then, when deals compete for
+     * units, the exact search for as long as the solver budget allows.
+     */
+    private int[] applications(int[] deals, int[][] members, PromotionIndex idx, int[] qty, long[] unitPrice,
+                               Offer[] offers) {
+        int n = deals.length;
+        int[][] units = new int[n][];
+        long[] prices = new long[n];
+        for (int j = 0; j < n; j++) {
+            units[j] = idx.dealUnits[deals[j]];
+            prices[j] = idx.dealPrices[deals[j]];
+        }
+        PromotionSolver solver = new PromotionSolver(members, units, prices, qty, unitPrice, offers);
+        int[] greedy = solver.greedy();
+        if (n > 1 && solverBudgetNanos > 0) {
+            PromotionSolver.Result result = solver.solve(greedy, System.nanoTime() + solverBudgetNanos);
+            if (!result.optimal()) budgetExhausted.increment();
+            // the search minimises the subtotal; a lower one can drop below a spend threshold greedy reached
+            if (payable(result.cost(), idx) <= payable(solver.cost(greedy), idx)) return result.applications();
+        }
+        return greedy;
+    }
+
+    private static long payable(long subtotal, PromotionIndex idx) {
+        int at = idx.spendAt((int) Math.min(subtotal, Integer.MAX_VALUE));
+        return at < 0 ? subtotal : subtotal - Math.min(idx.spendDiscount(at), subtotal);
+    }
+
+    /** Splits amount (at most the sum of weights) in proportion to weights; no share exceeds its weight. */
+    private static long[] share(long amount, long[] weights) {
+        long sum = Arrays.stream(weights).sum();
+        long[] share = new long[weights.length];
+        if (sum == 0) return share;
+        long left = amount;
+        for (int k = 0; k < weights.length; k++) {
+            share[k] = Amounts.multiply(amount, weights[k]) / sum;
+            left -= share[k];
+        }
+        for (int k = 0; left > 0 && k < weights.length; k++) {
+            long room = Math.min(left, weights[k] - share[k]);
+            share[k] += room;
+            left -= room;
+        }
+        return share;
+    }
+
+    private static void note(List<Discount>[] discounts, int line, String promotion, long savingPence) {
+        if (savingPence == 0) return;
+        if (discounts[line] == null) discounts[line] = new ArrayList<>(2);
+        discounts[line].add(new Discount(promotion, Amounts.toInt(savingPence)));
+    }
+
+    private PromotionIndex index(CatalogSnapshot catalog) {
+        PromotionIndex idx = index;
+        if (idx == null || idx.catalogVersion != catalog.version()) {
+            List<String> skipped = new ArrayList<>();
+            idx = PromotionIndex.build(promotions, catalog, skipped);
+            if (!skipped.isEmpty()) {
+                log.warn("Promotions {} name items not in catalog version {}; they do not apply",
+                        skipped, catalog.version());
+            }
+            index = idx;
+        }
+        return idx;
+    }
+
+    /** Parses a promotions file (format in the class comment). */
+    public static List<Promotion> read(Path file) throws IOException {
+        List<Promotion> promotions = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNo = 0;
+            for (String line; (line = in.readLine()) != null; ) {
+                lineNo++;
+                String t = line.strip();
+                if (t.isEmpty() || t.startsWith("#")) continue;
+                String[] f = t.split(",", -1);
+                for (int i = 0; i < f.length; i++) f[i] = f[i].strip();
+                try {
+                    promotions.add(parse(f));
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException(file + ":" + lineNo + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return promotions;
+    }
+
+    private static Promotion parse(String[] f) {
+        if (f.length < 2 || f[0].isEmpty()) throw new IllegalArgumentException("expected id,TYPE,...");
+        String type = f[1].toUpperCase(Locale.ROOT);
+        int arity = switch (type) {
+            case "MULTIBUY" -> 5;
+            case "BUNDLE", "PERCENT", "SPEND" -> 4;
+            default -> throw new IllegalArgumentException("unknown promotion type '" + f[1] + "'");
+        };
+        if (f.length != arity) throw new IllegalArgumentException(type + " takes " + (arity - 2) + " fields");
+        return switch (type) {
+            case "MULTIBUY" -> new Promotion.MultiBuy(f[0], f[2], Integer.parseInt(f[3]), Integer.parseInt(f[4]));
+            case "BUNDLE" -> new Promotion.Bundle(f[0], List.of(f[2].split("\\+")), Integer.parseInt(f[3]));
+            case "PERCENT" -> new Promotion.PercentOff(f[0], List.of(f[2].split("\\+")), Integer.parseInt(f[3]));
+            default -> new Promotion.SpendThreshold(f[0], Integer.parseInt(f[2]), Integer.parseInt(f[3]));
+        };
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.cart.pricing.promotions;
+
+import com.example.cart.pricing.CatalogSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Promotions resolved against one catalog version and indexed by the SKU ids
+ * they touch, so a basket only ever looks at the promotions of its own lines.
+ *
+ * Deals (multi-buys and bundles) take units out of the basket at a fixed
+ * price; percent-offs discount what a SKU's remaining units cost; spend
+ * thresholds apply to the basket total. Promotions naming an item that is
+ * not (or no longer) sold are left out of the index.
+ */
+final class PromotionIndex {
+
+    final long catalogVersion;
+
+    // deals, by deal index
+    final String[] dealIds;
+    final int[][] dealSkus;   // distinct SKU ids
+    final int[][] dealUnits;  // units taken per application, parallel to dealSkus
+    final int[] dealPrices;
+
+    // percent-offs, by percent index
+    final String[] percentIds;
+    final int[] percents;
+
+    // SKU id -> deals touching it and its best percent-off (open addressing, sku + 1 in keys, 0 = empty)
+    private final int[] keys;
+    private final int[] dealsFrom;
+    private final int[] dealsTo;
+    private final int[] dealRefs;
+    private final int[] percentOf;
+
+    // spend thresholds ascending, with the best discount reachable at or below each
+    private final int[] thresholds;
+    private final int[] bestDiscount;
+    private final String[] bestSpendId;
+
+    private PromotionIndex(long catalogVersion, List<Deal> deals, List<Percent> percentOffs,
+                           List<Promotion.SpendThreshold> spends) {
+        this.catalogVersion = catalogVersion;
+
+        int nd = deals.size();
+        dealIds = new String[nd];
+        dealSkus = new int[nd][];
+        dealUnits = new int[nd][];
+        dealPrices = new int[nd];
+        Map<Integer, List<Integer>> bySku = new HashMap<>();
+        for (int d = 0; d < nd; d++) {
+            Deal deal = deals.get(d);
+            dealIds[d] = deal.id();
+            dealSkus[d] = deal.skus();
+            dealUnits[d] = deal.units();
+            dealPrices[d] = deal.price();
+            for (int sku : deal.skus()) bySku.computeIfAbsent(sku, k -> new ArrayList<>()).add(d);
+        }
+
+        int np = percentOffs.size();
+        percentIds = new String[np];
+        percents = new int[np];
+        Map<Integer, Integer> bestPercent = new HashMap<>();
+        for (int p = 0; p < np; p++) {
+            Percent percent = percentOffs.get(p);
+            percentIds[p] = percent.id();
+            percents[p] = percent.percent();
+            for (int sku : percent.skus()) {
+                bySku.computeIfAbsent(sku, k -> new ArrayList<>());
+                bestPercent.merge(sku, p, (a, b) -> percents[b] > percents[a] ? b : a);
+            }
+        }
+
+        int cap = Integer.highestOneBit(Math.max(bySku.size(), 1) * 4 - 1) * 2;
+        keys = new int[cap];
+        dealsFrom = new int[cap];
+        dealsTo = new int[cap];
+        percentOf = new int[cap];
+        dealRefs = new int[bySku.values().stream().mapToInt(List::size).sum()];
+        int next = 0;
+        for (Map.Entry<Integer, List<Integer>> e : bySku.entrySet()) {
+            int sku = e.getKey();
+            int slot = mix(sku) & (cap - 1);
+            while (keys[slot] != 0) slot = (slot + 1) & (cap - 1);
+            keys[slot] = sku + 1;
+            dealsFrom[slot] = next;
+            for (int d : e.getValue()) dealRefs[next++] = d;
+            dealsTo[slot] = next;
+            percentOf[slot] = bestPercent.getOrDefault(sku, -1);
+        }
+
+        List<Promotion.SpendThreshold> sorted = new ArrayList<>(spends);
+        sorted.sort((a, b) -> Integer.compare(a.thresholdPence(), b.thresholdPence()));
+        thresholds = new int[sorted.size()];
+        bestDiscount = new int[sorted.size()];
+        bestSpendId = new String[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            Promotion.SpendThreshold s = sorted.get(i);
+            thresholds[i] = s.thresholdPence();
+            boolean better = i == 0 || s.discountPence() > bestDiscount[i - 1];
+            bestDiscount[i] = better ? s.discountPence() : bestDiscount[i - 1];
+            bestSpendId[i] = better ? s.id() : bestSpendId[i - 1];
+        }
+    }
+
+    /** Resolves promotions against catalog; ids of promotions naming unsold items are added to skipped. */
+    static PromotionIndex build(List<Promotion> promotions, CatalogSnapshot catalog, List<String> skipped) {
+        List<Deal> deals = new ArrayList<>();
+        List<Percent> percentOffs = new ArrayList<>();
+        List<Promotion.SpendThreshold> spends = new ArrayList<>();
+        for (Promotion promotion : promotions) {
+            switch (promotion) {
+                case Promotion.MultiBuy m -> {
+                    int[] skus = resolve(List.of(m.item()), catalog);
+                    if (skus == null) skipped.add(m.id());
+                    else deals.add(new Deal(m.id(), skus, new int[]{m.quantity()}, m.pricePence()));
+                }
+                case Promotion.Bundle b -> {
+                    int[] skus = resolve(b.items(), catalog);
+                    if (skus == null) {
+                        skipped.add(b.id());
+                        continue;
+                    }
+                    // repeated items become one member taking several units
+                    Map<Integer, Integer> units = new LinkedHashMap<>();
+                    for (int sku : skus) units.merge(sku, 1, Integer::sum);
+                    deals.add(new Deal(b.id(), units.keySet().stream().mapToInt(Integer::intValue).toArray(),
+                            units.values().stream().mapToInt(Integer::intValue).toArray(), b.pricePence()));
+                }
+                case Promotion.PercentOff p -> {
+                    int[] skus = resolve(p.items(), catalog);
+                    if (skus == null) skipped.add(p.id());
+                    else percentOffs.add(new Percent(p.id(), skus, p.percent()));
+                }
+                case Promotion.SpendThreshold s -> spends.add(s);
+            }
+        }
+        return new PromotionIndex(catalog.version(), deals, percentOffs, spends);
+    }
+
+    private static int[] resolve(List<String> items, CatalogSnapshot catalog) {
+        int[] skus = new int[items.size()];
+        for (int i = 0; i < skus.length; i++) {
+            skus[i] = catalog.findId(items.get(i));
+            if (skus[i] < 0) return null;
+        }
+        return skus;
+    }
+
+    boolean isEmpty() {
+        return dealIds.length == 0 && percentIds.length == 0 && thresholds.length == 0;
+    }
+
+    /** Index slot for the SKU, or -1 when no promotion touches it. */
+    int slotOf(int sku) {
+        int mask = keys.length - 1;
+        for (int slot = mix(sku) & mask; ; slot = (slot + 1) & mask) {
+            int k = keys[slot];
+            if (k == 0) return -1;
+            if (k == sku + 1) return slot;
+        }
+    }
+
+    int dealsFrom(int slot) {
+        return dealsFrom[slot];
+    }
+
+    int dealsTo(int slot) {
+        return dealsTo[slot];
+    }
+
+    int dealAt(int ref) {
+        return dealRefs[ref];
+    }
+
+    /** Best percent-off for the slot's SKU, or -1. */
+    int percentOf(int slot) {
+        return percentOf[slot];
+    }
+
+    /** Spend threshold position reached by a basket total, or -1; see spendDiscount/spendId. */
+    int spendAt(int totalPence) {
+        int i = Arrays.binarySearch(thresholds, totalPence);
+        if (i < 0) i = -i - 2;
+        else while (i + 1 < thresholds.length && thresholds[i + 1] == totalPence) i++;
+        return i;
+    }
+
+    int spendDiscount(int at) {
+        return bestDiscount[at];
+    }
+
+    String spendId(int at) {
+        return bestSpendId[at];
+    }
+
+    private static int mix(int x) {
+        x *= 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+
+    private record Deal(String id, int[] skus, int[] units, int price) {}
+
+    private record Percent(String id, int[] skus, int percent) {}
+}
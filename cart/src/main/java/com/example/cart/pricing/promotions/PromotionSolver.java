@@ -0,0 +1,317 @@
+package com.example.cart.pricing.promotions;
+
+import com.example.cart.pricing.offers.Offer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses how many times each deal applies to one basket so the basket is as
+ * cheap as possible. Units a deal does not take are charged through the
+ * catalog offer at the (percent-off) unit price: the "residual" cost.
+ *
+ * Deals that share no lines (directly or through other deals) are
+ * independent, so each such group is searched on its own. Within a group the
+ * search is branch-and-bound over the deals in order, one branch per
+ * application count, with
+ *   - a lower bound that charges every open unit its cheapest possible rate
+ *     (its share of a deal, or the catalog offer's best units-per-charge rate)
+ *   - memoisation on (deal, remaining quantities of the group's lines): a
+ *     state already reached more cheaply is not searched again
+ *   - the last deal touching a set of lines solved in closed form: catalog
+ *     offers repeat every period() units, so the cheapest count is within
+ *     lcm(periods) of either end of its range
+ * The search starts from the greedy answer and stops at the deadline with
+ * the best assignment found so far, so it is never worse than greedy.
+ *
+ * Not thread-safe; one instance prices one basket.
+ */
+final class PromotionSolver {
+
+    private static final int MAX_MEMO = 1 << 16;
+
+    // deals, in search order: member lines, units each application takes from them, price
+    private final int[][] members;
+    private final int[][] units;
+    private final long[] prices;
+
+    // basket lines
+    private final int[] qty;
+    private final long[] unitPrice;   // after percent-off
+    private final Offer[] offers;
+
+    private final int[] lastDeal;     // last deal touching each line, -1 = none
+    private final double[] rate;      // cheapest cost per unit of each line, for the bound
+
+    // search state
+    private final int[] remaining;
+    private final int[] applied;
+    private int[] best;               // all deals
+    private int[] component;          // deals being searched, in deal order
+    private int[] componentLines;
+    private int[] bestAt;             // best counts found for the component, null = start was best
+    private long bestCost;            // of the component's deals and lines
+    private long deadline;
+    private long nodes;
+    private boolean stopped;
+    private final Map<State, Long> memo = new HashMap<>();
+
+    PromotionSolver(int[][] members, int[][] units, long[] prices, int[] qty, long[] unitPrice, Offer[] offers) {
+        this.members = members;
+        this.units = units;
+        this.prices = prices;
+        this.qty = qty;
+        this.unitPrice = unitPrice;
+        this.offers = offers;
+        this.remaining = qty.clone();
+        this.applied = new int[prices.length];
+
+        int lines = qty.length;
+        lastDeal = new int[lines];
+        Arrays.fill(lastDeal, -1);
+        rate = new double[lines];
+        for (int i = 0; i < lines; i++) rate[i] = residualRate(offers[i], unitPrice[i]);
+        for (int d = 0; d < prices.length; d++) {
+            long list = 0;
+            for (int k = 0; k < members[d].length; k++) list += units[d][k] * unitPrice[members[d][k]];
+            for (int k = 0; k < members[d].length; k++) {
+                int line = members[d][k];
+                lastDeal[line] = d;
+                double share = list == 0 ? 0 : (double) prices[d] * unitPrice[line] / list;
+                rate[line] = Math.min(rate[line], share);
+            }
+        }
+    }
+
+    /** Result of a search; optimal is false when the deadline cut it short. */
+    record Result(int[] applications, long cost, boolean optimal) {}
+
+    /** Deals in order, each applied as often as is cheapest for the units the earlier ones left. */
+    int[] greedy() {
+        int[] left = qty.clone();
+        int[] counts = new int[prices.length];
+        for (int d = 0; d < prices.length; d++) {
+            counts[d] = cheapestCount(d, left);
+            take(d, counts[d], left);
+        }
+        return counts;
+    }
+
+    /**
+     * Cheapest application counts, searching from start until deadline (System.nanoTime).
+     * Deals that share no lines, directly or through other deals, are searched separately.
+     */
+    Result solve(int[] start, long deadline) {
+        this.deadline = deadline;
+        this.best = start.clone();
+        this.stopped = false;
+        for (int[] component : components()) {
+            if (stopped) break;
+            if (component.length > 1) searchComponent(component); // a lone deal's greedy count is already exact
+        }
+        return new Result(best, cost(best), !stopped);
+    }
+
+    private void searchComponent(int[] deals) {
+        component = deals;
+        componentLines = linesOf(deals);
+        memo.clear();
+        bestCost = 0;
+        int[] left = qty.clone();
+        for (int d : deals) {
+            take(d, best[d], left);
+            bestCost += best[d] * prices[d];
+        }
+        for (int line : componentLines) bestCost += residual(line, left[line]);
+        bestAt = null;
+        search(0, 0);
+        if (bestAt != null) {
+            for (int d : deals) best[d] = bestAt[d];
+        }
+    }
+
+    private void search(int p, long cost) {
+        if ((++nodes & 0xff) == 0 && System.nanoTime() - deadline > 0) stopped = true;
+        if (stopped) return;
+        if (p == component.length) {
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestAt = applied.clone();
+            }
+            return;
+        }
+        int d = component[p];
+        if (cost + lowerBound(d) >= bestCost || !remember(p, cost)) return;
+
+        if (closes(d)) {
+            // nothing later touches these lines: the closed form gives the best count directly
+            descend(p, d, cheapestCount(d, remaining), cost);
+            return;
+        }
+        // the incumbent's count first, so the search explores around it before straying further
+        int max = maxCount(d, remaining);
+        int first = Math.min(best[d], max);
+        descend(p, d, first, cost);
+        for (int t = max; t >= 0 && !stopped; t--) {
+            if (t != first) descend(p, d, t, cost);
+        }
+    }
+
+    private void descend(int p, int d, int t, long cost) {
+        take(d, t, remaining);
+        applied[d] = t;
+        long next = cost + t * prices[d];
+        for (int line : members[d]) {
+            if (lastDeal[line] == d) next += residual(line, remaining[line]);
+        }
+        search(p + 1, next);
+        applied[d] = 0;
+        take(d, -t, remaining);
+    }
+
+    /** Deals grouped by shared lines (union-find), each group in deal order. */
+    private List<int[]> components() {
+        int n = prices.length;
+        int[] parent = new int[n];
+        for (int d = 0; d < n; d++) parent[d] = d;
+        int[] owner = new int[qty.length];
+        Arrays.fill(owner, -1);
+        for (int d = 0; d < n; d++) {
+            for (int line : members[d]) {
+                if (owner[line] < 0) owner[line] = d;
+                else parent[find(parent, d)] = find(parent, owner[line]);
+            }
+        }
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int d = 0; d < n; d++) groups.computeIfAbsent(find(parent, d), k -> new ArrayList<>()).add(d);
+        List<int[]> components = new ArrayList<>(groups.size());
+        for (List<Integer> g : groups.values()) components.add(g.stream().mapToInt(Integer::intValue).toArray());
+        return components;
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) x = parent[x] = parent[parent[x]];
+        return x;
+    }
+
+    private int[] linesOf(int[] deals) {
+        return Arrays.stream(deals).flatMap(d -> Arrays.stream(members[d])).distinct().toArray();
+    }
+
+    /** Basket cost (of every line) for the given application counts. */
+    long cost(int[] counts) {
+        int[] left = qty.clone();
+        long cost = 0;
+        for (int d = 0; d < prices.length; d++) {
+            take(d, counts[d], left);
+            cost += counts[d] * prices[d];
+        }
+        for (int i = 0; i < qty.length; i++) cost += residual(i, left[i]);
+        return cost;
+    }
+
+    /** True when deal d is the last one touching each of its lines. */
+    private boolean closes(int d) {
+        for (int line : members[d]) {
+            if (lastDeal[line] != d) return false;
+        }
+        return true;
+    }
+
+    /** Cost of the component's lines still open before deal d, at their cheapest possible rate per unit. */
+    private long lowerBound(int d) {
+        double bound = 0;
+        for (int line : componentLines) {
+            if (lastDeal[line] >= d) bound += remaining[line] * rate[line];
+        }
+        return (long) Math.floor(bound) - 1; // slack for floating-point rounding
+    }
+
+    /** False when this (position, remaining) state was already reached at no greater cost. */
+    private boolean remember(int p, long cost) {
+        int[] key = new int[componentLines.length + 1];
+        key[0] = p;
+        for (int i = 0; i < componentLines.length; i++) key[i + 1] = remaining[componentLines[i]];
+        State state = new State(key);
+        Long seen = memo.get(state);
+        if (seen != null && seen <= cost) return false;
+        if (seen != null || memo.size() < MAX_MEMO) memo.put(state, cost);
+        return true;
+    }
+
+    /**
+     * Count of deal d that is cheapest for its own lines, assuming the catalog
+     * offer prices whatever is left of them. That cost is linear in the count
+     * plus a term repeating every lcm(periods), so only the counts within one
+     * period of either end need checking.
+     */
+    private int cheapestCount(int d, int[] left) {
+        int max = maxCount(d, left);
+        if (max == 0) return 0;
+        int period = 1;
+        for (int line : members[d]) period = lcm(period, offers[line].period());
+
+        int best = 0;
+        long bestCost = Long.MAX_VALUE;
+        for (int t = 0; t <= max; t++) {
+            if (t == period + 1 && max - period > t) t = max - period; // skip the linear middle
+            long c = t * prices[d];
+            for (int k = 0; k < members[d].length; k++) {
+                int line = members[d][k];
+                c += residual(line, left[line] - t * units[d][k]);
+            }
+            if (c < bestCost) {
+                bestCost = c;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    private int maxCount(int d, int[] left) {
+        int max = Integer.MAX_VALUE;
+        for (int k = 0; k < members[d].length; k++) max = Math.min(max, left[members[d][k]] / units[d][k]);
+        return max;
+    }
+
+    private void take(int d, int t, int[] left) {
+        for (int k = 0; k < members[d].length; k++) left[members[d][k]] -= t * units[d][k];
+    }
+
+    private long residual(int line, int r) {
+        return offers[line].chargeableQuantity(r) * unitPrice[line];
+    }
+
+    /** Lowest charge per unit the offer reaches: min over one period of chargeable(x) / x. */
+    private static double residualRate(Offer offer, long unitPrice) {
+        double min = unitPrice;
+        for (int x = 1; x <= offer.period(); x++) {
+            min = Math.min(min, (double) offer.chargeableQuantity(x) * unitPrice / x);
+        }
+        return min;
+    }
+
+    static int lcm(int a, int b) {
+        int x = a, y = b;
+        while (y != 0) {
+            int r = x % y;
+            x = y;
+            y = r;
+        }
+        return Math.min(a / x * b, 1 << 10);
+    }
+
+    private record State(int[] key) {
+        @Override public boolean equals(Object o) {
+            return o instanceof State s && Arrays.equals(s.key, key);
+        }
+
+        @Override public int hashCode() {
+            return Arrays.hashCode(key);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.cart.service;
+
+import com.example.cart.metrics.CartMetrics;
+import com.example.cart.model.BatchTotalResult;
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartRequest;
+import com.example.cart.model.CartTotalResponse;
+import com.example.cart.pricing.FxRates;
+import com.example.cart.pricing.UnknownItemException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Prices many baskets per request on a dedicated fork-join pool.
+ * A bad basket becomes an inline error result; it never fails the batch.
+ * At most cart.batch.window baskets are queued or running per request, so a
+ * client that stops reading holds up no more than that, and whatever it had
+ * queued is cancelled once writing to it fails.
+ */
+@Service
+public class BatchPricingService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchPricingService.class);
+
+    private final ShoppingCartService service;
+    private final FxRates fx;
+    private final CartMetrics metrics;
+    private final ForkJoinPool pool;
+    private final int maxBatchSize;
+    private final int window;
+
+    public BatchPricingService(
+            ShoppingCartService service,
+            FxRates fx,
+            CartMetrics metrics,
+            @Value("${cart.batch.parallelism:0}") int parallelism,
+            @Value("${cart.batch.max-size:10000}") int maxBatchSize,
+            @Value("${cart.batch.window:0}") int window
+    ) {
+        this.service = service;
+        this.fx = fx;
+        this.metrics = metrics;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.maxBatchSize = maxBatchSize;
+        this.window = window > 0 ? window : 4 * pool.getParallelism();
+    }
+
+    /**
+     * Prices every basket in parallel and hands each result to the sink, on the calling thread.
+     * - inputOrder = true  -> results arrive in request order
+     * - inputOrder = false -> results arrive as soon as they complete
+     * Bills are converted to currency (see FxRates) and totals formatted for locale.
+     */
+    public void priceAll(List<CartRequest> baskets, boolean inputOrder, String currency, Locale locale,
+                         Consumer<BatchTotalResult> sink) {
+        if (baskets == null) baskets = List.of();
+        checkBatchSize(baskets);
+
+        int n = baskets.size();
+        List<CompletableFuture<BatchTotalResult>> futures = new ArrayList<>(n);
+        BlockingQueue<BatchTotalResult> done = inputOrder ? null : new LinkedBlockingQueue<>();
+        try {
+            for (int i = 0; i < Math.min(n, window); i++) futures.add(submit(i, baskets.get(i), currency, locale, done));
+            for (int i = 0; i < n; i++) {
+                BatchTotalResult result = inputOrder ? futures.get(i).join() : done.take();
+                int next = futures.size();
+                if (next < n) futures.add(submit(next, baskets.get(next), currency, locale, done));
+                sink.accept(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while pricing batch", e);
+        } finally {
+            // no-op once all are done; if the sink threw (client gone), baskets not yet started never run
+            for (CompletableFuture<BatchTotalResult> f : futures) f.cancel(false);
+        }
+    }
+
+    /** Throws IllegalArgumentException when the batch exceeds cart.batch.max-size. */
+    public void checkBatchSize(List<CartRequest> baskets) {
+        if (baskets != null && baskets.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch too large: " + baskets.size() + " baskets (max " + maxBatchSize + ")");
+        }
+    }
+
+    private CompletableFuture<BatchTotalResult> submit(int index, CartRequest basket, String currency, Locale locale,
+                                                       BlockingQueue<BatchTotalResult> done) {
+        CompletableFuture<BatchTotalResult> f = CompletableFuture.supplyAsync(() -> priceOne(index, basket, currency, locale), pool);
+        if (done != null) f.thenAccept(done::add);
+        return f;
+    }
+
+    private BatchTotalResult priceOne(int index, CartRequest basket, String currency, Locale locale) {
+        if (basket == null || basket.items() == null) {
+            return BatchTotalResult.failed(index, "items: must not be null");
+        }
+        try {
+            Bill bill = service.price(basket.items());
+            return BatchTotalResult.ok(index, CartTotalResponse.of(currency, locale, fx.convert(bill, currency)));
+        } catch (IllegalArgumentException ex) {
+            // the basket's own fault (unknown item, amounts too large): safe to tell the client
+            if (ex instanceof UnknownItemException) metrics.unknownItem();
+            return BatchTotalResult.failed(index, ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.error("Pricing basket {} of a batch failed", index, ex);
+            return BatchTotalResult.failed(index, "Internal error pricing this basket");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+}
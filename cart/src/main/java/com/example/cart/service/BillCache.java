@@ -0,0 +1,132 @@
+package com.example.cart.service;
+
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartLine;
+import com.example.cart.pricing.CatalogSnapshot;
+import com.example.cart.pricing.SkuCounts;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Priced baskets by content, so identical baskets (the same meal deal, a
+ * replayed order) are priced once per catalog version. The key is the
+ * basket's SKU quantity multiset in SKU order, so item order does not matter,
+ * and keys are compared exactly, never by hash alone. The cache is bounded by
+ * estimated bytes. Caffeine's W-TinyLFU eviction keeps popular baskets
+ * through a burst of one-off ones.
+ *
+ * Bills carry the catalog version they were priced with. The first lookup
+ * against a newer version drops every entry, and a bill is only served at
+ * its own version, so a reload never serves stale prices.
+ */
+@Component
+public class BillCache {
+
+    /** Snapshot of the cache counters. */
+    public record Stats(long hits, long misses, long evictions, long size, long estimatedBytes) {}
+
+    /** Caches nothing; for tests and tools. */
+    public static final BillCache NONE = new BillCache(0);
+
+    // bigger baskets are rarely repeated and would crowd out many small ones
+    private static final int MAX_LINES = 256;
+
+    private final Cache<Key, Bill> bills;   // null = disabled
+    private final AtomicLong version = new AtomicLong(-1);
+
+    @Autowired
+    public BillCache(@Value("${cart.pricing.cache.max-size:32MB}") DataSize maxSize) {
+        this(maxSize.toBytes());
+    }
+
+    BillCache(long maxBytes) {
+        this.bills = maxBytes <= 0 ? null : Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(BillCache::weigh)
+                .recordStats()
+                .build();
+    }
+
+    /** The bill for counts at the snapshot's version: cached, or priced by pricer and cached. */
+    public Bill get(SkuCounts counts, CatalogSnapshot snapshot, Supplier<Bill> pricer) {
+        if (bills == null || counts.size() > MAX_LINES) return pricer.get();
+
+        long v = snapshot.version();
+        long seen = version.get();
+        if (v > seen && version.compareAndSet(seen, v)) bills.invalidateAll();
+
+        Key key = Key.of(counts);
+        Bill bill = bills.getIfPresent(key);
+        if (bill != null && bill.catalogVersion() == v) return inBasketOrder(bill, counts, snapshot);
+
+        bill = pricer.get();
+        if (v == version.get()) bills.put(key, bill); // a request still on an older version does not cache
+        return bill;
+    }
+
+    public Stats stats() {
+        if (bills == null) return new Stats(0, 0, 0, 0, 0);
+        bills.cleanUp(); // apply pending writes, so the weighted size counts them
+        CacheStats s = bills.stats();
+        long bytes = bills.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L);
+        return new Stats(s.hitCount(), s.missCount(), s.evictionCount(), bills.estimatedSize(), bytes);
+    }
+
+    /** Bills list lines in the order items were first added; a hit keyed from another order is re-ordered to match. */
+    private static Bill inBasketOrder(Bill bill, SkuCounts counts, CatalogSnapshot snapshot) {
+        List<CartLine> lines = bill.lines();
+        int n = lines.size();
+        if (n != counts.size()) return bill;
+        int i = 0;
+        while (i < n && lines.get(i).item().equals(snapshot.nameOf(counts.skuAt(i)))) i++;
+        if (i == n) return bill;
+
+        Map<String, CartLine> byItem = new HashMap<>(n * 2);
+        for (CartLine line : lines) byItem.put(line.item(), line);
+        List<CartLine> ordered = new ArrayList<>(n);
+        for (int j = 0; j < n; j++) ordered.add(byItem.get(snapshot.nameOf(counts.skuAt(j))));
+        return new Bill(List.copyOf(ordered), bill.totalPence(), bill.catalogVersion());
+    }
+
+    /** Rough heap footprint of one entry: key, bill, lines, item names and discounts. */
+    private static int weigh(Key key, Bill bill) {
+        long bytes = 96 + 8L * key.packed.length;
+        for (CartLine line : bill.lines()) {
+            bytes += 88 + 2L * line.item().length() + 56L * line.discounts().size();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    /** (sku << 32 | qty) per line, sorted: the same for any order the items arrived in. */
+    private record Key(long[] packed, int hash) {
+        static Key of(SkuCounts counts) {
+            long[] packed = new long[counts.size()];
+            for (int i = 0; i < packed.length; i++) {
+                packed[i] = (long) counts.skuAt(i) << 32 | (counts.qtyAt(i) & 0xffffffffL);
+            }
+            Arrays.sort(packed);
+            return new Key(packed, Arrays.hashCode(packed));
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof Key k && k.hash == hash && Arrays.equals(k.packed, packed);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+    }
+}
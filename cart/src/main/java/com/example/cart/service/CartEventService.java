@@ -0,0 +1,314 @@
+package com.example.cart.service;
+
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartDelta;
+import com.example.cart.model.CartLine;
+import com.example.cart.pricing.FxRates;
+import com.example.cart.store.CartStore;
+import com.example.cart.store.Versioned;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes cart changes to subscribers as server-sent events (GET /api/cart/events).
+ *
+ * An idle subscription is an async servlet request plus a few objects here:
+ * no thread is held between events. CartStore reports every mutation; the
+ * first one marks the user pending and schedules a flush cart.events.coalesce
+ * later, and any further changes in that window ride along. A flush reads the
+ * cart's bill once, on a virtual thread, and hands it to each of the user's
+ * subscribers, which sends only the lines that changed since its last event.
+ *
+ * Each subscriber has at most one send in flight, on its own virtual thread,
+ * and at most one bill pending: bills and heartbeats that arrive meanwhile
+ * replace it, and the next send carries the latest cart. So a slow client
+ * delays nobody else and queues nothing. One whose write has been stuck
+ * longer than cart.events.max-lag is dropped; it reconnects and gets the whole
+ * cart again.
+ */
+@Service
+public class CartEventService {
+
+    private static final Logger log = LoggerFactory.getLogger(CartEventService.class);
+
+    private final CartStore store;
+    private final FxRates fx;
+    private final long coalesceMillis;
+    private final long timeoutMillis;
+    private final long heartbeatMillis;
+    private final long maxLagNanos;
+
+    private final ConcurrentHashMap<String, Set<Subscription>> subscribers = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger count = new AtomicInteger();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService senders;
+
+    public CartEventService(CartStore store, FxRates fx,
+                            @Value("${cart.events.coalesce:50ms}") Duration coalesce,
+                            @Value("${cart.events.timeout:30m}") Duration timeout,
+                            @Value("${cart.events.heartbeat:25s}") Duration heartbeat,
+                            @Value("${cart.events.max-lag:10s}") Duration maxLag) {
+        this.store = store;
+        this.fx = fx;
+        this.coalesceMillis = coalesce.toMillis();
+        this.timeoutMillis = timeout.toMillis();
+        this.heartbeatMillis = heartbeat.toMillis();
+        this.maxLagNanos = maxLag.toNanos();
+        this.timer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("cart-events-timer").factory());
+        this.senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("cart-events-", 0).factory());
+    }
+
+    @PostConstruct
+    void start() {
+        timer.scheduleAtFixedRate(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        store.onChange(this::changed);
+    }
+
+    /** Opens a subscription; the first event is the whole cart, then deltas as it changes. */
+    public SseEmitter subscribe(String userId, String currency, Locale locale) {
+        return subscribe(userId, currency, locale, new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter subscribe(String userId, String currency, Locale locale, SseEmitter emitter) {
+        Subscription sub = new Subscription(userId, currency, locale, emitter);
+        subscribers.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(sub);
+        count.incrementAndGet();
+        emitter.onCompletion(() -> unsubscribe(sub));
+        emitter.onTimeout(() -> unsubscribe(sub));
+        emitter.onError(e -> unsubscribe(sub));
+
+        read(userId, List.of(sub));
+        return emitter;
+    }
+
+    /** Ends the streams open here for userId's cart, e.g. once it moved to another node; clients reconnect. */
+    public void close(String userId) {
+        Set<Subscription> subs = subscribers.remove(userId);
+        if (subs == null) return;
+        for (Subscription sub : subs) {
+            end(sub, null);
+            count.decrementAndGet();
+        }
+    }
+
+    /** Open subscriptions on this node. */
+    public int subscriptions() {
+        return count.get();
+    }
+
+    /** Called by CartStore after a change; cheap when nobody is listening to that cart. */
+    void changed(String userId) {
+        if (!subscribers.containsKey(userId)) return;
+        if (pending.add(userId)) {
+            timer.schedule(() -> flush(userId), coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(String userId) {
+        pending.remove(userId); // changes from here on schedule another flush
+        Set<Subscription> subs = subscribers.get(userId);
+        if (subs != null) read(userId, subs);
+    }
+
+    /** Reads userId's bill once, off the timer, and offers it to each of subs. */
+    private void read(String userId, Collection<Subscription> subs) {
+        senders.execute(() -> {
+            Versioned<Bill> bill;
+            try {
+                bill = store.versionedBill(userId);
+            } catch (RuntimeException e) {
+                log.warn("Cart events for {} failed", userId, e);
+                for (Subscription sub : subs) {
+                    unsubscribe(sub);
+                    end(sub, e);
+                }
+                return;
+            }
+            for (Subscription sub : subs) {
+                sub.next.accumulateAndGet(bill, CartEventService::newer);
+                signal(sub);
+            }
+        });
+    }
+
+    // flushes can finish out of order; a subscriber keeps the later bill
+    private static Versioned<Bill> newer(Versioned<Bill> pending, Versioned<Bill> offered) {
+        if (pending == null || offered.version() > pending.version()) return offered;
+        if (offered.version() < pending.version()) return pending;
+        return offered.value().catalogVersion() >= pending.value().catalogVersion() ? offered : pending;
+    }
+
+    /** Starts sub's sender unless one is already running; that one will see what was offered. */
+    private void signal(Subscription sub) {
+        if (sub.work.getAndIncrement() == 0) senders.execute(() -> drain(sub));
+    }
+
+    private void drain(Subscription sub) {
+        int missed = 1;
+        do {
+            if (sub.closed) return;
+            try {
+                Versioned<Bill> bill = sub.next.getAndSet(null);
+                if (bill != null) {
+                    sub.beat.set(false); // an event keeps the stream open as well as a comment does
+                    push(sub, bill);
+                } else if (sub.beat.getAndSet(false)) {
+                    send(sub, SseEmitter.event().comment(""));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Cart event for {} failed", sub.userId, e);
+                unsubscribe(sub);
+                end(sub, e);
+                return;
+            }
+            missed = sub.work.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** Sends sub what changed since its last event, if anything did. Only sub's sender calls this. */
+    private void push(Subscription sub, Versioned<Bill> versioned) {
+        boolean full = sub.last == null;
+        Bill bill = versioned.value();
+        if (!full && versioned.version() <= sub.version && bill.catalogVersion() == sub.catalogVersion) return;
+
+        bill = fx.convert(bill, sub.currency);
+        Map<String, CartLine> next = new HashMap<>(bill.lines().size() * 2);
+        List<CartLine> changed = new ArrayList<>();
+        int units = 0;
+        for (CartLine line : bill.lines()) {
+            next.put(line.item(), line);
+            units += line.qty();
+            if (full || !line.equals(sub.last.get(line.item()))) changed.add(line);
+        }
+        List<String> removed = new ArrayList<>();
+        if (!full) {
+            for (String item : sub.last.keySet()) if (!next.containsKey(item)) removed.add(item);
+        }
+
+        CartDelta delta = new CartDelta(versioned.version(), full, changed, removed, units, sub.currency,
+                bill.totalPence(), bill.total(sub.currency).format(sub.locale));
+        if (send(sub, SseEmitter.event()
+                .name("cart")
+                .id(store.etag(versioned.version()))
+                .data(delta, MediaType.APPLICATION_JSON))) {
+            sub.last = next;
+            sub.version = versioned.version();
+            sub.catalogVersion = bill.catalogVersion();
+        }
+    }
+
+    /** Writes one event, timing it for the heartbeat's lag check; false if the client is gone. */
+    private boolean send(Subscription sub, SseEmitter.SseEventBuilder event) {
+        sub.sendingSince = System.nanoTime();
+        try {
+            sub.emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // client went away (or the emitter already completed): drop the subscription
+            unsubscribe(sub);
+            end(sub, e);
+            return false;
+        } finally {
+            sub.sendingSince = 0;
+        }
+    }
+
+    /**
+     * A comment line on every subscription, so proxies and load balancers keep idle
+     * streams open. A subscriber still stuck in a write from long ago is dropped instead.
+     */
+    private void heartbeat() {
+        long now = System.nanoTime();
+        subscribers.values().forEach(subs -> subs.forEach(sub -> {
+            long since = sub.sendingSince;
+            if (since != 0 && now - since > maxLagNanos) {
+                log.debug("Dropping cart event subscriber for {}: a write has been blocked for {}ms",
+                        sub.userId, TimeUnit.NANOSECONDS.toMillis(now - since));
+                unsubscribe(sub);
+                end(sub, new IOException("Subscriber fell behind"));
+            } else {
+                sub.beat.set(true);
+                signal(sub);
+            }
+        }));
+    }
+
+    /**
+     * Stops sending to sub and completes its emitter. That runs on a sender: SseEmitter
+     * completes under the monitor a stuck write holds, until the container times it out.
+     */
+    private void end(Subscription sub, Throwable error) {
+        sub.closed = true;
+        senders.execute(() -> {
+            if (error == null) sub.emitter.complete();
+            else sub.emitter.completeWithError(error);
+        });
+    }
+
+    private void unsubscribe(Subscription sub) {
+        Set<Subscription> subs = subscribers.get(sub.userId);
+        if (subs != null && subs.remove(sub)) {
+            count.decrementAndGet();
+            if (subs.isEmpty()) subscribers.remove(sub.userId, subs);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+        senders.shutdownNow();
+        subscribers.values().forEach(subs -> subs.forEach(sub -> sub.emitter.complete()));
+        log.debug("Closed {} cart event subscriptions", count.get());
+    }
+
+    private static final class Subscription {
+        final String userId;
+        final String currency;
+        final Locale locale;
+        final SseEmitter emitter;
+
+        // sends owed: a sender runs while work > 0, and re-checks next and beat for each signal it missed
+        final AtomicInteger work = new AtomicInteger();
+        final AtomicReference<Versioned<Bill>> next = new AtomicReference<>();
+        final AtomicBoolean beat = new AtomicBoolean();
+        volatile long sendingSince;
+        volatile boolean closed;
+
+        // what this subscriber was last sent; only its sender touches these
+        Map<String, CartLine> last;
+        long version = -1;
+        long catalogVersion = -1;
+
+        Subscription(String userId, String currency, Locale locale, SseEmitter emitter) {
+            this.userId = userId;
+            this.currency = currency;
+            this.locale = locale;
+            this.emitter = emitter;
+        }
+    }
+}
@@ -1,75 +1,132 @@
 package com.example.cart.service;
 
+import com.example.cart.model.Bill;
+import com.example.cart.metrics.CartMetrics;
 import com.example.cart.model.CartLine;
-import com.example.cart.pricing.offers.Offer;
+import com.example.cart.pricing.Amounts;
+import com.example.cart.pricing.CatalogSnapshot;
 import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.pricing.promotions.PromotionEngine;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 @Service
 public class ShoppingCartService {
 
     private final PriceCatalog catalog;
+    private final PromotionEngine promotions;
+    private final CartMetrics metrics;
+    private final BillCache cache;
 
-    public ShoppingCartService(PriceCatalog catalog) {
+    @Autowired
+    public ShoppingCartService(PriceCatalog catalog, PromotionEngine promotions, CartMetrics metrics, BillCache cache) {
         this.catalog = catalog;
+        this.promotions = promotions;
+        this.metrics = metrics;
+        this.cache = cache;
+    }
+
+    /** Without metrics or the bill cache, for tests and tools. */
+    public ShoppingCartService(PriceCatalog catalog, PromotionEngine promotions) {
+        this(catalog, promotions, CartMetrics.NONE, BillCache.NONE);
+    }
+
+    /** Catalog prices and offers only, for tests and tools. */
+    public ShoppingCartService(PriceCatalog catalog) {
+        this(catalog, PromotionEngine.NONE);
     }
 
     /**
-     * Returns the detailed line items for the given basket.
-     * - Validates items (throws IllegalArgumentException for unknowns)
-     * - Applies offers (e.g., BOGOF, 3-for-2)
+     * Prices the basket in a single pass and returns lines and total together.
+     * - Resolves each item to a SKU id once (throws IllegalArgumentException for unknowns)
+     * - Counts into one quantity vector per call, so no per-item allocation. It is not
+     *   kept per thread: with virtual threads every request is a new thread, and a
+     *   ThreadLocal would build and drop one per request anyway, plus its map entry
+     * - Applies offers from the catalog's per-SKU table (e.g., BOGOF, 3-for-2)
+     * - Applies promotions, when any are configured (see PromotionEngine)
      * - Prices are in MINOR units (pence)
+     * - Uses one catalog snapshot throughout, so a concurrent reload never mixes prices
+     * - Identical baskets (in any item order) are answered from BillCache until the catalog changes
      */
-    public List<CartLine> calculateLines(List<String> items) {
-        if (items == null) items = List.of();
+    public Bill price(List<String> items) {
+        CatalogSnapshot snapshot = catalog.snapshot();
+        if (items == null || items.isEmpty()) return Bill.empty(snapshot.version());
 
-        // Count items (keep insertion order stable)
-        Map<String, Integer> counts = new LinkedHashMap<>();
-        for (String raw : items) {
-            // validate item (throws if unknown)
-            catalog.priceOf(raw);
+        SkuCounts counts = new SkuCounts();
+        count(items, counts, snapshot);
+        return price(counts, snapshot);
+    }
 
-            String canonical = catalog.canonical(raw);
-            counts.merge(canonical, 1, Integer::sum);
-        }
+    /** Prices an already-counted basket (e.g. a stored cart) against the current catalog. */
+    public Bill price(SkuCounts counts) {
+        return price(counts, catalog.snapshot());
+    }
 
-        List<CartLine> lines = new ArrayList<>();
-        for (Map.Entry<String, Integer> e : counts.entrySet()) {
-            String item = e.getKey();
-            int qty = e.getValue();
+    private Bill price(SkuCounts counts, CatalogSnapshot catalog) {
+        if (counts.isEmpty()) return Bill.empty(catalog.version());
+        long start = System.nanoTime();
+        Bill bill = cache.get(counts, catalog, () -> promotions.isEmpty()
+                ? priceOffers(counts, catalog)
+                : promotions.price(counts, catalog));
+        metrics.pricing(System.nanoTime() - start);
+        metrics.offersApplied(bill, counts, catalog);
+        return bill;
+    }
 
-            int unitPricePence = catalog.priceOf(item); // in pence
-            Offer offer = catalog.offerOf(item);
-            int chargeableQty = offer.chargeableQuantity(qty);
+    private static Bill priceOffers(SkuCounts counts, CatalogSnapshot catalog) {
+        int lines = counts.size();
+        CartLine[] out = new CartLine[lines];
+        int total = 0;
+        for (int i = 0; i < lines; i++) {
+            int sku = counts.skuAt(i);
+            int qty = counts.qtyAt(i);
 
-            int lineTotalPence = chargeableQty * unitPricePence;
+            int unitPricePence = catalog.priceOf(sku);
+            int chargeableQty = catalog.offerOf(sku).chargeableQuantity(qty);
+            int lineTotalPence = Amounts.multiply(chargeableQty, unitPricePence);
 
-            lines.add(new CartLine(
-                    item,
-                    qty,
-                    chargeableQty,
-                    unitPricePence,
-                    lineTotalPence
-            ));
+            out[i] = new CartLine(catalog.nameOf(sku), qty, chargeableQty, unitPricePence, lineTotalPence);
+            total = Amounts.add(total, lineTotalPence);
         }
+        return new Bill(List.of(out), total, catalog.version());
+    }
 
-        return lines;
+    /**
+     * Returns the detailed line items for the given basket.
+     * - Validates items (throws IllegalArgumentException for unknowns)
+     * - Applies offers (e.g., BOGOF, 3-for-2) and promotions; each line lists the discounts it got
+     * - Prices are in MINOR units (pence)
+     */
+    public List<CartLine> calculateLines(List<String> items) {
+        return price(items).lines();
     }
 
     /**
      * Returns the grand total (in pence) for the given basket.
-     * Delegates to calculateLines(...) and sums line totals.
+     * Same single pass as price(...), without building the lines.
      */
     public int calculateTotalPence(List<String> items) {
+        if (items == null || items.isEmpty()) return 0;
+        if (!promotions.isEmpty()) return price(items).totalPence();
+
+        CatalogSnapshot snapshot = catalog.snapshot();
+        SkuCounts counts = new SkuCounts();
+        count(items, counts, snapshot);
         int total = 0;
-        for (CartLine line : calculateLines(items)) {
-            total += line.lineTotalPence();
+        for (int i = 0; i < counts.size(); i++) {
+            int sku = counts.skuAt(i);
+            total = Amounts.add(total,
+                    Amounts.multiply(snapshot.offerOf(sku).chargeableQuantity(counts.qtyAt(i)), snapshot.priceOf(sku)));
         }
         return total;
     }
+
+    private static void count(List<String> items, SkuCounts counts, CatalogSnapshot catalog) {
+        for (String raw : items) {
+            counts.add(catalog.idOf(raw), 1);
+        }
+    }
 }
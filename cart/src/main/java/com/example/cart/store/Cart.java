@@ -0,0 +1,532 @@
+package com.example.cart.store;
+
+import com.example.cart.metrics.CartMetrics;
+import com.example.cart.model.AddItemRequest;
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartLine;
+import com.example.cart.model.CartOperation;
+import com.example.cart.pricing.AmountOverflowException;
+import com.example.cart.pricing.Amounts;
+import com.example.cart.pricing.CatalogSnapshot;
+import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.pricing.promotions.PromotionEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+
+/**
+ * One user's cart: a SKU quantity vector plus a running bill, guarded by
+ * the cart's own lock. Requests for different users never contend.
+ * A ReentrantLock rather than synchronized, so a virtual thread waiting
+ * for a busy cart unmounts instead of pinning its carrier thread.
+ *
+ * Each mutation re-prices only the line it touches (via the offer's
+ * chargeable-quantity delta), so reading the bill never re-prices the cart.
+ * Every change is appended to the {@link CartJournal} as the line's new quantity;
+ * a multi-op update as one record holding all of its lines.
+ *
+ * The running bill remembers which catalog version it was priced with; the
+ * first touch after a catalog reload re-prices every line against the new one.
+ *
+ * Promotions can span lines (bundles, spend thresholds), so with any
+ * configured the bill is re-priced as a whole on the first read after a change.
+ *
+ * Every change to the contents gives the cart a new version, drawn from a
+ * store-wide counter so it only goes up, even across an evict and re-create.
+ * CartStore publishes it as the cart's ETag; mutations can be made
+ * conditional on it (If-Match).
+ *
+ * A cart CartStore evicts is retired: its state is handed to the spill and any
+ * mutation that reaches it afterwards throws {@link RetiredException}, so the
+ * caller can retry against the copy reloaded from the spill. Reads still work.
+ */
+public final class Cart {
+
+    static final LongPredicate ANY_VERSION = v -> true;
+
+    /** Thrown by mutations of a cart the store has evicted; stackless, it only signals a retry. */
+    static final class RetiredException extends RuntimeException {
+        private RetiredException() {
+            super("cart evicted", null, false, false);
+        }
+    }
+
+    private static final RetiredException RETIRED = new RetiredException();
+
+    private final PriceCatalog catalog;
+    private final String userId;
+    private final CartJournal journal;
+    private final PromotionEngine promotions;
+    private final CartMetrics metrics;
+    private final AtomicLong versions;
+    private final long expiresAt;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final SkuCounts counts = new SkuCounts();
+
+    // running bill, parallel to the lines of counts
+    private int[] chargeable = new int[4];
+    private int[] lineTotals = new int[4];
+    private int totalPence;
+    private long catalogVersion = -1;
+    private long version;
+    private boolean retired;
+
+    // whether anything but a handoff has changed (or tried to change) this cart, and the last handoff's source tag
+    private boolean written;
+    private String handedOff;
+    private volatile int weight;
+
+    // materialised bill, rebuilt lazily after a mutation or catalog change
+    private Bill bill;
+
+    Cart(PriceCatalog catalog, String userId, CartJournal journal, PromotionEngine promotions, CartMetrics metrics,
+         AtomicLong versions, long expiresAt) {
+        this.catalog = catalog;
+        this.versions = versions;
+        this.expiresAt = expiresAt;
+        this.userId = userId;
+        this.journal = journal;
+        this.promotions = promotions;
+        this.metrics = metrics;
+        reweigh();
+    }
+
+    /** Adds n units; returns the journal sequence of the change. */
+    long add(int sku, int n) {
+        return add(sku, n, ANY_VERSION);
+    }
+
+    /** As above, if ifMatch accepts the current version (throws CartVersionMismatchException otherwise). */
+    long add(int sku, int n, LongPredicate ifMatch) {
+        lock.lock();
+        try {
+            checkLive();
+            checkVersion(ifMatch);
+            written = true;
+            return setLocked(sku, Amounts.add(counts.qtyOf(sku), n), true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes up to n units; returns the journal sequence of the change, or 0 if nothing changed. */
+    long remove(int sku, int n) {
+        return remove(sku, n, ANY_VERSION);
+    }
+
+    long remove(int sku, int n, LongPredicate ifMatch) {
+        lock.lock();
+        try {
+            checkLive();
+            checkVersion(ifMatch);
+            written = true;
+            int qty = counts.qtyOf(sku);
+            if (qty == 0) return 0;
+            return setLocked(sku, Math.max(0, qty - n), true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** A resolved PATCH operation: sku is -1 for clear. */
+    record Op(CartOperation.Type type, int sku, int qty) {}
+
+    /**
+     * Applies every op in one hold of the lock, so no reader sees the cart half-way
+     * and If-Match is checked once against the version before the first.
+     * All or none: the end state is worked out and checked (quantity cap, total in
+     * int range) before anything changes, then journaled as one record.
+     * Returns that record's journal sequence (0 if nothing changed).
+     */
+    long apply(List<Op> ops, LongPredicate ifMatch) {
+        lock.lock();
+        try {
+            checkLive();
+            checkVersion(ifMatch);
+            written = true;
+            CatalogSnapshot snapshot = current();
+
+            // end quantity per touched line, in long arithmetic, so no op can overflow
+            boolean clear = false;
+            Map<Integer, Long> end = new LinkedHashMap<>();
+            for (Op op : ops) {
+                if (op.type() == CartOperation.Type.CLEAR) {
+                    clear = true;
+                    end.clear();
+                    continue;
+                }
+                Long pending = end.get(op.sku());
+                long qty = pending != null ? pending : clear ? 0 : counts.qtyOf(op.sku());
+                long next = switch (op.type()) {
+                    case ADD -> qty + op.qty();
+                    case REMOVE -> Math.max(0, qty - op.qty());
+                    default -> op.qty();
+                };
+                if (next > AddItemRequest.MAX_QTY) {
+                    throw new IllegalArgumentException("A cart holds at most " + AddItemRequest.MAX_QTY + " of " + snapshot.nameOf(op.sku()));
+                }
+                end.put(op.sku(), next);
+            }
+            long total = clear ? 0 : totalPence;
+            for (Map.Entry<Integer, Long> e : end.entrySet()) {
+                int line = clear ? -1 : counts.lineOf(e.getKey());
+                total += lineTotal(e.getKey(), e.getValue().intValue(), snapshot) - (line < 0 ? 0 : lineTotals[line]);
+            }
+            if (total > Integer.MAX_VALUE) throw new AmountOverflowException();
+
+            long before = version;
+            if (clear) clear(false);
+            // shrinking lines first, so the running total never passes the checked end total
+            List<Map.Entry<Integer, Long>> lines = new ArrayList<>(end.entrySet());
+            lines.sort(Comparator.comparingLong(e -> e.getValue() - counts.qtyOf(e.getKey())));
+            List<String> items = new ArrayList<>(lines.size());
+            int[] qtys = new int[lines.size()];
+            for (int i = 0; i < lines.size(); i++) {
+                int sku = lines.get(i).getKey();
+                qtys[i] = lines.get(i).getValue().intValue();
+                items.add(snapshot.nameOf(sku));
+                setLocked(sku, qtys[i], false);
+            }
+            if (version == before) return 0;
+            // under the cart lock, like setLocked's records
+            return journal.update(userId, clear, items, qtys);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the lines with a cart handed off by its previous owner, unless this cart has been
+     * written otherwise: by a request, even a clear of an empty cart, or restored from the spill
+     * or journal, whose history is unknown. Taking the same source twice is a no-op. Returns the
+     * journal sequence (0 if nothing changed), or -1 if the handoff was refused.
+     */
+    long handOff(List<Op> ops, String source) {
+        lock.lock();
+        try {
+            checkLive();
+            if (written) return -1;
+            if (source.equals(handedOff)) return 0;
+            List<Op> replace = new ArrayList<>(ops.size() + 1);
+            replace.add(new Op(CartOperation.Type.CLEAR, -1, 0));
+            replace.addAll(ops);
+            long seq = apply(replace, ANY_VERSION);
+            written = false;
+            handedOff = source;
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Replays a recovered line without journaling it again. */
+    void restore(int sku, int qty) {
+        lock.lock();
+        try {
+            checkLive();
+            written = true;
+            setLocked(sku, qty, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Fills a new cart from its spilled copy, version included, without journaling. */
+    void load(CartSpill.Entry spilled) {
+        lock.lock();
+        try {
+            for (int i = 0; i < spilled.skus().length; i++) setLocked(spilled.skus()[i], spilled.qtys()[i], false);
+            version = spilled.version();
+            written = true;
+            reweigh();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retires the cart (see class comment) if handOff accepts its final contents, all under the
+     * lock, so nothing can change it in between. Returns those contents, or null if it was
+     * already retired or handOff declined.
+     */
+    CartSpill.Entry retire(Predicate<CartSpill.Entry> handOff) {
+        lock.lock();
+        try {
+            if (retired) return null;
+            int n = counts.size();
+            int[] skus = new int[n];
+            int[] qtys = new int[n];
+            for (int i = 0; i < n; i++) {
+                skus[i] = counts.skuAt(i);
+                qtys[i] = counts.qtyAt(i);
+            }
+            CartSpill.Entry contents = new CartSpill.Entry(userId, version, expiresAt, skus, qtys);
+            if (!handOff.test(contents)) return null;
+            retired = true;
+            return contents;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** As retire(handOff), but returns null at once rather than wait for a busy cart. */
+    CartSpill.Entry tryRetire(Predicate<CartSpill.Entry> handOff) {
+        if (!lock.tryLock()) return null;
+        try {
+            return retire(handOff);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String userId() {
+        return userId;
+    }
+
+    /** Wall-clock time (epoch ms) the cart's absolute TTL runs out; Long.MAX_VALUE for never. */
+    long expiresAt() {
+        return expiresAt;
+    }
+
+    /** Rough heap footprint in bytes, for the store's memory budget; read without the lock. */
+    int weight() {
+        return weight;
+    }
+
+    /** Re-estimates weight after a change. Caller holds lock. */
+    private void reweigh() {
+        // cart, lock, count and bill arrays, cache entry and key, plus the materialised bill if any
+        int bytes = 360 + userId.length() + 24 * chargeable.length;
+        if (bill != null) bytes += 48 + 96 * bill.lines().size();
+        weight = bytes;
+    }
+
+    long clear() {
+        return clear(ANY_VERSION);
+    }
+
+    long clear(LongPredicate ifMatch) {
+        lock.lock();
+        try {
+            checkVersion(ifMatch);
+            written = true;
+            return clear(true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long clear(boolean journaled) {
+        lock.lock();
+        try {
+            checkLive();
+            if (counts.isEmpty()) return 0;
+            counts.clear();
+            totalPence = 0;
+            bill = null;
+            version = versions.incrementAndGet();
+            reweigh();
+            return journaled ? journal.clear(userId) : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Emits one record per line; used to write journal snapshots. */
+    void replayInto(CartJournal.Sink sink) {
+        lock.lock();
+        try {
+            for (int i = 0; i < counts.size(); i++) {
+                sink.set(userId, catalog.nameOf(counts.skuAt(i)), counts.qtyAt(i));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long setLocked(int sku, int qty, boolean journaled) {
+        CatalogSnapshot snapshot = current();
+        int line = counts.lineOf(sku);
+        int old = line < 0 ? 0 : counts.qtyAt(line);
+        if (qty == old) return 0;
+        if (journaled && qty > AddItemRequest.MAX_QTY) {
+            throw new IllegalArgumentException("A cart holds at most " + AddItemRequest.MAX_QTY + " of " + snapshot.nameOf(sku));
+        }
+        // a total past int range throws AmountOverflowException here, before anything changes
+        Amounts.toInt(totalPence - (line < 0 ? 0 : lineTotals[line]) + lineTotal(sku, qty, snapshot));
+        version = versions.incrementAndGet();
+
+        if (qty > old) {
+            counts.add(sku, qty - old);
+            if (line < 0) {
+                line = counts.size() - 1;
+                ensureCapacity(line + 1);
+                chargeable[line] = 0;
+                lineTotals[line] = 0;
+            }
+            reprice(line, sku, qty, snapshot);
+        } else if (qty > 0) {
+            counts.remove(sku, old - qty);
+            reprice(line, sku, qty, snapshot);
+        } else {
+            counts.remove(sku, old);
+            totalPence -= lineTotals[line];
+            int tail = counts.size() - line;
+            System.arraycopy(chargeable, line + 1, chargeable, line, tail);
+            System.arraycopy(lineTotals, line + 1, lineTotals, line, tail);
+            bill = null;
+        }
+        reweigh();
+        // under the cart lock, so this cart's records are journaled in apply order
+        return journaled ? journal.set(userId, snapshot.nameOf(sku), qty) : 0;
+    }
+
+    /** Point-in-time copy of the quantities, safe to read without the lock. */
+    public SkuCounts counts() {
+        lock.lock();
+        try {
+            return counts.copy();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Version of the contents: 0 until the first change, then higher after every change. */
+    public long version() {
+        lock.lock();
+        try {
+            return version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** counts() with the version it was read at. */
+    Versioned<SkuCounts> versionedCounts() {
+        lock.lock();
+        try {
+            return new Versioned<>(counts.copy(), version);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** bill() with the cart version it was priced at. */
+    Versioned<Bill> versionedBill() {
+        lock.lock();
+        try {
+            return new Versioned<>(bill(), version);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Units held across all lines. */
+    public long units() {
+        lock.lock();
+        try {
+            return counts.totalUnits();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Grand total of the running bill. */
+    public int totalPence() {
+        lock.lock();
+        try {
+            current();
+            return promotions.isEmpty() ? totalPence : bill().totalPence();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The running bill; unchanged carts return the same instance. */
+    public Bill bill() {
+        lock.lock();
+        try {
+            CatalogSnapshot snapshot = current();
+            Bill previous = bill;
+            if (bill == null && !promotions.isEmpty()) {
+                bill = promotions.price(counts, snapshot);
+            } else if (bill == null) {
+                CartLine[] lines = new CartLine[counts.size()];
+                for (int i = 0; i < lines.length; i++) {
+                    int sku = counts.skuAt(i);
+                    lines[i] = new CartLine(snapshot.nameOf(sku), counts.qtyAt(i), chargeable[i],
+                            snapshot.priceOf(sku), lineTotals[i]);
+                }
+                bill = new Bill(List.of(lines), totalPence, catalogVersion);
+            }
+            if (bill != previous) {
+                metrics.offersApplied(bill, counts, snapshot);
+                reweigh();
+            }
+            return bill;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Throws CartVersionMismatchException unless ifMatch accepts the current version. */
+    void expect(LongPredicate ifMatch) {
+        lock.lock();
+        try {
+            checkVersion(ifMatch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkLive() {
+        if (retired) throw RETIRED;
+    }
+
+    private void checkVersion(LongPredicate ifMatch) {
+        if (!ifMatch.test(version)) throw new CartVersionMismatchException(userId, version);
+    }
+
+    /** The current catalog, after bringing the running bill up to its version. Caller holds lock. */
+    private CatalogSnapshot current() {
+        CatalogSnapshot snapshot = catalog.snapshot();
+        if (snapshot.version() != catalogVersion) {
+            for (int i = 0; i < counts.size(); i++) {
+                reprice(i, counts.skuAt(i), counts.qtyAt(i), snapshot);
+            }
+            catalogVersion = snapshot.version();
+            bill = null;
+        }
+        return snapshot;
+    }
+
+    private void reprice(int line, int sku, int qty, CatalogSnapshot snapshot) {
+        int charge = snapshot.offerOf(sku).chargeableQuantity(qty);
+        int lineTotal = Amounts.toInt(lineTotal(sku, qty, snapshot));
+        totalPence = Amounts.toInt((long) totalPence + lineTotal - lineTotals[line]);
+        chargeable[line] = charge;
+        lineTotals[line] = lineTotal;
+        bill = null;
+    }
+
+    private static long lineTotal(int sku, int qty, CatalogSnapshot snapshot) {
+        return Amounts.multiply((long) snapshot.offerOf(sku).chargeableQuantity(qty), snapshot.priceOf(sku));
+    }
+
+    private void ensureCapacity(int lines) {
+        if (lines > chargeable.length) {
+            int cap = Math.max(lines, chargeable.length * 2);
+            chargeable = Arrays.copyOf(chargeable, cap);
+            lineTotals = Arrays.copyOf(lineTotals, cap);
+        }
+    }
+}
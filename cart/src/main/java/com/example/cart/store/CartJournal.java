@@ -0,0 +1,61 @@
+package com.example.cart.store;
+
+import java.util.List;
+
+/**
+ * Write-ahead log of cart mutations. Records carry the line's new absolute
+ * quantity (not a delta), so replaying a record twice is harmless and a
+ * snapshot can be taken while carts keep changing.
+ *
+ * Appends for one cart happen under that cart's lock, so per-cart order in
+ * the journal matches the order the mutations were applied in.
+ */
+public interface CartJournal extends AutoCloseable {
+
+    /** Receives recovered state: snapshot lines first, then journal records in order. */
+    interface Sink {
+        void set(String userId, String item, int qty);
+
+        void clear(String userId);
+    }
+
+    /** Source of the full current state for a snapshot (one set(...) per non-empty line). */
+    interface State {
+        void replayInto(Sink sink);
+    }
+
+    /** No persistence: carts live on the heap only. */
+    CartJournal NONE = new CartJournal() {
+        @Override public long set(String userId, String item, int qty) { return 0; }
+        @Override public long clear(String userId) { return 0; }
+        @Override public long update(String userId, boolean clear, List<String> items, int[] qtys) { return 0; }
+        @Override public void awaitDurable(long seq) {}
+        @Override public void recover(Sink sink) {}
+        @Override public void start(State state) {}
+        @Override public void close() {}
+    };
+
+    /** Appends "userId's line for item is now qty" and returns its sequence number. */
+    long set(String userId, String item, int qty);
+
+    /** Appends "userId's cart was cleared" and returns its sequence number. */
+    long clear(String userId);
+
+    /**
+     * Appends one record for a multi-line change: replayed as a clear (if clear is set)
+     * followed by each item's new qty, and either all of it is recovered or none.
+     */
+    long update(String userId, boolean clear, List<String> items, int[] qtys);
+
+    /** Blocks until every record up to seq has been forced to disk (no-op for async durability). */
+    void awaitDurable(long seq);
+
+    /** Replays the latest snapshot and every journal written after it. */
+    void recover(Sink sink);
+
+    /** Starts group flushing and periodic snapshots of the given state. */
+    void start(State state);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,36 @@
+package com.example.cart.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Picks the cart journal: memory-mapped files when cart.journal.enabled,
+ * otherwise none (carts are lost on restart).
+ */
+@Configuration
+public class CartJournalConfig {
+
+    @Bean(destroyMethod = "close")
+    public CartJournal cartJournal(
+            @Value("${cart.journal.enabled:false}") boolean enabled,
+            @Value("${cart.journal.dir:./data/journal}") String dir,
+            @Value("${cart.journal.segment-size:64MB}") DataSize segmentSize,
+            @Value("${cart.journal.flush-interval:5ms}") Duration flushInterval,
+            @Value("${cart.journal.snapshot-interval:5m}") Duration snapshotInterval,
+            @Value("${cart.journal.durability:async}") String durability
+    ) {
+        if (!enabled) return CartJournal.NONE;
+        boolean sync = switch (durability) {
+            case "sync" -> true;
+            case "async" -> false;
+            default -> throw new IllegalArgumentException("cart.journal.durability must be sync or async: " + durability);
+        };
+        return new MappedCartJournal(Path.of(dir), Math.toIntExact(segmentSize.toBytes()), sync,
+                flushInterval, snapshotInterval);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.cart.store;
+
+import java.util.function.Consumer;
+
+/**
+ * Where CartStore parks carts it evicts from memory, to reload them on their
+ * next access. A spilled cart's file always holds its current contents: a cart
+ * is only spilled once it is out of the store and only read back while it is
+ * still out, and the copy is kept after a reload so a later spill overwrites it.
+ *
+ * Spill files are a cache of the heap, not a second journal: they are not
+ * forced to disk and are wiped at startup (the journal, if any, has every cart).
+ */
+public interface CartSpill extends AutoCloseable {
+
+    /** A spilled cart: parallel SKU id and quantity arrays, valid for this process's catalog ids. */
+    record Entry(String userId, long version, long expiresAt, int[] skus, int[] qtys) {
+        public boolean isEmpty() {
+            return skus.length == 0;
+        }
+    }
+
+    /** Spills nothing: evicted carts are dropped. */
+    CartSpill NONE = new CartSpill() {
+        @Override public boolean write(Entry entry) { return false; }
+        @Override public Entry read(String userId) { return null; }
+        @Override public void delete(String userId) {}
+        @Override public void forEach(Consumer<Entry> action) {}
+        @Override public long size() { return 0; }
+        @Override public void close() {}
+    };
+
+    /** Stores entry, replacing any earlier copy; false if it could not be written (the cart is then lost). */
+    boolean write(Entry entry);
+
+    /** The spilled copy of userId's cart, or null if there is none (or it cannot be read). */
+    Entry read(String userId);
+
+    void delete(String userId);
+
+    /** Every spilled cart, in no particular order. */
+    void forEach(Consumer<Entry> action);
+
+    /** Spilled carts, including copies of carts since reloaded. */
+    long size();
+
+    @Override
+    void close();
+}
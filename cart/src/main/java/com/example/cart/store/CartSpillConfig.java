@@ -0,0 +1,27 @@
+package com.example.cart.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Picks where evicted carts go: files under cart.store.spill.dir (a temporary
+ * directory when empty) when cart.store.spill.enabled, otherwise nowhere
+ * (an evicted cart is lost, like an expired one).
+ */
+@Configuration
+public class CartSpillConfig {
+
+    @Bean(destroyMethod = "close")
+    public CartSpill cartSpill(
+            @Value("${cart.store.spill.enabled:true}") boolean enabled,
+            @Value("${cart.store.spill.dir:}") String dir,
+            @Value("${cart.store.spill.sweep-interval:1h}") Duration sweepInterval
+    ) {
+        if (!enabled) return CartSpill.NONE;
+        return dir.isBlank() ? FileCartSpill.temporary(sweepInterval) : new FileCartSpill(Path.of(dir), sweepInterval);
+    }
+}
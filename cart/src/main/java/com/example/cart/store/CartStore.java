@@ -0,0 +1,587 @@
+package com.example.cart.store;
+
+import com.example.cart.metrics.CartMetrics;
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartOperation;
+import com.example.cart.model.CartQuantitiesView;
+import com.example.cart.model.CartView;
+import com.example.cart.pricing.Amounts;
+import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.pricing.promotions.PromotionEngine;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * In-memory cart store: user id -> quantity vector over catalog SKU ids.
+ * Item names are interned to SKU ids on the way in, so a cart costs
+ * a few ints per distinct item regardless of how many units it holds.
+ * Each cart also carries its running bill (see {@link Cart}).
+ *
+ * Mutations are written ahead to the {@link CartJournal}; on startup the
+ * store is rebuilt from the journal's latest snapshot plus its tail.
+ *
+ * Each cart's version is published as an entity tag, {@code <epoch>.<version>}.
+ * The epoch is drawn per store instance, so a tag issued before a restart, or
+ * by another node before a cart moved, never matches a cart whose version
+ * happens to have reached the same number.
+ *
+ * Resident carts are bounded by cart.store.max-size (estimated heap) and
+ * expire after cart.store.idle-ttl without access. Caffeine does the work:
+ * W-TinyLFU picks what to evict when the budget is full, so a flood of
+ * one-request carts (bots, "anon") cannot push out carts in active use, and
+ * per-cart deadlines sit in its hierarchical timer wheel, so expiry is O(1)
+ * per cart with no scans. An evicted cart is spilled to the {@link CartSpill}
+ * and transparently reloaded on its next access. A cart older than
+ * cart.store.absolute-ttl is dropped instead, spilled or not.
+ *
+ * Nothing blocks inside the cache's own locks: a virtual thread waiting on one
+ * pins its carrier, so blocking there on a cart's lock or on disk can starve
+ * the thread that holds it. Eviction only parks the cart in {@code evicting};
+ * a spill thread then writes it out under the cart's lock. A lookup that gets
+ * there first takes the parked cart back as it is. A miss installs an empty
+ * future and loads the cart into it afterwards, on the looking-up thread, so
+ * reading the spill never happens under the cache's lock either; other
+ * lookups of that cart wait on the future.
+ */
+@Component
+public class CartStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CartStore.class);
+    private static final int MAX_USER_ID_LENGTH = 256;
+
+    /** Snapshot of the store's size and eviction counters. */
+    public record Stats(long resident, long spilled, long estimatedBytes,
+                        long evictedForSize, long evictedIdle, long expired, long reloads) {}
+
+    private final PriceCatalog catalog;
+    private final CartJournal journal;
+    private final PromotionEngine promotions;
+    private final CartMetrics metrics;
+    private final CartSpill spill;
+    private final boolean bounded;
+    private final long idleNanos;        // Long.MAX_VALUE = no idle TTL
+    private final long absoluteMillis;   // 0 = no absolute TTL
+    private final AsyncCache<String, Cart> loading;
+    private final Cache<String, Cart> carts;   // loading's resident carts
+    private final ConcurrentHashMap<String, Cart> evicting = new ConcurrentHashMap<>();
+    private final ExecutorService spiller =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("cart-spill").factory());
+    private volatile Queue<Cart> revived;   // carts taken back from evicting during a journal snapshot
+    private final LongAdder evictedForSize = new LongAdder();
+    private final LongAdder evictedIdle = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final AtomicLong versions = new AtomicLong();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+
+    @Autowired
+    public CartStore(PriceCatalog catalog, CartJournal journal, PromotionEngine promotions, CartMetrics metrics,
+                     CartSpill spill,
+                     @Value("${cart.store.max-size:256MB}") DataSize maxSize,
+                     @Value("${cart.store.idle-ttl:30m}") Duration idleTtl,
+                     @Value("${cart.store.absolute-ttl:30d}") Duration absoluteTtl) {
+        this.catalog = catalog;
+        this.journal = journal;
+        this.promotions = promotions;
+        this.metrics = metrics;
+        this.spill = spill;
+        this.bounded = maxSize.toBytes() > 0;
+        this.idleNanos = idleTtl.isZero() ? Long.MAX_VALUE : idleTtl.toNanos();
+        this.absoluteMillis = absoluteTtl.toMillis();
+
+        Caffeine<String, Cart> builder = Caffeine.newBuilder().evictionListener(this::evicted);
+        if (bounded) {
+            builder.maximumWeight(maxSize.toBytes()).weigher((String userId, Cart cart) -> cart.weight());
+        }
+        if (idleNanos != Long.MAX_VALUE || absoluteMillis > 0) {
+            builder.expireAfter(new Expiry<String, Cart>() {
+                @Override public long expireAfterCreate(String userId, Cart cart, long now) {
+                    return ttlNanos(cart);
+                }
+
+                @Override public long expireAfterUpdate(String userId, Cart cart, long now, long remaining) {
+                    return ttlNanos(cart);
+                }
+
+                @Override public long expireAfterRead(String userId, Cart cart, long now, long remaining) {
+                    return ttlNanos(cart);
+                }
+            }).scheduler(Scheduler.systemScheduler()); // expire on time even when the store is quiet
+        }
+        this.loading = builder.buildAsync();
+        this.carts = loading.synchronous();
+    }
+
+    /** Unbounded store that never expires or spills anything, for tests and tools. */
+    public CartStore(PriceCatalog catalog, CartJournal journal, PromotionEngine promotions, CartMetrics metrics) {
+        this(catalog, journal, promotions, metrics, CartSpill.NONE, DataSize.ofBytes(0), Duration.ZERO, Duration.ZERO);
+    }
+
+    /** Store without metrics, for tests and tools. */
+    public CartStore(PriceCatalog catalog, CartJournal journal, PromotionEngine promotions) {
+        this(catalog, journal, promotions, CartMetrics.NONE);
+    }
+
+    /** Store without promotions, for tests and tools. */
+    public CartStore(PriceCatalog catalog, CartJournal journal) {
+        this(catalog, journal, PromotionEngine.NONE);
+    }
+
+    /** Heap-only store, for tests and tools. */
+    public CartStore(PriceCatalog catalog) {
+        this(catalog, CartJournal.NONE);
+    }
+
+    @PostConstruct
+    void recover() {
+        journal.recover(new CartJournal.Sink() {
+            @Override public void set(String userId, String item, int qty) {
+                int sku = catalog.findId(item);
+                if (sku < 0) {
+                    log.warn("Dropping recovered line for unknown item '{}' in cart {}", item, userId);
+                    return;
+                }
+                withCart(userId, cart -> {
+                    cart.restore(sku, qty);
+                    return 0;
+                });
+            }
+
+            @Override public void clear(String userId) {
+                withCart(userId, cart -> cart.clear(false));
+            }
+        });
+        carts.asMap().entrySet().removeIf(e -> {
+            if (!e.getValue().counts().isEmpty()) return false;
+            spill.delete(e.getKey()); // a copy spilled before the clear would come back otherwise
+            return true;
+        });
+        journal.start(this::replayInto);
+    }
+
+    /**
+     * Journal snapshot source: carts in memory, then spilled ones that are not. A cart on its
+     * way out is still in evicting until its file is written, and one taken back from evicting
+     * while this runs is caught in revived, so every cart is emitted from one side or the other.
+     * Either copy is current as of the snapshot's start; journal records from then on replay on top.
+     */
+    private void replayInto(CartJournal.Sink sink) {
+        Queue<Cart> taken = new ConcurrentLinkedQueue<>();
+        revived = taken;
+        try {
+            Set<String> emitted = new HashSet<>();
+            Consumer<Cart> emit = cart -> {
+                if (emitted.add(cart.userId())) cart.replayInto(sink);
+            };
+            carts.asMap().values().forEach(emit);
+            evicting.values().forEach(emit);
+            taken.forEach(emit);
+            long now = System.currentTimeMillis();
+            spill.forEach(e -> {
+                if (emitted.contains(e.userId()) || e.expiresAt() <= now) return;
+                for (int i = 0; i < e.skus().length; i++) sink.set(e.userId(), catalog.nameOf(e.skus()[i]), e.qtys()[i]);
+            });
+        } finally {
+            revived = null;
+        }
+    }
+
+    /** Adds qty units and returns the updated quantities (throws IllegalArgumentException for unknown items). */
+    public SkuCounts add(String userId, String rawItem, int qty) {
+        return add(userId, rawItem, qty, List.of()).value();
+    }
+
+    /**
+     * As above, but only if the cart still matches one of the ifMatch tags (unquoted; empty = unconditional).
+     * Throws CartVersionMismatchException if it has changed. Returns the quantities and version after the change.
+     */
+    public Versioned<SkuCounts> add(String userId, String rawItem, int qty, List<String> ifMatch) {
+        if (qty < 1) throw new IllegalArgumentException("qty must be at least 1");
+        int sku = catalog.idOf(rawItem);
+        LongPredicate expected = expected(ifMatch);
+        journal.awaitDurable(withCart(userId, cart -> cart.add(sku, qty, expected)));
+        changed(userId);
+        return versionedCounts(userId);
+    }
+
+    /** Removes one unit and returns the updated quantities; unknown or absent items leave the cart unchanged. */
+    public SkuCounts remove(String userId, String rawItem) {
+        return remove(userId, rawItem, List.of()).value();
+    }
+
+    /** Conditional remove; see {@link #add(String, String, int, List)}. */
+    public Versioned<SkuCounts> remove(String userId, String rawItem, List<String> ifMatch) {
+        int sku = catalog.findId(rawItem);
+        LongPredicate expected = expected(ifMatch);
+        journal.awaitDurable(withCart(userId, cart -> {
+            if (sku >= 0) return cart.remove(sku, 1, expected);
+            cart.expect(expected);
+            return 0;
+        }));
+        changed(userId);
+        return versionedCounts(userId);
+    }
+
+    /**
+     * Applies ops in order, all under the cart's lock, and returns the bill they leave behind.
+     * Every op is checked (unknown items, quantities), and then where the batch ends up (per-item
+     * cap, total), before the first is applied, so a bad one changes nothing; the change is
+     * journaled as one record. Removing an item the catalog does not sell is a no-op, as for remove().
+     */
+    public Versioned<Bill> update(String userId, List<CartOperation> ops, List<String> ifMatch) {
+        List<Cart.Op> resolved = new ArrayList<>(ops.size());
+        for (CartOperation op : ops) {
+            if (op.op() == CartOperation.Type.CLEAR) {
+                resolved.add(new Cart.Op(op.op(), -1, 0));
+                continue;
+            }
+            if (op.item() == null || op.item().isBlank()) throw new IllegalArgumentException("item is required for " + op.op());
+            int qty = switch (op.op()) {
+                case SET -> {
+                    if (op.qty() == null) throw new IllegalArgumentException("qty is required for set");
+                    yield op.qty();
+                }
+                default -> {
+                    int n = op.qty() == null ? 1 : op.qty();
+                    if (n < 1) throw new IllegalArgumentException("qty must be at least 1");
+                    yield n;
+                }
+            };
+            if (qty < 0) throw new IllegalArgumentException("qty must not be negative");
+            int sku = op.op() == CartOperation.Type.REMOVE ? catalog.findId(op.item()) : catalog.idOf(op.item());
+            if (sku >= 0) resolved.add(new Cart.Op(op.op(), sku, qty));
+        }
+        LongPredicate expected = expected(ifMatch);
+        journal.awaitDurable(withCart(userId, cart -> cart.apply(resolved, expected)));
+        changed(userId);
+        return versionedBill(userId);
+    }
+
+    public void clear(String userId) {
+        journal.awaitDurable(withCart(userId, Cart::clear));
+        changed(userId);
+    }
+
+    /** Conditional clear; returns the cart's version afterwards. */
+    public long clear(String userId, List<String> ifMatch) {
+        LongPredicate expected = expected(ifMatch);
+        journal.awaitDurable(withCart(userId, cart -> cart.clear(expected)));
+        changed(userId);
+        return version(userId);
+    }
+
+    /**
+     * Takes over a cart handed off by another node; source is its tag there. The items replace
+     * this node's copy, unless that has been written since it was created or last handed off:
+     * then those writes (a clear, say) win and the handoff is refused. Taking the same handoff
+     * again changes nothing. Returns false if refused.
+     */
+    public boolean handOff(String userId, String source, Map<String, Integer> items) {
+        if (source == null || source.isBlank()) throw new IllegalArgumentException("version is required");
+        List<Cart.Op> ops = new ArrayList<>(items.size());
+        for (Map.Entry<String, Integer> e : items.entrySet()) {
+            Integer qty = e.getValue();
+            if (qty == null || qty < 1) throw new IllegalArgumentException("qty must be at least 1 for " + e.getKey());
+            ops.add(new Cart.Op(CartOperation.Type.SET, catalog.idOf(e.getKey()), qty));
+        }
+        boolean[] taken = new boolean[1];
+        journal.awaitDurable(withCart(userId, cart -> {
+            long seq = cart.handOff(ops, source);
+            taken[0] = seq >= 0;
+            return Math.max(seq, 0);
+        }));
+        if (taken[0]) changed(userId);
+        return taken[0];
+    }
+
+    /** Drops the cart from this store, in memory or spilled, and returns what it held. */
+    public SkuCounts evict(String userId) {
+        Cart cart = carts.asMap().remove(userId);
+        if (cart == null) cart = evicting.remove(userId);
+        CartSpill.Entry contents = cart != null ? cart.retire(c -> true) : null;
+        if (contents == null) contents = spill.read(userId);
+        spill.delete(userId);
+        if (contents == null) return new SkuCounts();
+        SkuCounts counts = new SkuCounts();
+        for (int i = 0; i < contents.skus().length; i++) counts.add(contents.skus()[i], contents.qtys()[i]);
+        if (!contents.isEmpty()) journal.awaitDurable(journal.clear(userId));
+        changed(userId);
+        return counts;
+    }
+
+    /** Registers a callback for every change to a cart, called with the user id after the change is durable. */
+    public void onChange(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    private void changed(String userId) {
+        for (Consumer<String> listener : listeners) listener.accept(userId);
+    }
+
+    /** Carts held in memory, including ones emptied since they were created. */
+    public int size() {
+        return carts.asMap().size() + evicting.size();
+    }
+
+    /** Units held across every cart in memory; walks them all, so call it rarely (e.g. per metrics scrape). */
+    public long units() {
+        long units = 0;
+        for (Cart cart : carts.asMap().values()) units += cart.units();
+        for (Cart cart : evicting.values()) units += cart.units();
+        return units;
+    }
+
+    public Stats stats() {
+        long bytes = carts.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L);
+        return new Stats(size(), spill.size(), bytes, evictedForSize.sum(), evictedIdle.sum(), expired.sum(), reloads.sum());
+    }
+
+    /** Users with a cart on this node, in memory or spilled; reads every spill file, so call it rarely. */
+    public List<String> userIds() {
+        Set<String> ids = new LinkedHashSet<>(carts.asMap().keySet());
+        ids.addAll(evicting.keySet());
+        long now = System.currentTimeMillis();
+        spill.forEach(e -> {
+            if (e.expiresAt() > now) ids.add(e.userId());
+        });
+        return List.copyOf(ids);
+    }
+
+    /** Runs pending evictions and expiries now and waits until their carts are spilled; for tests. */
+    void cleanUp() throws InterruptedException, ExecutionException {
+        carts.cleanUp();
+        spiller.submit(() -> {}).get(); // one thread, so everything queued before has run
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException {
+        spiller.shutdown();
+        spiller.awaitTermination(10, TimeUnit.SECONDS); // anything left is still in the journal
+    }
+
+    /** The stored cart's running bill: a read, not a re-price. */
+    public Bill bill(String userId) {
+        return cart(userId).bill();
+    }
+
+    /** The running bill with the cart version it reflects. */
+    public Versioned<Bill> versionedBill(String userId) {
+        return cart(userId).versionedBill();
+    }
+
+    /** Snapshot of the stored quantities. */
+    public SkuCounts counts(String userId) {
+        return cart(userId).counts();
+    }
+
+    /** Snapshot of the stored quantities with their version. */
+    public Versioned<SkuCounts> versionedCounts(String userId) {
+        return cart(userId).versionedCounts();
+    }
+
+    /** The cart's current version, without copying or pricing anything. */
+    public long version(String userId) {
+        return cart(userId).version();
+    }
+
+    /** Entity tag (unquoted) for a version of one of this store's carts. */
+    public String etag(long version) {
+        return epoch + "." + version;
+    }
+
+    /** Versions If-Match tags accept: any for none or *, otherwise those the tags (issued by this store) name. */
+    private LongPredicate expected(List<String> ifMatch) {
+        if (ifMatch == null || ifMatch.isEmpty() || ifMatch.contains("*")) return Cart.ANY_VERSION;
+        long[] versions = ifMatch.stream().mapToLong(this::versionOf).toArray();
+        return current -> {
+            for (long v : versions) if (v == current) return true;
+            return false;
+        };
+    }
+
+    /** The version in a tag from etag() (or one extended from it), or -1 if this store did not issue it. */
+    private long versionOf(String tag) {
+        String prefix = epoch + ".";
+        if (!tag.startsWith(prefix)) return -1;
+        int end = prefix.length();
+        while (end < tag.length() && Character.isDigit(tag.charAt(end))) end++;
+        if (end == prefix.length() || end - prefix.length() > 18) return -1;
+        return Long.parseLong(tag, prefix.length(), end, 10);
+    }
+
+    private Cart cart(String userId) {
+        if (userId.length() > MAX_USER_ID_LENGTH) throw new IllegalArgumentException("User id too long");
+        CompletableFuture<Cart> found = loading.getIfPresent(userId);
+        if (found == null) {
+            CompletableFuture<Cart> mine = new CompletableFuture<>();
+            found = loading.get(userId, (id, executor) -> mine);
+            if (found == mine) {
+                // ours to fill, now that the cache's lock is released
+                try {
+                    mine.complete(load(userId));
+                } catch (RuntimeException | Error e) {
+                    mine.completeExceptionally(e); // the cache drops the failed entry
+                    throw e;
+                }
+            }
+        }
+        try {
+            return found.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Applies change to userId's cart and returns its journal sequence. If the cart is evicted
+     * between the lookup and the change, the change is retried on the copy reloaded from the spill.
+     */
+    private long withCart(String userId, ToLongFunction<Cart> change) {
+        while (true) {
+            Cart cart = cart(userId);
+            try {
+                long seq = change.applyAsLong(cart);
+                if (bounded) carts.asMap().replace(userId, cart, cart); // re-weigh; no-op if evicted meanwhile
+                return seq;
+            } catch (Cart.RetiredException e) {
+                // evicted under us; the next lookup reloads it
+            }
+        }
+    }
+
+    /**
+     * Cache loader: the cart if it is still waiting to be spilled, else its spilled copy if that
+     * is live, else a new empty cart. Runs outside the cache's lock, on the lookup that missed, so
+     * it may read the spill and journal a drop; concurrent lookups of userId wait for its result.
+     */
+    private Cart load(String userId) {
+        long now = System.currentTimeMillis();
+        Cart parked = evicting.remove(userId);
+        if (parked != null) {
+            boolean dropped = parked.expiresAt() <= now && parked.tryRetire(contents -> {
+                parked.clear(true);
+                return true;
+            }) != null;
+            if (!dropped) {
+                Queue<Cart> taken = revived;
+                if (taken != null) taken.add(parked);
+                return parked; // its spill will find it gone from evicting and leave it be
+            }
+            spill.delete(userId);
+            return new Cart(catalog, userId, journal, promotions, metrics, versions, expiresAt(now));
+        }
+        CartSpill.Entry spilled = spill.read(userId);
+        if (spilled != null && spilled.expiresAt() <= now) {
+            spill.delete(userId);
+            if (!spilled.isEmpty()) journal.awaitDurable(journal.clear(userId));
+            expired.increment();
+            spilled = null;
+        }
+        if (spilled == null) return new Cart(catalog, userId, journal, promotions, metrics, versions, expiresAt(now));
+        Cart cart = new Cart(catalog, userId, journal, promotions, metrics, versions, spilled.expiresAt());
+        cart.load(spilled);
+        reloads.increment();
+        return cart;
+    }
+
+    /** When a cart created now expires; absolute-ttl 0 means never. */
+    private long expiresAt(long now) {
+        return absoluteMillis > 0 ? now + absoluteMillis : Long.MAX_VALUE;
+    }
+
+    /** Eviction listener, called inside the cache's lock: parks the cart and queues its spill. */
+    private void evicted(String userId, Cart cart, RemovalCause cause) {
+        if (cart == null) return;
+        if (cause == RemovalCause.SIZE) evictedForSize.increment();
+        else if (cart.expiresAt() > System.currentTimeMillis()) evictedIdle.increment();
+        else expired.increment();
+        evicting.put(userId, cart);
+        try {
+            spiller.execute(() -> spillOut(userId, cart));
+        } catch (RejectedExecutionException e) {
+            // shutting down: the cart stays parked, and the journal has it
+        }
+    }
+
+    /**
+     * Writes an evicted cart out (or drops it, past its absolute TTL) and retires it, under its lock.
+     * The file is written, or the drop journaled, before the cart leaves evicting, so a lookup that
+     * misses it there finds the result; a lookup that took it back first keeps it as it is.
+     */
+    private void spillOut(String userId, Cart cart) {
+        cart.retire(contents -> {
+            if (contents.expiresAt() <= System.currentTimeMillis()) {
+                cart.clear(true);
+                spill.delete(userId);
+            } else if (contents.isEmpty()) {
+                spill.delete(userId); // nothing worth a file; any older copy is stale
+            } else if (!spill.write(contents)) {
+                cart.clear(true);     // lost from memory, so lose it from the journal too rather than revive it later
+            }
+            return evicting.remove(userId, cart);
+        });
+    }
+
+    /** Time until the cart's idle or absolute TTL runs out, whichever is first. */
+    private long ttlNanos(Cart cart) {
+        if (cart.expiresAt() == Long.MAX_VALUE) return idleNanos;
+        long left = TimeUnit.MILLISECONDS.toNanos(Math.max(0, cart.expiresAt() - System.currentTimeMillis()));
+        return Math.min(idleNanos, left);
+    }
+
+    /** List wire format: one name per unit. */
+    public CartView toView(SkuCounts counts) {
+        List<String> items = new ExpandedItemList(counts, catalog);
+        return new CartView(items, items.size());
+    }
+
+    /** Quantity wire format: name -> qty, in first-added order. */
+    public CartQuantitiesView toQuantities(SkuCounts counts) {
+        Map<String, Integer> items = new LinkedHashMap<>();
+        for (int i = 0; i < counts.size(); i++) {
+            items.put(catalog.nameOf(counts.skuAt(i)), counts.qtyAt(i));
+        }
+        return new CartQuantitiesView(items, Amounts.toInt(counts.totalUnits()));
+    }
+}
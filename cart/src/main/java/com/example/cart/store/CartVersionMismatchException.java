@@ -0,0 +1,9 @@
+package com.example.cart.store;
+
+/** A conditional change (If-Match) to a cart that has moved on since the client read it; a 412. */
+public class CartVersionMismatchException extends IllegalStateException {
+
+    public CartVersionMismatchException(String userId, long currentVersion) {
+        super("Cart " + userId + " has changed since it was read (now version " + currentVersion + ")");
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.cart.store;
+
+import com.example.cart.pricing.Amounts;
+import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.SkuCounts;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Read-only "one name per unit" view over a quantity vector, for the
+ * list-shaped wire format. Costs O(lines), not O(units).
+ */
+final class ExpandedItemList extends AbstractList<String> implements RandomAccess {
+
+    private final String[] names;
+    private final long[] ends; // ends[i] = units in lines 0..i
+    private final int size;
+
+    ExpandedItemList(SkuCounts counts, PriceCatalog catalog) {
+        int lines = counts.size();
+        this.names = new String[lines];
+        this.ends = new long[lines];
+        long acc = 0;
+        for (int i = 0; i < lines; i++) {
+            names[i] = catalog.nameOf(counts.skuAt(i));
+            acc += counts.qtyAt(i);
+            ends[i] = acc;
+        }
+        this.size = Amounts.toInt(acc);
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int line = Arrays.binarySearch(ends, index + 1L);
+        return names[line >= 0 ? line : -line - 1];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
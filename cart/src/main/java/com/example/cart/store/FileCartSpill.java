@@ -0,0 +1,241 @@
+package com.example.cart.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Spilled carts as one small file each, {@code <dir>/<xx>/<sha-256 of user id>},
+ * fanned out over 256 sub-directories so no directory grows huge.
+ *
+ * A file is [int magic][long version][long expiresAt][utf userId][int n]
+ * then n x ([int sku][int qty]), written to a temporary name and moved into
+ * place, so a reader sees the old copy or the new one, never half of one.
+ *
+ * Files of carts past their absolute TTL are deleted by a sweep every
+ * sweep interval; the store also drops any it reads back.
+ */
+public final class FileCartSpill implements CartSpill {
+
+    private static final Logger log = LoggerFactory.getLogger(FileCartSpill.class);
+    private static final int MAGIC = 0x43535031; // "CSP1"
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path dir;
+    private final boolean temporary;
+    private final AtomicLong files = new AtomicLong();
+    private final ScheduledExecutorService sweeper;
+
+    /** Spills into dir, deleting spill files a previous run left there. */
+    public FileCartSpill(Path dir, Duration sweepInterval) {
+        this(dir, false, sweepInterval);
+    }
+
+    /** Spills into a fresh temporary directory, removed on close. */
+    public static FileCartSpill temporary(Duration sweepInterval) {
+        try {
+            return new FileCartSpill(Files.createTempDirectory("cart-spill"), true, sweepInterval);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create cart spill directory", e);
+        }
+    }
+
+    private FileCartSpill(Path dir, boolean temporary, Duration sweepInterval) {
+        this.dir = dir;
+        this.temporary = temporary;
+        try {
+            Files.createDirectories(dir);
+            deleteContents();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare cart spill directory " + dir, e);
+        }
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("cart-spill-sweeper").factory());
+        long every = Math.max(1, sweepInterval.toMillis());
+        sweeper.scheduleWithFixedDelay(() -> sweep(System.currentTimeMillis()), every, every, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean write(Entry entry) {
+        Path file = fileOf(entry.userId());
+        Path tmp = file.resolveSibling(file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(entry.version());
+                out.writeLong(entry.expiresAt());
+                out.writeUTF(entry.userId());
+                out.writeInt(entry.skus().length);
+                for (int i = 0; i < entry.skus().length; i++) {
+                    out.writeInt(entry.skus()[i]);
+                    out.writeInt(entry.qtys()[i]);
+                }
+            }
+            boolean replacing = Files.exists(file);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (!replacing) files.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            log.error("Cannot spill cart {} to {}", entry.userId(), file, e);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // already failing; a leftover tmp file is removed at the next startup
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public Entry read(String userId) {
+        Path file = fileOf(userId);
+        try {
+            Entry entry = read(file);
+            if (entry != null && entry.userId().equals(userId)) return entry;
+            if (entry != null) log.warn("Spill file {} holds cart {}, not {}", file, entry.userId(), userId);
+            return null;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Cannot read spilled cart {} from {}", userId, file, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(String userId) {
+        try {
+            if (Files.deleteIfExists(fileOf(userId))) files.decrementAndGet();
+        } catch (IOException e) {
+            log.warn("Cannot delete spilled cart {}", userId, e);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<Entry> action) {
+        for (Path file : list()) {
+            try {
+                Entry entry = read(file);
+                if (entry != null) action.accept(entry);
+            } catch (NoSuchFileException e) {
+                // reloaded and dropped, or swept, since the listing
+            } catch (IOException e) {
+                log.warn("Cannot read spill file {}", file, e);
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        return files.get();
+    }
+
+    /** Deletes the files of carts whose absolute TTL ran out before now. */
+    void sweep(long now) {
+        int swept = 0;
+        for (Path file : list()) {
+            try {
+                Entry entry = read(file);
+                if (entry != null && entry.expiresAt() <= now && Files.deleteIfExists(file)) {
+                    files.decrementAndGet();
+                    swept++;
+                }
+            } catch (IOException e) {
+                // gone since the listing, or unreadable: leave it to the next sweep
+            }
+        }
+        if (swept > 0) log.info("Swept {} expired spilled carts", swept);
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        if (!temporary) return;
+        try {
+            deleteContents();
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            log.warn("Cannot remove cart spill directory {}", dir, e);
+        }
+    }
+
+    private static Entry read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("Ignoring spill file {}: bad magic", file);
+                return null;
+            }
+            long version = in.readLong();
+            long expiresAt = in.readLong();
+            String userId = in.readUTF();
+            int n = in.readInt();
+            int[] skus = new int[n];
+            int[] qtys = new int[n];
+            for (int i = 0; i < n; i++) {
+                skus[i] = in.readInt();
+                qtys[i] = in.readInt();
+            }
+            return new Entry(userId, version, expiresAt, skus, qtys);
+        }
+    }
+
+    /** Spill files (not temporaries) under dir. */
+    private List<Path> list() {
+        try (Stream<Path> paths = Files.walk(dir, 2)) {
+            return paths.filter(p -> p.getNameCount() - dir.getNameCount() == 2 && !p.toString().endsWith(".tmp"))
+                    .toList();
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Cannot list cart spill directory {}", dir, e);
+            return List.of();
+        }
+    }
+
+    private Path fileOf(String userId) {
+        String name = HEX.formatHex(sha256(userId.getBytes(StandardCharsets.UTF_8)));
+        return dir.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK ships SHA-256
+        }
+    }
+
+    /** Removes every bucket directory (and so every spill file); anything else in dir is left alone. */
+    private void deleteContents() throws IOException {
+        try (Stream<Path> buckets = Files.list(dir)) {
+            for (Path bucket : buckets.filter(p -> p.getFileName().toString().matches("[0-9a-f]{2}")).toList()) {
+                try (Stream<Path> paths = Files.walk(bucket)) {
+                    for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+                }
+            }
+        }
+        files.set(0);
+    }
+}
@@ -0,0 +1,526 @@
+package com.example.cart.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only cart journal written through memory-mapped segment files.
+ *
+ * Layout in the journal directory:
+ *   journal-{gen}.log   fixed-size mapped segments of records
+ *   snapshot-{gen}.snap compacted state; covers everything before journal-{gen}
+ *
+ * A record is [int length][int crc32c][byte op][user][item][int qty], or for
+ * a multi-line update [int length][int crc32c][byte op][user][byte clear]
+ * [short n] then n times [item][int qty]; strings as [short length][utf-8].
+ * The checksum covers the whole record, so an update is replayed entirely
+ * or not at all. A zero length marks the end of a segment.
+ *
+ * Appends are a memory copy into the mapped segment. A flusher thread forces
+ * dirty segments every flush interval, so one fsync covers every mutation
+ * of that window (group commit). With durability=async callers never wait:
+ * records survive a JVM crash as soon as they are copied, and an OS crash
+ * loses at most one flush interval. With durability=sync, callers wait for
+ * the group fsync that covers their record.
+ */
+public class MappedCartJournal implements CartJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedCartJournal.class);
+
+    private static final byte OP_SET = 1;
+    private static final byte OP_CLEAR = 2;
+    private static final byte OP_UPDATE = 3;
+    private static final int HEADER = 8;
+    private static final int SNAPSHOT_MAGIC = 0x43534E50; // "CSNP"
+    private static final Pattern FILE = Pattern.compile("(journal|snapshot)-(\\d+)\\.(log|snap)");
+
+    private final Path dir;
+    private final int segmentSize;
+    private final boolean syncDurability;
+    private final Duration flushInterval;
+    private final Duration snapshotInterval;
+
+    // guards the active segment and the sequence counters
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private MappedByteBuffer segment;
+    private long generation;
+    private int writePos;
+    private long appendedSeq;
+    private long durableSeq;
+
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final Object snapshotSignal = new Object();
+    private volatile boolean snapshotRequested;
+    private volatile boolean running;
+    private State state;
+    private Thread flusher;
+    private Thread snapshotter;
+
+    public MappedCartJournal(Path dir, int segmentSize, boolean syncDurability,
+                             Duration flushInterval, Duration snapshotInterval) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.syncDurability = syncDurability;
+        this.flushInterval = flushInterval;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    // ---------------------------------------------------------------- append
+
+    @Override
+    public long set(String userId, String item, int qty) {
+        return append(OP_SET, userId, item, qty);
+    }
+
+    @Override
+    public long clear(String userId) {
+        return append(OP_CLEAR, userId, null, 0);
+    }
+
+    @Override
+    public long update(String userId, boolean clear, List<String> items, int[] qtys) {
+        if (items.size() > 0xFFFF) throw new IllegalArgumentException("Journal update too large: " + items.size() + " lines");
+        byte[] user = utf8(userId);
+        byte[][] names = new byte[items.size()][];
+        int payload = 1 + 2 + user.length + 1 + 2;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = utf8(items.get(i));
+            payload += 2 + names[i].length + 4;
+        }
+        return append(payload, (buf, at) -> {
+            buf.put(at, OP_UPDATE);
+            int q = putString(buf, at + 1, user);
+            buf.put(q, (byte) (clear ? 1 : 0));
+            buf.putShort(q + 1, (short) names.length);
+            q += 3;
+            for (int i = 0; i < names.length; i++) {
+                q = putString(buf, q, names[i]);
+                buf.putInt(q, qtys[i]);
+                q += 4;
+            }
+        });
+    }
+
+    private long append(byte op, String userId, String item, int qty) {
+        byte[] user = utf8(userId);
+        byte[] name = item == null ? null : utf8(item);
+        int payload = 1 + 2 + user.length + (op == OP_SET ? 2 + name.length + 4 : 0);
+        return append(payload, (buf, at) -> {
+            buf.put(at, op);
+            int q = putString(buf, at + 1, user);
+            if (op == OP_SET) {
+                q = putString(buf, q, name);
+                buf.putInt(q, qty);
+            }
+        });
+    }
+
+    /** Writes a record's payload at the given offset of the segment. */
+    private interface Payload {
+        void write(ByteBuffer segment, int at);
+    }
+
+    private long append(int payload, Payload writer) {
+        int size = HEADER + payload;
+        if (size + 4 > segmentSize) throw new IllegalArgumentException("Journal record too large: " + size + " bytes");
+
+        lock.lock();
+        try {
+            if (segment == null) throw new IllegalStateException("Journal is not open");
+            if (writePos + size + 4 > segmentSize) {
+                roll();
+                requestSnapshot(); // a full segment: compact soon rather than at the interval
+            }
+
+            int p = writePos;
+            int body = p + HEADER;
+            writer.write(segment, body);
+            CRC32C crc = new CRC32C();
+            crc.update(segment.slice(body, payload));
+            segment.putInt(p + 4, (int) crc.getValue());
+            segment.putInt(p, payload); // length last: a torn record reads as end-of-segment
+            writePos = p + size;
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitDurable(long seq) {
+        if (!syncDurability || seq <= 0) return;
+        lock.lock();
+        try {
+            while (durableSeq < seq && running) {
+                flushed.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- recovery
+
+    @Override
+    public void recover(Sink sink) {
+        try {
+            Files.createDirectories(dir);
+            long snapshotGen = -1;
+            for (long gen : generations("snapshot").reversed()) {
+                if (readSnapshot(file("snapshot", gen), sink)) {
+                    snapshotGen = gen;
+                    break;
+                }
+                log.warn("Ignoring incomplete cart snapshot {}", file("snapshot", gen));
+            }
+
+            long records = 0;
+            long maxGen = Math.max(snapshotGen, 0);
+            for (long gen : generations("journal")) {
+                maxGen = Math.max(maxGen, gen);
+                if (gen >= snapshotGen) records += replaySegment(file("journal", gen), sink);
+            }
+            log.info("Recovered carts from snapshot {} and {} journal records", snapshotGen, records);
+
+            // new writes always start a fresh segment after everything on disk
+            lock.lock();
+            try {
+                generation = maxGen;
+                openSegment(maxGen + 1);
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cart journal recovery failed in " + dir, e);
+        }
+    }
+
+    private long replaySegment(Path path, Sink sink) throws IOException {
+        long count = 0;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            int p = 0;
+            while (p + HEADER <= buf.limit()) {
+                int payload = buf.getInt(p);
+                if (payload <= 0 || p + HEADER + payload > buf.limit()) break;
+                CRC32C crc = new CRC32C();
+                crc.update(buf.slice(p + HEADER, payload));
+                if ((int) crc.getValue() != buf.getInt(p + 4)) {
+                    log.warn("Cart journal {} truncated at offset {} (checksum mismatch)", path, p);
+                    break;
+                }
+                apply(buf, p + HEADER, sink);
+                p += HEADER + payload;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void apply(ByteBuffer buf, int p, Sink sink) {
+        byte op = buf.get(p);
+        int userLen = Short.toUnsignedInt(buf.getShort(p + 1));
+        String user = getString(buf, p + 3, userLen);
+        if (op == OP_CLEAR) {
+            sink.clear(user);
+        } else if (op == OP_SET) {
+            int q = p + 3 + userLen;
+            int itemLen = Short.toUnsignedInt(buf.getShort(q));
+            String item = getString(buf, q + 2, itemLen);
+            sink.set(user, item, buf.getInt(q + 2 + itemLen));
+        } else if (op == OP_UPDATE) {
+            int q = p + 3 + userLen;
+            if (buf.get(q) != 0) sink.clear(user);
+            int lines = Short.toUnsignedInt(buf.getShort(q + 1));
+            q += 3;
+            for (int i = 0; i < lines; i++) {
+                int itemLen = Short.toUnsignedInt(buf.getShort(q));
+                String item = getString(buf, q + 2, itemLen);
+                q += 2 + itemLen;
+                sink.set(user, item, buf.getInt(q));
+                q += 4;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- snapshots
+
+    @Override
+    public void start(State state) {
+        this.state = state;
+        this.running = true;
+        this.flusher = Thread.ofPlatform().daemon().name("cart-journal-flusher").start(this::flushLoop);
+        this.snapshotter = Thread.ofPlatform().daemon().name("cart-journal-snapshotter").start(this::snapshotLoop);
+        requestSnapshot(); // compact whatever recovery replayed
+    }
+
+    /** Writes a compacted snapshot now and drops the segments it covers. */
+    public void snapshot() {
+        snapshotLock.lock();
+        try {
+            long gen;
+            lock.lock();
+            try {
+                if (writePos > 0) roll();
+                gen = generation;
+            } finally {
+                lock.unlock();
+            }
+
+            Path tmp = dir.resolve("snapshot-" + gen + ".tmp");
+            long lines = writeSnapshot(tmp);
+            Files.move(tmp, file("snapshot", gen), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            for (long old : generations("journal")) if (old < gen) Files.deleteIfExists(file("journal", old));
+            for (long old : generations("snapshot")) if (old < gen) Files.deleteIfExists(file("snapshot", old));
+            log.debug("Cart snapshot {} written ({} lines)", gen, lines);
+        } catch (IOException e) {
+            log.error("Cart snapshot failed; journal segments are kept", e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private long writeSnapshot(Path tmp) throws IOException {
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+            CRC32C crc = new CRC32C();
+            long[] lines = {0};
+            buf.putInt(SNAPSHOT_MAGIC);
+            state.replayInto(new Sink() {
+                @Override public void set(String userId, String item, int qty) {
+                    byte[] user = utf8(userId);
+                    byte[] name = utf8(item);
+                    int size = 2 + user.length + 2 + name.length + 4;
+                    try {
+                        if (buf.remaining() < size) drain(ch, buf, crc);
+                        putString(buf, user);
+                        putString(buf, name);
+                        buf.putInt(qty);
+                        lines[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                @Override public void clear(String userId) {}
+            });
+            if (buf.remaining() < 12) drain(ch, buf, crc);
+            buf.putShort((short) 0); // end marker (empty user)
+            drain(ch, buf, crc);
+            buf.putLong(lines[0]).putInt((int) crc.getValue()).flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(true);
+            return lines[0];
+        }
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer buf, CRC32C crc) throws IOException {
+        buf.flip();
+        crc.update(buf.duplicate());
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    private boolean readSnapshot(Path path, Sink sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < 4 + 2 + 12) return false;
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int bodyEnd = (int) size - 12;
+            CRC32C crc = new CRC32C();
+            crc.update(buf.slice(0, bodyEnd));
+            if (buf.getInt(0) != SNAPSHOT_MAGIC || (int) crc.getValue() != buf.getInt(bodyEnd + 8)) return false;
+
+            int p = 4;
+            while (true) {
+                int userLen = Short.toUnsignedInt(buf.getShort(p));
+                if (userLen == 0) break;
+                String user = getString(buf, p + 2, userLen);
+                p += 2 + userLen;
+                int itemLen = Short.toUnsignedInt(buf.getShort(p));
+                String item = getString(buf, p + 2, itemLen);
+                p += 2 + itemLen;
+                sink.set(user, item, buf.getInt(p));
+                p += 4;
+            }
+            return true;
+        }
+    }
+
+    private void requestSnapshot() {
+        synchronized (snapshotSignal) {
+            snapshotRequested = true;
+            snapshotSignal.notifyAll();
+        }
+    }
+
+    private void snapshotLoop() {
+        long intervalMs = snapshotInterval.toMillis();
+        while (running) {
+            synchronized (snapshotSignal) {
+                if (!snapshotRequested) {
+                    try {
+                        snapshotSignal.wait(intervalMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                snapshotRequested = false;
+            }
+            if (running) snapshot();
+        }
+    }
+
+    // ---------------------------------------------------------------- flushing
+
+    private void flushLoop() {
+        long intervalNanos = flushInterval.toNanos();
+        while (running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    /** Forces everything appended so far (one fsync for the whole group). */
+    public void flush() {
+        MappedByteBuffer target;
+        int upTo;
+        long seq;
+        lock.lock();
+        try {
+            if (durableSeq == appendedSeq || segment == null) return;
+            target = segment;
+            upTo = writePos;
+            seq = appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+
+        // outside the lock: appenders keep copying while the kernel syncs
+        target.force(0, upTo);
+
+        lock.lock();
+        try {
+            if (seq > durableSeq) durableSeq = seq;
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- segments
+
+    /** Seals the active segment and maps the next one. Caller holds lock. */
+    private void roll() {
+        MappedByteBuffer old = segment;
+        old.force(0, writePos);
+        durableSeq = appendedSeq;
+        flushed.signalAll();
+        openSegment(generation + 1);
+    }
+
+    private void openSegment(long gen) {
+        try (FileChannel ch = FileChannel.open(file("journal", gen), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            generation = gen;
+            writePos = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open cart journal segment " + gen, e);
+        }
+    }
+
+    private Path file(String kind, long gen) {
+        return dir.resolve(kind + "-" + gen + (kind.equals("journal") ? ".log" : ".snap"));
+    }
+
+    private List<Long> generations(String kind) throws IOException {
+        List<Long> gens = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> {
+                Matcher m = FILE.matcher(f.getFileName().toString());
+                if (m.matches() && m.group(1).equals(kind)) gens.add(Long.parseLong(m.group(2)));
+            });
+        }
+        gens.sort(null);
+        return gens;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        synchronized (snapshotSignal) {
+            snapshotSignal.notifyAll(); // let an in-flight snapshot finish rather than interrupt its fsync
+        }
+        try {
+            if (flusher != null) flusher.interrupt();
+            if (snapshotter != null) snapshotter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (segment != null) {
+                segment.force(0, writePos);
+                durableSeq = appendedSeq;
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- encoding
+
+    private static byte[] utf8(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xFFFF) throw new IllegalArgumentException("Journal field too long: " + b.length + " bytes");
+        return b;
+    }
+
+    private static int putString(ByteBuffer buf, int at, byte[] b) {
+        buf.putShort(at, (short) b.length);
+        buf.put(at + 2, b);
+        return at + 2 + b.length;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] b) {
+        buf.putShort((short) b.length);
+        buf.put(b);
+    }
+
+    private static String getString(ByteBuffer buf, int at, int len) {
+        byte[] b = new byte[len];
+        buf.get(at, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
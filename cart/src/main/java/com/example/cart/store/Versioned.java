@@ -0,0 +1,4 @@
+package com.example.cart.store;
+
+/** A value read from one cart together with the cart version it was read at. */
+public record Versioned<T>(T value, long version) {}
@@ -0,0 +1,35 @@
+package com.example.cart.util;
+
+import com.example.cart.pricing.Amounts;
+
+import java.util.Currency;
+import java.util.Locale;
+
+/** An amount in minor units (pence, cents, yen) of an ISO 4217 currency. */
+public record Money(long minor, String currency) {
+
+    public Money {
+        Currency.getInstance(currency); // IllegalArgumentException for unknown codes
+    }
+
+    public static Money of(long minor, String currency) {
+        return new Money(minor, currency);
+    }
+
+    public Money plus(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Cannot add " + other.currency + " to " + currency);
+        }
+        return new Money(Amounts.add(minor, other.minor), currency);
+    }
+
+    /** Digits after the decimal point: 2 for GBP, 0 for JPY, 3 for BHD. */
+    public int fractionDigits() {
+        return MoneyFormat.fractionDigits(currency);
+    }
+
+    /** As NumberFormat.getCurrencyInstance(locale) would show it, e.g. "£2.35" or "2,35 €". */
+    public String format(Locale locale) {
+        return MoneyFormat.format(minor, currency, locale);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.cart.util;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Currency formatting without NumberFormat or double on the hot path.
+ * The locale's pattern (symbol, separators, grouping, sign) is read from
+ * NumberFormat once per currency and locale and cached; amounts are then
+ * written digit by digit from minor units into a small buffer, so the only
+ * allocations per call are that buffer and the returned String. The buffer is
+ * not kept per thread: under virtual threads each request is a new thread,
+ * so a ThreadLocal would cost more than it saves. The cache holds at most
+ * MAX_LOCALES locales (requests only bring the ones LocaleConfig allows);
+ * others are formatted without caching.
+ *
+ * Thread-safe: instances are immutable and the cache is concurrent.
+ */
+public final class MoneyFormat {
+
+    static final int MAX_LOCALES = 64;
+    private static final ConcurrentHashMap<Locale, ConcurrentHashMap<String, MoneyFormat>> CACHE = new ConcurrentHashMap<>();
+    private static final long[] POW10 = {1, 10, 100, 1_000, 10_000};
+
+    private final String positivePrefix;
+    private final String positiveSuffix;
+    private final String negativePrefix;
+    private final String negativeSuffix;
+    private final int fractionDigits;
+    private final char decimalSeparator;
+    private final char groupingSeparator;
+    private final int groupingSize;       // 0 = no grouping
+    private final long group;             // 10^groupingSize
+    private final char zeroDigit;
+
+    private MoneyFormat(String currency, Locale locale) {
+        DecimalFormat df = (DecimalFormat) NumberFormat.getCurrencyInstance(locale);
+        df.setCurrency(Currency.getInstance(currency));
+        DecimalFormatSymbols symbols = df.getDecimalFormatSymbols();
+        this.positivePrefix = df.getPositivePrefix();
+        this.positiveSuffix = df.getPositiveSuffix();
+        this.negativePrefix = df.getNegativePrefix();
+        this.negativeSuffix = df.getNegativeSuffix();
+        this.fractionDigits = fractionDigits(currency); // the currency's, not the locale's: JPY has none anywhere
+        this.decimalSeparator = symbols.getMonetaryDecimalSeparator();
+        this.groupingSeparator = symbols.getMonetaryGroupingSeparator();
+        this.groupingSize = df.isGroupingUsed() ? df.getGroupingSize() : 0;
+        this.group = groupingSize > 0 ? pow10(groupingSize) : 0;
+        this.zeroDigit = symbols.getZeroDigit();
+        if (fractionDigits >= POW10.length) throw new IllegalArgumentException("Unsupported currency " + currency);
+    }
+
+    /** Cached formatter for this currency in this locale. */
+    public static MoneyFormat of(String currency, Locale locale) {
+        ConcurrentHashMap<String, MoneyFormat> byCurrency = CACHE.get(locale);
+        if (byCurrency == null) {
+            if (CACHE.size() >= MAX_LOCALES) return new MoneyFormat(currency, locale);
+            byCurrency = CACHE.computeIfAbsent(locale, l -> new ConcurrentHashMap<>());
+        }
+        return byCurrency.computeIfAbsent(currency, c -> new MoneyFormat(c, locale));
+    }
+
+    /** Locales currently cached. */
+    static int cachedLocales() {
+        return CACHE.size();
+    }
+
+    public static String format(long minor, String currency, Locale locale) {
+        return of(currency, locale).formatTo(minor, new StringBuilder(32)).toString();
+    }
+
+    /** Digits after the decimal point for an ISO 4217 code; currencies without minor units count as 0. */
+    public static int fractionDigits(String currency) {
+        return Math.max(0, Currency.getInstance(currency).getDefaultFractionDigits());
+    }
+
+    /** Appends minor units, e.g. 123456 GBP in en-GB -> "£1,234.56". */
+    public StringBuilder formatTo(long minor, StringBuilder out) {
+        boolean negative = minor < 0;
+        long abs = negative ? Math.negateExact(minor) : minor;
+        long scale = POW10[fractionDigits];
+        long major = abs / scale;
+        long fraction = abs % scale;
+
+        out.append(negative ? negativePrefix : positivePrefix);
+        appendMajor(major, out);
+        if (fractionDigits > 0) {
+            out.append(decimalSeparator);
+            for (long p = scale / 10; p > 0; p /= 10) out.append((char) (zeroDigit + fraction / p % 10));
+        }
+        return out.append(negative ? negativeSuffix : positiveSuffix);
+    }
+
+    // most significant group first, so nothing is inserted or reversed
+    private void appendMajor(long major, StringBuilder out) {
+        if (groupingSize == 0) {
+            appendDigits(major, 1, out);
+            return;
+        }
+        long top = major;
+        long divisor = 1;
+        while (top >= group) {
+            top /= group;
+            divisor *= group;
+        }
+        appendDigits(top, 1, out);
+        for (divisor /= group; divisor > 0; divisor /= group) {
+            out.append(groupingSeparator);
+            appendDigits(major / divisor % group, groupingSize, out);
+        }
+    }
+
+    private void appendDigits(long value, int minDigits, StringBuilder out) {
+        long p = 1;
+        for (int d = 1; d < minDigits || value / p >= 10; d++) p *= 10;
+        for (; p > 0; p /= 10) out.append((char) (zeroDigit + value / p % 10));
+    }
+
+    private static long pow10(int n) {
+        long p = 1;
+        for (int i = 0; i < n; i++) p *= 10;
+        return p;
+    }
+}
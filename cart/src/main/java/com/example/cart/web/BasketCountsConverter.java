@@ -0,0 +1,127 @@
+package com.example.cart.web;
+
+import com.example.cart.model.AddItemRequest;
+import com.example.cart.model.BasketCounts;
+import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.pricing.UnknownItemException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Reads {"items":[...]} token by token with Jackson's streaming parser and
+ * counts each item straight into a SKU quantity vector. The item list is
+ * never materialised, so memory stays flat however long the basket is.
+ * Bodies sent as {@link CartMediaTypes#QUANTITIES_JSON} ({"Melon":200})
+ * are read the same way, without expanding quantities.
+ */
+@Component
+public class BasketCountsConverter extends AbstractHttpMessageConverter<BasketCounts> {
+
+    private final JsonFactory factory;
+    private final PriceCatalog catalog;
+
+    public BasketCountsConverter(ObjectMapper mapper, PriceCatalog catalog) {
+        super(MediaType.APPLICATION_JSON, CartMediaTypes.QUANTITIES_JSON);
+        this.factory = mapper.getFactory();
+        this.catalog = catalog;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return BasketCounts.class == clazz;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected BasketCounts readInternal(Class<? extends BasketCounts> clazz, HttpInputMessage input)
+            throws IOException, HttpMessageNotReadableException {
+        try (JsonParser p = factory.createParser(input.getBody())) {
+            JsonToken t = p.nextToken();
+            if (t == null || t == JsonToken.VALUE_NULL) return new BasketCounts(null);
+            if (t != JsonToken.START_OBJECT) throw notReadable("Expected a JSON object", input);
+
+            MediaType contentType = input.getHeaders().getContentType();
+            if (contentType != null && CartMediaTypes.QUANTITIES_JSON.isCompatibleWith(contentType)) {
+                return new BasketCounts(readQuantities(p, input));
+            }
+
+            SkuCounts counts = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                    counts = readItems(p, input);
+                } else if ("items".equals(field) && value == JsonToken.VALUE_NULL) {
+                    counts = null;
+                } else if ("items".equals(field)) {
+                    throw notReadable("items: expected an array of item names", input);
+                } else {
+                    p.skipChildren();
+                }
+            }
+            return new BasketCounts(counts);
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + ex.getOriginalMessage(), ex, input);
+        }
+    }
+
+    private SkuCounts readItems(JsonParser p, HttpInputMessage input) throws IOException {
+        SkuCounts counts = new SkuCounts();
+        for (JsonToken t = p.nextToken(); t != JsonToken.END_ARRAY; t = p.nextToken()) {
+            if (t == JsonToken.VALUE_NULL) throw new UnknownItemException("null");
+            if (t != JsonToken.VALUE_STRING) throw notReadable("items: expected item names", input);
+
+            int sku = catalog.findId(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+            if (sku < 0) throw new UnknownItemException(p.getText());
+            counts.add(sku, 1);
+        }
+        return counts;
+    }
+
+    private SkuCounts readQuantities(JsonParser p, HttpInputMessage input) throws IOException {
+        SkuCounts counts = new SkuCounts();
+        for (JsonToken t = p.nextToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            int sku = catalog.findId(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+            if (sku < 0) throw new UnknownItemException(p.currentName());
+            if (p.nextToken() != JsonToken.VALUE_NUMBER_INT) throw notReadable("Quantities must be integers", input);
+            if (p.getNumberType() != JsonParser.NumberType.INT || p.getIntValue() > AddItemRequest.MAX_QTY) {
+                throw tooMany(p.currentName());
+            }
+            int qty = p.getIntValue();
+            if (qty < 0) throw new IllegalArgumentException("Quantity must not be negative: " + p.currentName());
+            // a name repeated in the object adds up, so the cap holds on the sum
+            if (counts.add(sku, qty) > AddItemRequest.MAX_QTY) throw tooMany(p.currentName());
+        }
+        return counts;
+    }
+
+    @Override
+    protected void writeInternal(BasketCounts basket, HttpOutputMessage output) throws HttpMessageNotWritableException {
+        throw new HttpMessageNotWritableException("BasketCounts is read-only");
+    }
+
+    private static IllegalArgumentException tooMany(String item) {
+        return new IllegalArgumentException("Quantity must be at most " + AddItemRequest.MAX_QTY + ": " + item);
+    }
+
+    private static HttpMessageNotReadableException notReadable(String msg, HttpInputMessage input) {
+        return new HttpMessageNotReadableException(msg, input);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.cart.web;
+
+import org.springframework.http.MediaType;
+
+/** Vendor media types for the quantity-based cart wire format. */
+public final class CartMediaTypes {
+    private CartMediaTypes() {}
+
+    /** {"Melon":200,"Lime":3} in requests; {"cart":{...},"count":n} in cart views. */
+    public static final String QUANTITIES_JSON_VALUE = "application/vnd.cart.quantities+json";
+    public static final MediaType QUANTITIES_JSON = MediaType.parseMediaType(QUANTITIES_JSON_VALUE);
+}
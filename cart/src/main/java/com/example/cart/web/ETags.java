@@ -0,0 +1,52 @@
+package com.example.cart.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsing for If-Match / If-None-Match headers. If-None-Match compares weakly
+ * ("W/" dropped); If-Match compares strongly, so a weak tag there never matches.
+ */
+public final class ETags {
+    private ETags() {}
+
+    /** The tags a header lists, unquoted and with "W/" dropped; "*" stays "*". Empty for a missing header. */
+    public static List<String> parse(String header) {
+        return parse(header, true);
+    }
+
+    /**
+     * If-Match tags for strong comparison: as parse(), but a weak tag is kept as
+     * sent ("W/" and quotes included), which no issued tag equals.
+     */
+    public static List<String> parseStrong(String header) {
+        return parse(header, false);
+    }
+
+    private static List<String> parse(String header, boolean weak) {
+        if (header == null || header.isBlank()) return List.of();
+        List<String> tags = new ArrayList<>(1);
+        for (String part : header.split(",")) {
+            String tag = part.strip();
+            if (tag.startsWith("W/")) {
+                if (!weak) {
+                    tags.add(tag);
+                    continue;
+                }
+                tag = tag.substring(2);
+            }
+            if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) tag = tag.substring(1, tag.length() - 1);
+            if (!tag.isEmpty()) tags.add(tag);
+        }
+        return tags;
+    }
+
+    /** If-None-Match: does the header name this (unquoted) tag, or "*"? */
+    public static boolean matches(String header, String etag) {
+        if (header == null) return false;
+        for (String tag : parse(header)) {
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+}
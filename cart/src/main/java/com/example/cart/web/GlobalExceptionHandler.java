@@ -1,5 +1,8 @@
 package com.example.cart.web;
 
+import com.example.cart.metrics.CartMetrics;
+import com.example.cart.pricing.UnknownItemException;
+import com.example.cart.store.CartVersionMismatchException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.http.HttpStatus;
@@ -12,12 +15,25 @@ import java.util.List;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
+    private final CartMetrics metrics;
+
+    public GlobalExceptionHandler(CartMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ApiError illegalArg(IllegalArgumentException ex, HttpServletRequest req) {
+        if (ex instanceof UnknownItemException) metrics.unknownItem();
         return new ApiError(Instant.now(), 400, "Bad Request", ex.getMessage(), List.of(), req.getRequestURI());
     }
 
+    @ExceptionHandler(CartVersionMismatchException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public ApiError versionMismatch(CartVersionMismatchException ex, HttpServletRequest req) {
+        return new ApiError(Instant.now(), 412, "Precondition Failed", ex.getMessage(), List.of(), req.getRequestURI());
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ApiError validation(MethodArgumentNotValidException ex, HttpServletRequest req) {
@@ -0,0 +1,29 @@
+package com.example.cart.web;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.LocaleResolver;
+import org.springframework.web.servlet.i18n.AcceptHeaderLocaleResolver;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Accept-Language is matched against cart.locales: an exact tag, else a
+ * language-only entry ("de" for de-AT), else spring.web.locale. Formatters and total
+ * ETags therefore only ever see this fixed set, whatever clients send.
+ */
+@Configuration
+public class LocaleConfig {
+
+    @Bean
+    public LocaleResolver localeResolver(
+            @Value("${cart.locales:en-GB,en-US,en,de-DE,de-CH,de,fr-FR,fr,es-ES,es,it-IT,it,nl-NL,nl,ja-JP,ja}") List<Locale> supported,
+            @Value("${spring.web.locale:en_GB}") Locale fallback) {
+        AcceptHeaderLocaleResolver resolver = new AcceptHeaderLocaleResolver();
+        resolver.setSupportedLocales(supported);
+        resolver.setDefaultLocale(fallback);
+        return resolver;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.cart.admission;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    private static final long MS = 1_000_000;
+
+    private final AtomicLong now = new AtomicLong(5_000 * MS);
+
+    // 10 tokens/s (one per 100ms), burst 5, 1 token per KB
+    private AdmissionControl control(long maxInFlight) {
+        return new AdmissionControl(10, 5, 1024, 64, maxInFlight, Duration.ofSeconds(2), now::get);
+    }
+
+    @Test
+    @DisplayName("A user spends the burst, is refused until a token refills, and does not affect others")
+    void perUserBucket() {
+        AdmissionControl admission = control(1_000);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(admission.admit("alice", 1).admitted());
+            admission.release(1);
+        }
+        AdmissionControl.Decision refused = admission.admit("alice", 1);
+        assertFalse(refused.admitted());
+        assertEquals(AdmissionControl.USER, refused.reason());
+        assertEquals(100 * MS, refused.retryAfterNanos());
+        assertTrue(admission.admit("bob", 1).admitted());
+
+        now.addAndGet(100 * MS);
+        assertTrue(admission.admit("alice", 1).admitted());
+        assertFalse(admission.admit("alice", 1).admitted());
+        assertEquals(new AdmissionControl.Stats(7, 2, 0, 2), admission.stats());
+    }
+
+    @Test
+    @DisplayName("Bodies cost by size; one bigger than the burst needs a full bucket and leaves it in debt")
+    void costBySize() {
+        AdmissionControl admission = control(1_000);
+        assertEquals(1, admission.costOf(0));
+        assertEquals(2, admission.costOf(1));
+        assertEquals(3, admission.costOf(2048));
+        assertEquals(5, admission.costOf(-1));
+
+        assertTrue(admission.charge("alice", 3).admitted());
+        assertFalse(admission.charge("alice", 3).admitted()); // 2 left
+
+        assertTrue(admission.charge("bob", admission.costOf(20 * 1024)).admitted()); // 21 tokens
+        AdmissionControl.Decision refused = admission.charge("bob", 1);
+        assertEquals((21 - 5 + 1) * 100 * MS, refused.retryAfterNanos());
+        now.addAndGet(refused.retryAfterNanos());
+        assertTrue(admission.charge("bob", 1).admitted());
+    }
+
+    @Test
+    @DisplayName("Past max-in-flight requests are shed without spending tokens; an idle node admits anything")
+    void shedsOnOverload() {
+        AdmissionControl admission = control(4);
+        assertTrue(admission.admit("alice", 3).admitted());
+        AdmissionControl.Decision shed = admission.admit("bob", 2);
+        assertFalse(shed.admitted());
+        assertEquals(AdmissionControl.OVERLOAD, shed.reason());
+        assertEquals(Duration.ofSeconds(2).toNanos(), shed.retryAfterNanos());
+        assertTrue(admission.admit("bob", 1).admitted());
+
+        admission.release(3);
+        admission.release(1);
+        assertTrue(admission.admit("bob", 4).admitted()); // the shed request took none of bob's tokens
+        assertEquals(0, admission.stats().rejectedUser());
+        assertEquals(1, admission.stats().rejectedOverload());
+    }
+
+    @Test
+    @DisplayName("A chunked body costs less than max-in-flight, so it is admitted on a busy node")
+    void unknownLengthFitsUnderMaxInFlight() {
+        AdmissionControl admission = control(8);
+        assertEquals(2, admission.costOf(-1));
+        assertTrue(admission.admit("alice", 1).admitted());
+        assertTrue(admission.admit("bob", admission.costOf(-1)).admitted());
+        assertEquals(3, admission.stats().inFlight());
+    }
+
+    @Test
+    @DisplayName("With far more users than stripes, a flooder spends only its own tokens")
+    void collidingUsersKeepTheirOwnBuckets() {
+        AdmissionControl admission = new AdmissionControl(10, 5, 1024, 2, 1_000, Duration.ofSeconds(2), now::get);
+        for (int i = 0; i < 100; i++) admission.charge("flooder", 1);
+        for (int u = 0; u < 50; u++) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(admission.charge("user-" + u, 1).admitted(), "user-" + u + " request " + i);
+            }
+            assertFalse(admission.charge("user-" + u, 1).admitted());
+        }
+        assertFalse(admission.charge("flooder", 1).admitted());
+
+        // a bucket left idle refills; its slot can be reused without losing anything
+        now.addAndGet(500 * MS);
+        for (int i = 0; i < 5; i++) assertTrue(admission.charge("flooder", 1).admitted());
+        assertFalse(admission.charge("flooder", 1).admitted());
+    }
+
+    @Test
+    @DisplayName("Forwarded requests skip the user's bucket but not the node's in-flight cap")
+    void occupyCountsInFlightOnly() {
+        AdmissionControl admission = control(4);
+        for (int i = 0; i < 5; i++) assertTrue(admission.charge("alice", 1).admitted());
+        assertTrue(admission.occupy(3).admitted());
+        AdmissionControl.Decision shed = admission.occupy(2);
+        assertEquals(AdmissionControl.OVERLOAD, shed.reason());
+        admission.release(3);
+        assertTrue(admission.occupy(4).admitted());
+        assertEquals(4, admission.stats().inFlight());
+    }
+
+    @Test
+    @DisplayName("Concurrent requests from one user admit exactly the burst")
+    void concurrentExact() throws Exception {
+        AdmissionControl admission = new AdmissionControl(1, 1_000, 1024, 64, Long.MAX_VALUE,
+                Duration.ofSeconds(1), now::get);
+        AtomicInteger admitted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (admission.admit("alice", 1).admitted()) admitted.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(1_000, admitted.get());
+        assertEquals(1_000, admission.stats().inFlight());
+    }
+}
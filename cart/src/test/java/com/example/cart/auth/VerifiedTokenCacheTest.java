@@ -0,0 +1,72 @@
+package com.example.cart.auth;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedTokenCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private static User user(String name) {
+        return new User(name, "", Collections.emptyList());
+    }
+
+    @Test
+    @DisplayName("Hit after put, miss for unknown tokens, counted")
+    void hitsAndMisses() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, now::get);
+        assertNull(cache.get("t1"));
+
+        User alice = user("alice");
+        cache.put("t1", alice, new Date(now.get() + 60_000));
+        assertSame(alice, cache.get("t1"));
+        assertNull(cache.get("t2"));
+
+        assertEquals(new VerifiedTokenCache.Stats(1, 2, 1), cache.stats());
+    }
+
+    @Test
+    @DisplayName("Entries stop matching at the token's exp")
+    void expiresWithToken() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, now::get);
+        cache.put("t1", user("alice"), new Date(now.get() + 1_000));
+
+        now.addAndGet(999);
+        assertNotNull(cache.get("t1"));
+        now.addAndGet(1);
+        assertNull(cache.get("t1"));
+    }
+
+    @Test
+    @DisplayName("Bounded: the soonest-expiring entry makes room")
+    void bounded() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2, now::get);
+        cache.put("short", user("a"), new Date(now.get() + 1_000));
+        cache.put("long", user("b"), new Date(now.get() + 9_000));
+        cache.put("new", user("c"), new Date(now.get() + 5_000));
+
+        assertNull(cache.get("short"));
+        assertNotNull(cache.get("long"));
+        assertNotNull(cache.get("new"));
+        assertEquals(2, cache.stats().size());
+    }
+
+    @Test
+    @DisplayName("Already-expired tokens and a zero size are never cached")
+    void notCached() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, now::get);
+        cache.put("old", user("a"), new Date(now.get()));
+        assertNull(cache.get("old"));
+
+        VerifiedTokenCache disabled = new VerifiedTokenCache(0, now::get);
+        disabled.put("t1", user("a"), new Date(now.get() + 60_000));
+        assertNull(disabled.get("t1"));
+    }
+}
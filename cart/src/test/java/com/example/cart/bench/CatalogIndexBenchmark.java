@@ -0,0 +1,68 @@
+package com.example.cart.bench;
+
+import com.example.cart.pricing.CatalogImage;
+import com.example.cart.pricing.PriceCatalog;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedWriter;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mapped catalog image at production scale: build time, startup (map) time,
+ * heap retained by the loaded catalog, and lookup cost.
+ *
+ *   ./mvnw test -Pbenchmark -Dtest=CatalogIndexBenchmark [-Dbench.skus=5000000]
+ */
+@Tag("benchmark")
+class CatalogIndexBenchmark {
+
+    private static final int SKUS = Integer.getInteger("bench.skus", 5_000_000);
+    private static final int LOOKUPS = 10_000_000;
+
+    @Test
+    void millionsOfSkus(@TempDir Path dir) throws Exception {
+        Path csv = dir.resolve("catalog.csv");
+        try (BufferedWriter out = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < SKUS; i++) out.write("Product " + i + " 500g," + (50 + i % 5000) + "\n");
+        }
+
+        long t0 = System.nanoTime();
+        CatalogImage.compile(csv, dir.resolve("catalog.csv.idx"), null);
+        long buildMs = (System.nanoTime() - t0) / 1_000_000;
+
+        long heapBefore = usedHeap();
+        t0 = System.nanoTime();
+        PriceCatalog catalog = new PriceCatalog();
+        ReflectionTestUtils.setField(catalog, "catalogFile", csv.toString());
+        Method init = PriceCatalog.class.getDeclaredMethod("initOffers");
+        init.setAccessible(true);
+        init.invoke(catalog);
+        long startupMs = (System.nanoTime() - t0) / 1_000_000;
+        long heapAfter = usedHeap();
+
+        String[] probes = new String[1 << 16];
+        for (int i = 0; i < probes.length; i++) probes[i] = "product " + ThreadLocalRandom.current().nextInt(SKUS) + " 500G";
+        var snapshot = catalog.snapshot();
+        long sum = 0;
+        for (int i = 0; i < LOOKUPS; i++) sum += snapshot.findId(probes[i & (probes.length - 1)]); // warm up
+        t0 = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) sum += snapshot.priceOf(snapshot.findId(probes[i & (probes.length - 1)]));
+        double nsPerLookup = (System.nanoTime() - t0) / (double) LOOKUPS;
+
+        System.out.printf("%n%,d SKUs: image %,d MB, build %,d ms, startup %,d ms, heap retained %,d KB, lookup %.0f ns (%d)%n",
+                SKUS, Files.size(dir.resolve("catalog.csv.idx")) >> 20, buildMs, startupMs,
+                (heapAfter - heapBefore) >> 10, nsPerLookup, sum & 1);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
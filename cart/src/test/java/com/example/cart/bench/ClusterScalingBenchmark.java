@@ -0,0 +1,129 @@
+package com.example.cart.bench;
+
+import com.example.cart.ShoppingCartApplication;
+import com.example.cart.cluster.ClusterClient;
+import com.example.cart.cluster.HashRing;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Throughput of the sharded cart store from 1 to N nodes on localhost.
+ * Each client owns one cart and alternates add-item / stored-cart total.
+ *   routed: clients hit a random node, which forwards to the owner ((N-1)/N of requests take a hop)
+ *   direct: clients compute the owner from the same ring and go straight there
+ * All nodes share this machine's cores, so the curve shows routing overhead
+ * and lock/cache partitioning, not what N separate hosts would add.
+ *
+ *   ./mvnw test -Pbenchmark -Dtest=ClusterScalingBenchmark [-Dbench.nodes=4 -Dbench.clients=200 -Dbench.requests=200]
+ */
+@Tag("benchmark")
+class ClusterScalingBenchmark {
+
+    private static final int MAX_NODES = Integer.getInteger("bench.nodes", 4);
+    private static final int CLIENTS = Integer.getInteger("bench.clients", 200);
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("bench.requests", 200);
+    private static final int WARMUP_PER_CLIENT = 20;
+    private static final int VNODES = 512;
+    private static final String SECRET = "bench-cluster-secret";
+
+    @Test
+    void scaleOut() throws Exception {
+        System.out.printf("%n%-6s %14s %14s%n", "nodes", "routed req/s", "direct req/s");
+        for (int n = 1; n <= MAX_NODES; n++) {
+            List<ConfigurableApplicationContext> apps = new ArrayList<>();
+            try {
+                for (int i = 0; i < n; i++) {
+                    apps.add(new SpringApplicationBuilder(ShoppingCartApplication.class)
+                            .properties("server.port=0", "logging.level.root=WARN",
+                                    "cart.admission.enabled=false") // every simulated shopper shares one token
+                            .run("--cart.cluster.secret=" + SECRET, "--management.server.port=0"));
+                }
+                List<String> nodes = apps.stream()
+                        .map(a -> "http://localhost:" + a.getEnvironment().getProperty("local.server.port"))
+                        .toList();
+                HttpClient http = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .executor(Executors.newVirtualThreadPerTaskExecutor())
+                        .build();
+                String token = login(http, nodes.get(0));
+                join(http, token, nodes);
+
+                HashRing ring = new HashRing(nodes, VNODES);
+                drive(http, token, nodes, ring, false, WARMUP_PER_CLIENT);
+                double routed = drive(http, token, nodes, ring, false, REQUESTS_PER_CLIENT);
+                double direct = drive(http, token, nodes, ring, true, REQUESTS_PER_CLIENT);
+                System.out.printf("%-6d %14.0f %14.0f%n", n, routed, direct);
+            } finally {
+                apps.forEach(ConfigurableApplicationContext::close);
+            }
+        }
+    }
+
+    /** Runs the closed-loop clients and returns requests per second. */
+    private double drive(HttpClient http, String token, List<String> nodes, HashRing ring,
+                         boolean direct, int perClient) throws Exception {
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> done = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                String user = "bench-" + c;
+                done.add(clients.submit(() -> {
+                    for (int i = 0; i < perClient; i++) {
+                        String node = direct ? ring.owner(user)
+                                : nodes.get(ThreadLocalRandom.current().nextInt(nodes.size()));
+                        HttpRequest req = (i % 2 == 0)
+                                ? request(node + "/api/cart/items", token, user, "{\"item\":\"Lime\"}")
+                                : request(node + "/api/cart/total", token, user, null);
+                        HttpResponse<Void> res = http.send(req, HttpResponse.BodyHandlers.discarding());
+                        if (res.statusCode() != 200) throw new IllegalStateException("HTTP " + res.statusCode());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) f.get();
+        }
+        return CLIENTS * (double) perClient / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static HttpRequest request(String url, String token, String user, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", "Bearer " + token)
+                .header("X-User-Id", user)
+                .header("Content-Type", "application/json")
+                .POST(json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static void join(HttpClient http, String token, List<String> nodes) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(nodes.get(0) + "/internal/cluster/members"))
+                .header("Authorization", "Bearer " + token)
+                .header(ClusterClient.PEER_SECRET, SECRET)
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"nodes\":[\"" + String.join("\",\"", nodes) + "\"]}"))
+                .build();
+        HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() != 200) throw new IllegalStateException("join failed: " + res.body());
+    }
+
+    private static String login(HttpClient http, String base) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser\",\"password\":\"testpass@123\"}"))
+                .build();
+        String body = http.send(req, HttpResponse.BodyHandlers.ofString()).body();
+        return body.replaceAll(".*\"accessToken\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+    }
+}
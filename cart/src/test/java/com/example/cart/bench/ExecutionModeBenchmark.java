@@ -0,0 +1,110 @@
+package com.example.cart.bench;
+
+import com.example.cart.ShoppingCartApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Platform vs virtual request threads under high concurrency.
+ * Boots the full app (security filter chain, JwtAuthFilter, CartController) once per mode
+ * on a random port and drives it with many concurrent closed-loop clients.
+ *
+ *   ./mvnw test -Pbenchmark -Dtest=ExecutionModeBenchmark [-Dbench.clients=1000 -Dbench.requests=50]
+ */
+@Tag("benchmark")
+class ExecutionModeBenchmark {
+
+    private static final int CLIENTS = Integer.getInteger("bench.clients", 1000);
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("bench.requests", 50);
+    private static final int WARMUP_PER_CLIENT = 10;
+
+    private static final String BASKET = """
+            {"items":["Apple","Apple","Banana","Melon","Melon","Melon","Lime","Lime","Lime","Lime"]}""";
+
+    record Result(String mode, double throughput, double p50Ms, double p99Ms, double maxMs) {}
+
+    @Test
+    void compareExecutionModes() throws Exception {
+        List<Result> results = new ArrayList<>();
+        results.add(run("platform", false));
+        results.add(run("virtual", true));
+
+        System.out.printf("%n%-10s %12s %10s %10s %10s%n", "mode", "req/s", "p50 ms", "p99 ms", "max ms");
+        for (Result r : results) {
+            System.out.printf("%-10s %12.0f %10.2f %10.2f %10.2f%n", r.mode(), r.throughput(), r.p50Ms(), r.p99Ms(), r.maxMs());
+        }
+    }
+
+    private Result run(String mode, boolean virtual) throws Exception {
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(ShoppingCartApplication.class)
+                .properties("server.port=0", "spring.threads.virtual.enabled=" + virtual, "logging.level.root=WARN",
+                        "cart.admission.enabled=false") // every simulated shopper shares one token
+                .run()) {
+            String base = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+            HttpClient http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+            String token = login(http, base);
+
+            drive(http, base, token, WARMUP_PER_CLIENT);
+            long start = System.nanoTime();
+            long[] latencies = drive(http, base, token, REQUESTS_PER_CLIENT);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            return new Result(mode, latencies.length / seconds,
+                    pct(latencies, 0.50), pct(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    private long[] drive(HttpClient http, String base, String token, int perClient) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/api/cart/total"))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(BASKET))
+                .build();
+
+        long[] latencies = new long[CLIENTS * perClient];
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> done = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                int offset = c * perClient;
+                done.add(clients.submit(() -> {
+                    for (int i = 0; i < perClient; i++) {
+                        long t0 = System.nanoTime();
+                        HttpResponse<Void> res = http.send(req, HttpResponse.BodyHandlers.discarding());
+                        latencies[offset + i] = System.nanoTime() - t0;
+                        if (res.statusCode() != 200) throw new IllegalStateException("HTTP " + res.statusCode());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) f.get();
+        }
+        return latencies;
+    }
+
+    private static String login(HttpClient http, String base) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser\",\"password\":\"testpass@123\"}"))
+                .build();
+        String body = http.send(req, HttpResponse.BodyHandlers.ofString()).body();
+        return body.replaceAll(".*\"accessToken\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+    }
+
+    private static double pct(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.cart.bench;
+
+import com.example.cart.ShoppingCartApplication;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test: the full stack (security filter chain, JwtAuthFilter,
+ * CartController, JSON) on localhost, driven by an open model.
+ *
+ * Requests are scheduled at a fixed arrival rate, whether or not earlier ones
+ * have answered, and each latency is measured from the request's scheduled
+ * start. A slow server therefore shows up as queueing in the percentiles
+ * instead of quietly lowering the offered load (coordinated omission). Each
+ * request is one of add / remove / view / total for a random simulated user
+ * (X-User-Id), all under one bearer token from /auth/login.
+ *
+ * Prints throughput and percentiles per endpoint, and writes each histogram's
+ * percentile distribution to target/load-test/*.hgrm (HdrHistogram's plotter format).
+ *
+ *   ./mvnw test -Pbenchmark -Dtest=LoadTestBenchmark [-Dbench.rate=1000 -Dbench.duration=30s -Dbench.users=1000]
+ */
+@Tag("benchmark")
+class LoadTestBenchmark {
+
+    private static final int RATE = Integer.getInteger("bench.rate", 1_000);           // requests per second
+    private static final int USERS = Integer.getInteger("bench.users", 1_000);
+    private static final Duration DURATION = DurationStyle.detectAndParse(System.getProperty("bench.duration", "30s"));
+    private static final Duration WARMUP = DurationStyle.detectAndParse(System.getProperty("bench.warmup", "10s"));
+
+    private static final String[] ITEMS = {"Apple", "Banana", "Melon", "Lime"};
+    private static final long MAX_LATENCY = Duration.ofMinutes(1).toNanos();
+
+    /** The request mix: share of arrivals, in percent. */
+    enum Endpoint {
+        ADD("POST /api/cart/items", 40),
+        REMOVE("DELETE /api/cart/items/{item}", 10),
+        VIEW("GET /api/cart", 25),
+        TOTAL("POST /api/cart/total", 25);
+
+        final String label;
+        final int percent;
+
+        Endpoint(String label, int percent) {
+            this.label = label;
+            this.percent = percent;
+        }
+
+        static Endpoint pick(int roll) {
+            for (Endpoint e : values()) {
+                if ((roll -= e.percent) < 0) return e;
+            }
+            throw new IllegalStateException("mix does not add up to 100");
+        }
+    }
+
+    @Test
+    void openModelLoad() throws Exception {
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(ShoppingCartApplication.class)
+                .properties("server.port=0", "server.address=127.0.0.1", "logging.level.root=WARN",
+                        "cart.admission.enabled=false") // every simulated shopper shares one token
+                .run()) {
+            String base = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port");
+            HttpClient http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+            String token = login(http, base);
+
+            run(http, base, token, WARMUP); // JIT, connection pool, carts populated
+            Run run = run(http, base, token, DURATION);
+            report(run);
+        }
+    }
+
+    private record Run(Map<Endpoint, Histogram> latency, Map<Endpoint, LongAdder> errors, double seconds,
+                       long late) {}
+
+    /** Fires RATE requests per second for the given time, then waits for the stragglers. */
+    private Run run(HttpClient http, String base, String token, Duration duration) throws Exception {
+        Map<Endpoint, Histogram> latency = new EnumMap<>(Endpoint.class);
+        Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class);
+        for (Endpoint e : Endpoint.values()) {
+            latency.put(e, new ConcurrentHistogram(MAX_LATENCY, 3));
+            errors.put(e, new LongAdder());
+        }
+
+        long interval = 1_000_000_000L / RATE;
+        long total = duration.toNanos() / interval;
+        long late = 0;
+        long start = System.nanoTime();
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long scheduled = start + i * interval;
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                else if (wait < -1_000_000) late++; // the generator itself fell behind by over 1ms
+
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                Endpoint endpoint = Endpoint.pick(rnd.nextInt(100));
+                HttpRequest request = request(endpoint, base, token, "user-" + rnd.nextInt(USERS), ITEMS[rnd.nextInt(ITEMS.length)]);
+                senders.submit(() -> {
+                    try {
+                        HttpResponse<Void> res = http.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (res.statusCode() != 200) errors.get(endpoint).increment();
+                    } catch (Exception ex) {
+                        errors.get(endpoint).increment();
+                    }
+                    // from the scheduled start, not the send: time spent queued behind a slow server counts
+                    latency.get(endpoint).recordValue(Math.min(System.nanoTime() - scheduled, MAX_LATENCY));
+                });
+            }
+        }
+        return new Run(latency, errors, (System.nanoTime() - start) / 1e9, late);
+    }
+
+    private static HttpRequest request(Endpoint endpoint, String base, String token, String user, String item) {
+        HttpRequest.Builder b = switch (endpoint) {
+            case ADD -> HttpRequest.newBuilder(URI.create(base + "/api/cart/items"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"item\":\"" + item + "\"}"));
+            case REMOVE -> HttpRequest.newBuilder(URI.create(base + "/api/cart/items/" + item)).DELETE();
+            case VIEW -> HttpRequest.newBuilder(URI.create(base + "/api/cart")).GET();
+            case TOTAL -> HttpRequest.newBuilder(URI.create(base + "/api/cart/total"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{}")); // no items: price the stored cart
+        };
+        return b.header("Authorization", "Bearer " + token).header("X-User-Id", user).build();
+    }
+
+    private static void report(Run run) throws Exception {
+        Path dir = Path.of("target", "load-test");
+        Files.createDirectories(dir);
+
+        Histogram all = new Histogram(MAX_LATENCY, 3);
+        long errors = 0;
+        System.out.printf("%n%,d req/s offered to %,d users for %s; latency from scheduled start, ms%n",
+                RATE, USERS, DURATION);
+        System.out.printf("%-30s %9s %9s %8s %8s %8s %8s %8s %7s%n",
+                "endpoint", "requests", "req/s", "p50", "p90", "p99", "p99.9", "max", "errors");
+        for (Endpoint e : Endpoint.values()) {
+            Histogram h = run.latency().get(e);
+            all.add(h);
+            errors += run.errors().get(e).sum();
+            row(e.label, h, run.seconds(), run.errors().get(e).sum());
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(e.name().toLowerCase() + ".hgrm")))) {
+                h.outputPercentileDistribution(out, 1e6);
+            }
+        }
+        row("all", all, run.seconds(), errors);
+        if (run.late() > 0) {
+            // client and server share the machine: a starved generator sends late and offers less than RATE
+            System.out.printf("generator was over 1ms behind schedule on %,d sends (client short of CPU)%n", run.late());
+        }
+    }
+
+    private static void row(String label, Histogram h, double seconds, long errors) {
+        System.out.printf("%-30s %9d %9.0f %8.2f %8.2f %8.2f %8.2f %8.2f %7d%n", label, h.getTotalCount(),
+                h.getTotalCount() / seconds, ms(h, 50), ms(h, 90), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1e6, errors);
+    }
+
+    private static double ms(Histogram h, double percentile) {
+        return h.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    private static String login(HttpClient http, String base) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser\",\"password\":\"testpass@123\"}"))
+                .build();
+        HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() != 200) throw new IllegalStateException("Login failed: HTTP " + res.statusCode());
+        return res.body().replaceAll(".*\"accessToken\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.cart.bench;
+
+import com.example.cart.pricing.CatalogSnapshot;
+import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.pricing.promotions.Promotion;
+import com.example.cart.pricing.promotions.PromotionEngine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedWriter;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Greedy vs optimal promotion assignment over synthetic baskets: how much the
+ * solver saves shoppers, what it costs per basket, and how often it hits its
+ * time budget. Promotions deliberately overlap: bundles and multi-buys are
+ * drawn from a small set of popular SKUs, some of which also carry BOGOF or
+ * 3-for-2.
+ *
+ *   ./mvnw test -Pbenchmark -Dtest=PromotionSolverBenchmark [-Dbench.baskets=2000 -Dbench.budget=2ms -Dbench.popular=1000]
+ */
+@Tag("benchmark")
+class PromotionSolverBenchmark {
+
+    private static final int SKUS = 20_000;
+    private static final int POPULAR = Integer.getInteger("bench.popular", 1_000);
+    private static final int PROMOTIONS = 5_000;
+    private static final int BASKETS = Integer.getInteger("bench.baskets", 2_000);
+    private static final Duration BUDGET = DurationStyle.detectAndParse(System.getProperty("bench.budget", "2ms"));
+
+    @Test
+    void greedyVsOptimal(@TempDir Path dir) throws Exception {
+        Random rnd = new Random(42);
+        Path csv = dir.resolve("catalog.csv");
+        try (BufferedWriter out = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < SKUS; i++) {
+                String offer = i % 7 == 0 ? ",BOGO" : i % 5 == 0 ? ",THREE_FOR_TWO" : "";
+                out.write("sku" + i + "," + (20 + rnd.nextInt(480)) + offer + "\n");
+            }
+        }
+        PriceCatalog catalog = new PriceCatalog();
+        ReflectionTestUtils.setField(catalog, "catalogFile", csv.toString());
+        Method init = PriceCatalog.class.getDeclaredMethod("initOffers");
+        init.setAccessible(true);
+        init.invoke(catalog);
+        CatalogSnapshot snapshot = catalog.snapshot();
+
+        List<Promotion> promotions = new ArrayList<>();
+        for (int i = 0; i < PROMOTIONS; i++) {
+            int kind = rnd.nextInt(10);
+            if (kind < 4) {
+                int sku = sku(rnd);
+                int qty = 2 + rnd.nextInt(3);
+                int list = qty * snapshot.priceOf(snapshot.idOf("sku" + sku));
+                promotions.add(new Promotion.MultiBuy("m" + i, "sku" + sku, qty, list * (70 + rnd.nextInt(25)) / 100));
+            } else if (kind < 8) {
+                List<String> items = new ArrayList<>();
+                int list = 0;
+                for (int k = 2 + rnd.nextInt(2); k > 0; k--) {
+                    String item = "sku" + sku(rnd);
+                    items.add(item);
+                    list += snapshot.priceOf(snapshot.idOf(item));
+                }
+                promotions.add(new Promotion.Bundle("b" + i, items, list * (65 + rnd.nextInt(30)) / 100));
+            } else if (kind < 9) {
+                promotions.add(new Promotion.PercentOff("p" + i, List.of("sku" + rnd.nextInt(SKUS)), 5 + rnd.nextInt(20)));
+            } else {
+                promotions.add(new Promotion.SpendThreshold("s" + i, 2_000 + rnd.nextInt(20_000), 100 + rnd.nextInt(500)));
+            }
+        }
+        PromotionEngine greedy = new PromotionEngine(promotions, Duration.ZERO);
+        PromotionEngine optimal = new PromotionEngine(promotions, BUDGET);
+
+        System.out.printf("%n%,d SKUs, %,d promotions, solver budget %s%n", SKUS, PROMOTIONS, BUDGET);
+        System.out.printf("%6s %10s %10s %10s %10s %12s %10s%n",
+                "lines", "greedy us", "p50 us", "p99 us", "improved", "saved/bskt", "budget hit");
+        for (int lines : new int[]{5, 20, 60, 150}) {
+            SkuCounts[] baskets = new SkuCounts[BASKETS];
+            for (int b = 0; b < BASKETS; b++) {
+                SkuCounts counts = new SkuCounts();
+                while (counts.size() < lines) {
+                    int sku = rnd.nextInt(3) == 0 ? rnd.nextInt(SKUS) : sku(rnd);
+                    counts.add(snapshot.idOf("sku" + sku), 1 + rnd.nextInt(6));
+                }
+                baskets[b] = counts;
+            }
+            for (SkuCounts c : baskets) { greedy.price(c, snapshot); optimal.price(c, snapshot); } // warm up
+
+            long exhaustedBefore = optimal.budgetExhausted();
+            long[] greedyTotals = new long[BASKETS];
+            long t0 = System.nanoTime();
+            for (int b = 0; b < BASKETS; b++) greedyTotals[b] = greedy.price(baskets[b], snapshot).totalPence();
+            double greedyUs = (System.nanoTime() - t0) / 1e3 / BASKETS;
+
+            long[] micros = new long[BASKETS];
+            int improved = 0;
+            long saved = 0;
+            for (int b = 0; b < BASKETS; b++) {
+                long s = System.nanoTime();
+                int total = optimal.price(baskets[b], snapshot).totalPence();
+                micros[b] = (System.nanoTime() - s) / 1_000;
+                if (total > greedyTotals[b]) throw new AssertionError("solver worse than greedy on basket " + b);
+                if (total < greedyTotals[b]) improved++;
+                saved += greedyTotals[b] - total;
+            }
+            Arrays.sort(micros);
+            System.out.printf("%6d %10.1f %10d %10d %9.1f%% %11.1fp %9.1f%%%n", lines, greedyUs,
+                    micros[BASKETS / 2], micros[BASKETS * 99 / 100], 100.0 * improved / BASKETS,
+                    (double) saved / BASKETS, 100.0 * (optimal.budgetExhausted() - exhaustedBefore) / BASKETS);
+        }
+    }
+
+    // popular SKUs dominate baskets and promotions, so promotions compete for the same units
+    private static int sku(Random rnd) {
+        return rnd.nextInt(POPULAR) * (SKUS / POPULAR);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.cart.bench;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Cold start as a pod added on a traffic spike sees it: a fresh JVM per run,
+ * timed from launch to Spring's "Started" line and to the first priced basket
+ * (log in, then POST /api/cart/total). Compares the plain jar with the
+ * fast-startup build (Spring AOT, CDS archive, lazy beans), median of
+ * bench.starts runs each, and appends the medians to target/startup/history.csv.
+ *
+ * With -Dbench.max-first-priced=<duration> the test fails when the fast-startup
+ * build takes longer than that to price its first basket.
+ *
+ *   ./mvnw package -Pfast-startup -DskipTests
+ *   ./mvnw test -Pbenchmark -Dtest=StartupBenchmark [-Dbench.starts=5 -Dbench.max-first-priced=3s]
+ */
+@Tag("benchmark")
+class StartupBenchmark {
+
+    private static final int STARTS = Integer.getInteger("bench.starts", 5);
+    private static final String MAX_FIRST_PRICED = System.getProperty("bench.max-first-priced");
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+    private static final String BASKET = "{\"items\":[\"Apple\",\"Apple\",\"Banana\",\"Melon\",\"Lime\"]}";
+
+    private record Variant(String name, Path dir, List<String> jvmArgs) {}
+
+    private record Start(long startedMs, long firstPricedMs) {}
+
+    @Test
+    void coldStart() throws Exception {
+        Path target = Path.of("target");
+        Path app = target.resolve("app");
+        assumeTrue(Files.exists(app.resolve("application.jsa")), "build it first: ./mvnw package -Pfast-startup");
+        String jar = bootJar(target);
+
+        List<Variant> variants = List.of(
+                new Variant("jar", target, List.of()),
+                new Variant("aot+cds+lazy", app, List.of("-XX:SharedArchiveFile=application.jsa",
+                        "-Dspring.aot.enabled=true", "-Dspring.profiles.active=fast-startup")));
+
+        HttpClient http = HttpClient.newHttpClient();
+        System.out.printf("%n%d cold starts each, median ms%n", STARTS);
+        System.out.printf("%-14s %10s %14s%n", "variant", "started", "first priced");
+        List<Start> medians = new ArrayList<>();
+        for (Variant v : variants) {
+            List<Start> runs = new ArrayList<>();
+            for (int i = 0; i < STARTS; i++) runs.add(start(v, jar, http));
+            Start median = new Start(median(runs.stream().mapToLong(Start::startedMs).toArray()),
+                    median(runs.stream().mapToLong(Start::firstPricedMs).toArray()));
+            medians.add(median);
+            System.out.printf("%-14s %10d %14d%n", v.name(), median.startedMs(), median.firstPricedMs());
+        }
+        record(medians);
+
+        if (MAX_FIRST_PRICED != null) {
+            long limit = DurationStyle.detectAndParse(MAX_FIRST_PRICED).toMillis();
+            long fast = medians.get(medians.size() - 1).firstPricedMs();
+            assertTrue(fast <= limit, "first priced basket after " + fast + "ms, over bench.max-first-priced " + limit + "ms");
+        }
+    }
+
+    /** Launches one JVM, waits for it to price a basket, and stops it. */
+    private static Start start(Variant v, String jar, HttpClient http) throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(v.jvmArgs());
+        command.addAll(List.of("-jar", jar, "--server.port=" + port, "--server.address=127.0.0.1",
+                "--management.server.port=0"));
+
+        long launched = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(v.dir().toFile()).redirectErrorStream(true).start();
+        try {
+            CompletableFuture<Long> started = new CompletableFuture<>();
+            Thread.ofVirtual().start(() -> {
+                try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    for (String line; (line = out.readLine()) != null; ) {
+                        if (!started.isDone() && line.contains("Started ShoppingCartApplication")) {
+                            started.complete(System.nanoTime());
+                        }
+                    }
+                } catch (Exception e) {
+                    started.completeExceptionally(e);
+                }
+                started.completeExceptionally(new IllegalStateException(v.name() + " exited before starting"));
+            });
+
+            String base = "http://127.0.0.1:" + port;
+            String token = login(http, base, process);
+            HttpResponse<String> priced = http.send(HttpRequest.newBuilder(URI.create(base + "/api/cart/total"))
+                    .header("Authorization", "Bearer " + token)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(BASKET))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            long firstPriced = System.nanoTime();
+            if (priced.statusCode() != 200) throw new IllegalStateException("Pricing failed: HTTP " + priced.statusCode());
+
+            long startedAt = started.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            return new Start((startedAt - launched) / 1_000_000, (firstPriced - launched) / 1_000_000);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) process.destroyForcibly();
+        }
+    }
+
+    /** Retries until the server listens, then logs in like LoadTestBenchmark. */
+    private static String login(HttpClient http, String base, Process process) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser\",\"password\":\"testpass@123\"}"))
+                .build();
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (true) {
+            try {
+                HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
+                if (res.statusCode() != 200) throw new IllegalStateException("Login failed: HTTP " + res.statusCode());
+                return res.body().replaceAll(".*\"accessToken\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+            } catch (ConnectException e) {
+                if (!process.isAlive() || System.nanoTime() > deadline) throw new IllegalStateException("Server did not start", e);
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private static String bootJar(Path target) throws Exception {
+        try (Stream<Path> files = Files.list(target.resolve("app"))) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(".jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No application jar in target/app"));
+        }
+    }
+
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    private static void record(List<Start> medians) throws Exception {
+        Path history = Path.of("target", "startup", "history.csv");
+        Files.createDirectories(history.getParent());
+        boolean header = !Files.exists(history);
+        try (PrintStream out = new PrintStream(Files.newOutputStream(history,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (header) out.println("timestamp,starts,jar_started_ms,jar_first_priced_ms,fast_started_ms,fast_first_priced_ms");
+            out.printf("%s,%d,%d,%d,%d,%d%n", Instant.now(), STARTS,
+                    medians.get(0).startedMs(), medians.get(0).firstPricedMs(),
+                    medians.get(1).startedMs(), medians.get(1).firstPricedMs());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.cart.cluster;
+
+import com.example.cart.ShoppingCartApplication;
+import com.example.cart.store.CartStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterTest {
+
+    private static final String SECRET = "test-cluster-secret";
+
+    @Test
+    @DisplayName("Ring spreads keys evenly and a new node takes only its share, from everyone")
+    void ringBalanceAndMinimalMovement() {
+        List<String> four = List.of("http://a:1", "http://b:1", "http://c:1", "http://d:1");
+        List<String> five = new ArrayList<>(four);
+        five.add("http://e:1");
+        HashRing before = new HashRing(four, 512);
+        HashRing after = new HashRing(five, 512);
+
+        int keys = 100_000;
+        Map<String, Integer> load = new HashMap<>();
+        int moved = 0;
+        for (int i = 0; i < keys; i++) {
+            String key = "user-" + i;
+            String was = before.owner(key);
+            String now = after.owner(key);
+            load.merge(was, 1, Integer::sum);
+            if (!was.equals(now)) {
+                moved++;
+                assertEquals("http://e:1", now, "keys only move to the new node");
+            }
+        }
+
+        for (int n : load.values()) assertEquals(keys / 4.0, n, keys / 4.0 * 0.10);
+        assertEquals(keys / 5.0, moved, keys / 5.0 * 0.10);
+        assertEquals(before.owner("anon"), new HashRing(List.of("http://d:1", "http://c:1", "http://b:1", "http://a:1"), 512).owner("anon"));
+    }
+
+    @Test
+    @DisplayName("Three local nodes: any node serves any cart, and a leaving node hands its carts off")
+    void threeNodesOnLocalhost() throws Exception {
+        List<ConfigurableApplicationContext> apps = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                apps.add(new SpringApplicationBuilder(ShoppingCartApplication.class)
+                        .properties("server.port=0", "logging.level.root=WARN")
+                        .run("--cart.cluster.secret=" + SECRET, "--management.server.port=0"));
+            }
+            List<String> nodes = apps.stream()
+                    .map(a -> "http://localhost:" + a.getEnvironment().getProperty("local.server.port"))
+                    .toList();
+            HttpClient http = HttpClient.newHttpClient();
+            String token = login(http, nodes.get(0));
+
+            String join = "{\"nodes\":[\"" + String.join("\",\"", nodes) + "\"]}";
+            // a shopper's token alone does not open the node-to-node API, nor does a wrong secret
+            assertEquals(403, call(http, token, null, nodes.get(0), "PUT", "/internal/cluster/members", null, join).statusCode());
+            assertEquals(403, call(http, token, "wrong", nodes.get(0), "PUT", "/internal/cluster/members", null, join).statusCode());
+            assertEquals(200, send(http, token, nodes.get(0), "PUT", "/internal/cluster/members", null, join).statusCode());
+
+            // write through arbitrary nodes, read back through every node
+            List<String> users = IntStream.range(0, 60).mapToObj(i -> "user-" + i).toList();
+            for (int i = 0; i < users.size(); i++) {
+                send(http, token, nodes.get(i % 3), "POST", "/api/cart/items", users.get(i),
+                        "{\"item\":\"Melon\",\"qty\":" + (i + 1) + "}");
+            }
+            for (int i = 0; i < users.size(); i++) {
+                for (String node : nodes) {
+                    String body = send(http, token, node, "GET", "/api/cart", users.get(i), null).body();
+                    assertTrue(body.contains("\"count\":" + (i + 1)), () -> node + " -> " + body);
+                }
+            }
+
+            // each cart lives only on its owner
+            HashRing ring = new HashRing(nodes, 512);
+
+            // an event stream opened on another node is relayed from the owner (node 2, which leaves below)
+            int watched = IntStream.range(0, users.size())
+                    .filter(i -> ring.owner(users.get(i)).equals(nodes.get(2))).findFirst().orElseThrow();
+            HttpResponse<InputStream> stream = http.send(HttpRequest.newBuilder(URI.create(nodes.get(0) + "/api/cart/events"))
+                    .header("Authorization", "Bearer " + token)
+                    .header("X-User-Id", users.get(watched))
+                    .header("Accept", "text/event-stream")
+                    .build(), HttpResponse.BodyHandlers.ofInputStream());
+            assertEquals(200, stream.statusCode());
+            assertTrue(stream.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"));
+            InputStream events = stream.body();
+            StringBuilder first = new StringBuilder();
+            while (first.indexOf("\n\n") < 0) {
+                int c = events.read();
+                assertTrue(c >= 0, () -> "stream ended early: " + first);
+                first.append((char) c);
+            }
+            assertTrue(first.toString().contains("\"qty\":" + (watched + 1)), first::toString);
+            CompletableFuture<byte[]> rest = CompletableFuture.supplyAsync(() -> {
+                try (events) {
+                    return events.readAllBytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            // node 2 leaves: its carts move to the survivors and nothing else moves
+            List<String> survivors = nodes.subList(0, 2);
+            send(http, token, nodes.get(1), "PUT", "/internal/cluster/members", null,
+                    "{\"nodes\":[\"" + String.join("\",\"", survivors) + "\"]}");
+            assertTrue(apps.get(2).getBean(CartStore.class).userIds().isEmpty());
+            rest.get(10, TimeUnit.SECONDS); // the moved cart's stream ends, so the client reconnects to its new owner
+            Thread.sleep(200); // past cart.events.coalesce: nothing reads the cart back into node 2
+            assertTrue(apps.get(2).getBean(CartStore.class).userIds().isEmpty());
+            for (int i = 0; i < users.size(); i++) {
+                String body = send(http, token, nodes.get(0), "GET", "/api/cart", users.get(i), null).body();
+                assertTrue(body.contains("\"count\":" + (i + 1)), body);
+            }
+        } finally {
+            apps.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    @Test
+    @DisplayName("A handoff replaces an untouched cart once; writes on the new owner win; a dead peer loses no carts")
+    void handoffsAreIdempotentAndNeverOrphaned() throws Exception {
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(ShoppingCartApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                .run("--cart.cluster.secret=" + SECRET, "--management.server.port=0",
+                        "--cart.cluster.handoff-retry=50ms", "--cart.cluster.timeout=500ms")) {
+            String node = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+            HttpClient http = HttpClient.newHttpClient();
+            String token = login(http, node);
+            CartStore store = app.getBean(CartStore.class);
+
+            // the same push twice (a retry after a lost answer) leaves the cart as pushed, not doubled
+            String handoff = "{\"version\":\"old.7\",\"items\":{\"Melon\":2,\"Lime\":1}}";
+            send(http, token, node, "PUT", "/internal/cluster/carts/moved", null, handoff);
+            send(http, token, node, "PUT", "/internal/cluster/carts/moved", null, handoff);
+            assertEquals(Map.of("Melon", 2, "Lime", 1), store.toQuantities(store.counts("moved")).cart());
+
+            // a clear that reached the new owner before the handoff is not undone by it
+            send(http, token, node, "DELETE", "/api/cart", "cleared", null);
+            send(http, token, node, "PUT", "/internal/cluster/carts/cleared", null, handoff);
+            assertEquals(0, store.counts("cleared").size());
+
+            // nor is one after it, by a late duplicate
+            send(http, token, node, "DELETE", "/api/cart", "moved", null);
+            send(http, token, node, "PUT", "/internal/cluster/carts/moved", null, handoff);
+            assertEquals(0, store.counts("moved").size());
+
+            // a member that cannot be reached is reported; carts it would own stay here, whole, until it can be
+            List<String> users = IntStream.range(0, 20).mapToObj(i -> "shopper-" + i).toList();
+            for (String user : users) send(http, token, node, "POST", "/api/cart/items", user, "{\"item\":\"Apple\",\"qty\":3}");
+            String dead = "http://localhost:1";
+            long theirs = users.stream().filter(u -> new HashRing(List.of(node, dead), 512).owner(u).equals(dead)).count();
+            assertTrue(theirs > 0);
+            String result = send(http, token, node, "PUT", "/internal/cluster/members", null,
+                    "{\"nodes\":[\"" + node + "\",\"" + dead + "\"]}").body();
+            assertTrue(result.contains("\"unreachable\":[\"" + dead + "\"]"), result);
+            assertTrue(result.contains("\"cartsPending\":" + theirs), result);
+            Thread.sleep(200); // a few failed retries
+            result = send(http, token, node, "PUT", "/internal/cluster/members", null, "{\"nodes\":[\"" + node + "\"]}").body();
+            assertTrue(result.contains("\"cartsPending\":0"), result);
+            for (String user : users) assertEquals(3, store.counts(user).totalUnits(), user);
+        }
+    }
+
+    private static HttpResponse<String> send(HttpClient http, String token, String node, String method,
+                                             String path, String userId, String json) throws Exception {
+        String secret = path.startsWith("/internal/") ? SECRET : null;
+        HttpResponse<String> res = call(http, token, secret, node, method, path, userId, json);
+        assertEquals(200, res.statusCode(), () -> method + " " + path + ": " + res.body());
+        return res;
+    }
+
+    private static HttpResponse<String> call(HttpClient http, String token, String secret, String node, String method,
+                                             String path, String userId, String json) throws Exception {
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(node + path))
+                .header("Authorization", "Bearer " + token)
+                .method(method, json == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json));
+        if (json != null) req.header("Content-Type", "application/json");
+        if (userId != null) req.header("X-User-Id", userId);
+        if (secret != null) req.header(ClusterClient.PEER_SECRET, secret);
+        return http.send(req.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String login(HttpClient http, String base) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser\",\"password\":\"testpass@123\"}"))
+                .build();
+        String body = http.send(req, HttpResponse.BodyHandlers.ofString()).body();
+        return body.replaceAll(".*\"accessToken\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+    }
+}
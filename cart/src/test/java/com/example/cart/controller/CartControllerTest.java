@@ -1,23 +1,39 @@
 package com.example.cart.controller;
 
 import com.example.cart.ShoppingCartApplication;
+import com.example.cart.pricing.FxRates;
+import com.example.cart.web.CartMediaTypes;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest(classes = ShoppingCartApplication.class)
 @AutoConfigureMockMvc
+@TestPropertySource(properties = "cart.fx.rates=EUR:1.17,JPY:190")
 class CartControllerTest {
 
     @Autowired MockMvc mvc;
+    @Autowired FxRates fx;
 
     @Test
     @WithMockUser(username = "testuser", roles = "USER")
@@ -33,6 +49,47 @@ class CartControllerTest {
                 .andExpect(jsonPath("$.totalFormatted", is("£2.35")));
     }
 
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void totalInShoppersCurrency() throws Exception {
+        String body = """
+            {"items":["Apple","Apple","Banana","Melon","Melon","Melon","Lime","Lime","Lime","Lime"]}
+            """;
+        // unit prices convert and round to the cent (35p -> 41c, 20p -> 23c, 50p -> 58c, 15p -> 18c); lines re-add
+        mvc.perform(post("/api/cart/total").param("currency", "eur")
+                        .header("Accept-Language", "de-DE")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.currency", is("EUR")))
+                .andExpect(jsonPath("$.lines[0].unitPricePence", is(41)))
+                .andExpect(jsonPath("$.totalPence", is(2 * 41 + 23 + 2 * 58 + 3 * 18)))
+                .andExpect(jsonPath("$.totalFormatted", is("2,75\u00a0€")));
+
+        // only supported locales are used: another German region matches by language, anything else gets the default
+        mvc.perform(post("/api/cart/total").param("currency", "EUR")
+                        .header("Accept-Language", "de-AT")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(jsonPath("$.totalFormatted", is("2,75\u00a0€")));
+        mvc.perform(post("/api/cart/total").param("currency", "EUR")
+                        .header("Accept-Language", "qq-ZZ-x-made-up")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(jsonPath("$.totalFormatted", is("€2.75")));
+
+        // no minor unit: 35p -> 66.5 -> 66 yen (half-even)
+        mvc.perform(post("/api/cart/total").param("currency", "JPY")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(jsonPath("$.totalPence", is(2 * 66 + 38 + 2 * 95 + 3 * 28)));
+
+        mvc.perform(post("/api/cart/total").param("currency", "USD")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @WithMockUser(username = "testuser", roles = "USER")
     void badItemReturns400() throws Exception {
@@ -45,4 +102,283 @@ class CartControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.message").value(org.hamcrest.Matchers.containsString("Unknown item")));
     }
+
+    @Test
+    @WithMockUser(username = "bulkbuyer", roles = "USER")
+    void totalStreamsLargeBasketAndIgnoresUnknownFields() throws Exception {
+        StringBuilder body = new StringBuilder("{\"note\":{\"x\":[1,2]},\"items\":[");
+        for (int i = 0; i < 100_000; i++) body.append(i == 0 ? "" : ",").append("\" lime\"");
+        body.append("]}");
+
+        mvc.perform(post("/api/cart/total")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lines[0].item", is("Lime")))
+                .andExpect(jsonPath("$.lines[0].qty", is(100_000)))
+                .andExpect(jsonPath("$.totalPence", is(66_667 * 15)));
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void malformedTotalBodyReturns400() throws Exception {
+        mvc.perform(post("/api/cart/total")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[\"Apple\""))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void quantityWireFormat() throws Exception {
+        mvc.perform(post("/api/cart/total")
+                        .contentType(CartMediaTypes.QUANTITIES_JSON)
+                        .content("{\"Melon\":200,\"lime\":3}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalPence", is(100 * 50 + 2 * 15)));
+
+        mvc.perform(post("/api/cart/items")
+                        .header("X-User-Id", "qty-user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(CartMediaTypes.QUANTITIES_JSON)
+                        .content("{\"item\":\"Melon\",\"qty\":200}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cart.Melon", is(200)))
+                .andExpect(jsonPath("$.count", is(200)));
+
+        // list format stays the default for clients that don't ask for quantities
+        mvc.perform(get("/api/cart").header("X-User-Id", "qty-user").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.cart.length()", is(200)));
+        mvc.perform(get("/api/cart").header("X-User-Id", "qty-user").accept(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.cart[0]", is("Melon")));
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void oversizedQuantitiesReturn400() throws Exception {
+        mvc.perform(post("/api/cart/items").header("X-User-Id", "huge-user")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"item\":\"Melon\",\"qty\":10001}"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(post("/api/cart/total").contentType(CartMediaTypes.QUANTITIES_JSON)
+                        .content("{\"Melon\":99999999999}"))
+                .andExpect(status().isBadRequest());
+        // a repeated name adds up, and the sum is capped too
+        mvc.perform(post("/api/cart/total").contentType(CartMediaTypes.QUANTITIES_JSON)
+                        .content("{\"Melon\":10000,\"Melon\":10000}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Quantity must be at most 10000: Melon")));
+
+        // each add is within bounds; the line may not grow past MAX_QTY, and a refused add changes nothing
+        String add = "{\"item\":\"Melon\",\"qty\":6000}";
+        mvc.perform(post("/api/cart/items").header("X-User-Id", "huge-user")
+                        .contentType(MediaType.APPLICATION_JSON).accept(CartMediaTypes.QUANTITIES_JSON).content(add))
+                .andExpect(status().isOk());
+        mvc.perform(post("/api/cart/items").header("X-User-Id", "huge-user")
+                        .contentType(MediaType.APPLICATION_JSON).accept(CartMediaTypes.QUANTITIES_JSON).content(add))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/cart").header("X-User-Id", "huge-user").accept(CartMediaTypes.QUANTITIES_JSON))
+                .andExpect(jsonPath("$.cart.Melon", is(6000)));
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void batchStreamsOneLinePerBasketWithInlineErrors() throws Exception {
+        String body = """
+            [{"items":["Melon","Melon"]},{"items":["Orange"]},{"items":null},{"items":["Lime","Lime","Lime"]}]
+            """;
+        MvcResult started = mvc.perform(post("/api/cart/total/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String ndjson = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.strip().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("{\"index\":0,\"result\":{") && lines[0].contains("\"totalPence\":50"));
+        assertTrue(lines[1].contains("\"error\":\"Unknown item: Orange\""));
+        assertTrue(lines[2].contains("\"index\":2,\"error\""));
+        assertTrue(lines[3].contains("\"totalPence\":30"));
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void conditionalRequestsUseTheCartVersion() throws Exception {
+        String added = mvc.perform(post("/api/cart/items")
+                        .header("X-User-Id", "etag-user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"item\":\"Melon\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mvc.perform(get("/api/cart").header("X-User-Id", "etag-user").header("If-None-Match", added))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", added))
+                .andExpect(content().string(""));
+
+        String total = mvc.perform(post("/api/cart/total").header("X-User-Id", "etag-user")
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalPence", is(50)))
+                .andReturn().getResponse().getHeader("ETag");
+        mvc.perform(post("/api/cart/total").header("X-User-Id", "etag-user").header("If-None-Match", total)
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isNotModified());
+        // another language is another representation
+        mvc.perform(post("/api/cart/total").header("X-User-Id", "etag-user").header("If-None-Match", total)
+                        .header("Accept-Language", "de-DE")
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isOk());
+        // so is the same total after the FX rates change
+        String euros = mvc.perform(post("/api/cart/total").param("currency", "EUR").header("X-User-Id", "etag-user")
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(jsonPath("$.totalPence", is(58)))
+                .andReturn().getResponse().getHeader("ETag");
+        try {
+            fx.update(Map.of("EUR", new BigDecimal("2"), "JPY", new BigDecimal("190")));
+            mvc.perform(post("/api/cart/total").param("currency", "EUR").header("X-User-Id", "etag-user")
+                            .header("If-None-Match", euros)
+                            .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalPence", is(100)));
+        } finally {
+            fx.update(Map.of("EUR", new BigDecimal("1.17"), "JPY", new BigDecimal("190")));
+        }
+
+        // If-Match compares strongly: the same tag marked weak does not match
+        mvc.perform(delete("/api/cart/items/Melon")
+                        .header("X-User-Id", "etag-user").header("If-Match", "W/" + added))
+                .andExpect(status().isPreconditionFailed());
+
+        String removed = mvc.perform(delete("/api/cart/items/Melon")
+                        .header("X-User-Id", "etag-user").header("If-Match", added))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(0)))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotEquals(added, removed);
+
+        // a client still holding the old version is refused, and the cart is untouched
+        mvc.perform(post("/api/cart/items")
+                        .header("X-User-Id", "etag-user").header("If-Match", added)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"item\":\"Lime\"}"))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(get("/api/cart").header("X-User-Id", "etag-user").header("If-None-Match", added))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", removed))
+                .andExpect(jsonPath("$.count", is(0)));
+        mvc.perform(post("/api/cart/total").header("X-User-Id", "etag-user").header("If-None-Match", total)
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalPence", is(0)));
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void patchAppliesOpsAndReturnsCartWithBill() throws Exception {
+        String body = """
+            {"ops":[{"op":"add","item":"Melon","qty":3},{"op":"add","item":"lime"},
+                    {"op":"set","item":"Apple","qty":2},{"op":"remove","item":"Melon"}]}
+            """;
+        mvc.perform(patch("/api/cart").header("X-User-Id", "patch-user")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.cart.Melon", is(2)))
+                .andExpect(jsonPath("$.cart.Lime", is(1)))
+                .andExpect(jsonPath("$.cart.Apple", is(2)))
+                .andExpect(jsonPath("$.count", is(5)))
+                .andExpect(jsonPath("$.bill.totalPence", is(50 + 15 + 70)))
+                .andExpect(jsonPath("$.bill.lines.length()", is(3)));
+
+        // one bad op rejects the whole request
+        mvc.perform(patch("/api/cart").header("X-User-Id", "patch-user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ops\":[{\"op\":\"clear\"},{\"op\":\"add\",\"item\":\"Orange\"}]}"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(patch("/api/cart").header("X-User-Id", "patch-user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ops\":[{\"op\":\"set\",\"item\":\"Lime\"}]}"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(patch("/api/cart").header("X-User-Id", "patch-user")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ops\":[{\"op\":\"set\",\"item\":\"Apple\",\"qty\":9},"
+                                + "{\"op\":\"add\",\"item\":\"Lime\",\"qty\":2147483647}]}"))
+                .andExpect(status().isBadRequest());
+
+        // an empty list reads
+        mvc.perform(patch("/api/cart").header("X-User-Id", "patch-user")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"ops\":[]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(5)));
+
+        mvc.perform(patch("/api/cart").header("X-User-Id", "patch-user")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"ops\":[{\"op\":\"clear\"}]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(0)))
+                .andExpect(jsonPath("$.bill.totalPence", is(0)));
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void eventsPushWholeCartThenCoalescedDeltas() throws Exception {
+        mvc.perform(post("/api/cart/items").header("X-User-Id", "sse-user")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"item\":\"Apple\"}"))
+                .andExpect(status().isOk());
+
+        MvcResult stream = mvc.perform(get("/api/cart/events").header("X-User-Id", "sse-user")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String first = awaitEvents(stream, 1);
+        assertTrue(first.contains("\"full\":true") && first.contains("\"item\":\"Apple\""), first);
+
+        // a burst of changes arrives as one delta
+        mvc.perform(patch("/api/cart").header("X-User-Id", "sse-user")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"ops\":[{\"op\":\"set\",\"item\":\"Apple\",\"qty\":0},{\"op\":\"add\",\"item\":\"Melon\"}]}"));
+        mvc.perform(post("/api/cart/items").header("X-User-Id", "sse-user")
+                .contentType(MediaType.APPLICATION_JSON).content("{\"item\":\"Melon\"}"));
+        String[] events = awaitEvents(stream, 2).split("\n\n");
+        String delta = events[1];
+        assertTrue(delta.contains("\"full\":false"), delta);
+        assertTrue(delta.contains("\"removed\":[\"Apple\"]"), delta);
+        assertTrue(delta.contains("\"item\":\"Melon\",\"qty\":2"), delta);
+        assertTrue(delta.contains("\"totalPence\":50"), delta);
+        Thread.sleep(200);
+        assertEquals(2, stream.getResponse().getContentAsString().strip().split("\n\n").length);
+    }
+
+    @Test
+    @WithMockUser(username = "flooder", roles = "USER")
+    void floodingUserGets429WithRetryAfter() throws Exception {
+        // ~240KB of basket costs more than the whole burst: let in once, then the user is in debt
+        String body = "{\"items\":[" + "\"Apple\",".repeat(30_000) + "\"Apple\"]}";
+        mvc.perform(post("/api/cart/total").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk());
+
+        mvc.perform(post("/api/cart/total").contentType(MediaType.APPLICATION_JSON).content("{\"items\":[\"Apple\"]}"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.status", is(429)))
+                .andExpect(jsonPath("$.path", is("/api/cart/total")));
+    }
+
+    /** The stream's content once it holds n events. */
+    private static String awaitEvents(MvcResult stream, int n) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (true) {
+            String body = stream.getResponse().getContentAsString();
+            // an event is written in parts: wait for the blank line that ends it
+            boolean whole = body.split("event:cart", -1).length > n && body.endsWith("\n\n");
+            if (whole || System.nanoTime() > deadline) return body;
+            Thread.sleep(10);
+        }
+    }
 }
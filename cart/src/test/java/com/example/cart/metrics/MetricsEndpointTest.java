@@ -0,0 +1,67 @@
+package com.example.cart.metrics;
+
+import com.example.cart.ShoppingCartApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = ShoppingCartApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "management.server.port=0")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class MetricsEndpointTest {
+
+    @Autowired MockMvc mvc;
+    @LocalServerPort int port;
+    @LocalManagementPort int managementPort;
+
+    @Test
+    @WithMockUser(username = "testuser", roles = "USER")
+    void scrapeShowsPricingStoreAndRejections() throws Exception {
+        mvc.perform(post("/api/cart/items").header("X-User-Id", "metrics-user")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"item\":\"Melon\",\"qty\":4}"))
+                .andExpect(status().isOk());
+        mvc.perform(post("/api/cart/total").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[\"Melon\",\"Melon\",\"Lime\"]}"))
+                .andExpect(status().isOk());
+        mvc.perform(post("/api/cart/total").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[\"Orange\"]}"))
+                .andExpect(status().isBadRequest());
+
+        // no credentials needed for the scrape on the management port; the public port does not serve it
+        HttpClient http = HttpClient.newHttpClient();
+        assertNotEquals(200, scrape(http, port).statusCode());
+        HttpResponse<String> scraped = scrape(http, managementPort);
+        assertEquals(200, scraped.statusCode());
+        String body = scraped.body();
+        assertTrue(body.matches("(?s).*cart_pricing_seconds_count\\{[^}]*} [1-9].*"));
+        assertTrue(body.contains("cart_pricing_seconds_bucket"));
+        assertTrue(body.matches("(?s).*cart_offers_applied_total\\{[^}]*offer=\"BOGO\"[^}]*} [1-9].*"));
+        assertTrue(body.matches("(?s).*cart_items_unknown_total\\{[^}]*} [1-9].*"));
+        assertTrue(body.matches("(?s).*cart_store_units\\{[^}]*} [1-9].*"));
+        assertTrue(body.contains("cart_store_carts"));
+        assertTrue(body.contains("http_server_requests_seconds_bucket"));
+    }
+
+    private static HttpResponse<String> scrape(HttpClient http, int port) throws Exception {
+        return http.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/prometheus")).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
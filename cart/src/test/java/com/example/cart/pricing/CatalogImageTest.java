@@ -0,0 +1,126 @@
+package com.example.cart.pricing;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogImageTest {
+
+    private static final int SKUS = 200_000;
+
+    @Test
+    @DisplayName("Every SKU of a large catalog resolves through the mapped perfect hash; strangers do not")
+    void lookupsResolveEverySku(@TempDir Path dir) throws IOException {
+        CatalogSnapshot catalog = compile(dir, SKUS, 0);
+
+        assertEquals(SKUS, catalog.skuCount());
+        for (int i = 0; i < SKUS; i++) {
+            int id = catalog.idOf(name(i));
+            assertEquals(name(i), catalog.nameOf(id));
+            assertEquals(price(i), catalog.priceOf(id));
+        }
+        assertEquals(catalog.idOf("Sku-00042"), catalog.findId("  sKU-00042\t"));
+        assertEquals(catalog.idOf("Sku-00042"), catalog.findId("xxSKU-00042yy".toCharArray(), 2, 9));
+        assertEquals(-1, catalog.findId("Sku-0004"));
+        assertEquals(-1, catalog.findId("Sku-000420"));
+        assertEquals(-1, catalog.findId("Orange"));
+    }
+
+    @Test
+    @DisplayName("Canonical names, offers and non-ASCII names come from the data file")
+    void namesAndOffersFromData(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("catalog.csv");
+        Files.writeString(csv, """
+                # name,pricePence,offer
+                Melon,50,BOGO
+                Lime,15,THREE_FOR_TWO
+                Crème Brûlée,250
+                """);
+        CatalogImage.compile(csv, dir.resolve("catalog.idx"), null);
+        CatalogSnapshot catalog = CatalogSnapshot.mapped(null, CatalogImage.map(dir.resolve("catalog.idx")));
+
+        assertEquals("Melon", catalog.nameOf(catalog.idOf(" melon ")));
+        assertEquals(1, catalog.offerOf("MELON").chargeableQuantity(2));
+        assertEquals(2, catalog.offerOf("lime").chargeableQuantity(3));
+        assertEquals("Crème Brûlée", catalog.nameOf(catalog.idOf("CRÈME BRÛLÉE")));
+        assertEquals(250, catalog.priceOf(catalog.idOf("crème brûlée")));
+    }
+
+    @Test
+    @DisplayName("Recompiling against the running catalog keeps SKU ids and retires dropped items")
+    void recompileKeepsIds(@TempDir Path dir) throws IOException {
+        CatalogSnapshot v1 = compile(dir, 1_000, 0);
+        int kept = v1.idOf(name(500));
+        int dropped = v1.idOf(name(0));
+
+        // drop Sku-00000, reprice the rest, add 10 new SKUs
+        Path csv = dir.resolve("catalog.csv");
+        write(csv, 1, 1_010, 7);
+        CatalogImage.compile(csv, dir.resolve("v2.idx"), v1);
+        CatalogSnapshot v2 = CatalogSnapshot.mapped(v1, CatalogImage.map(dir.resolve("v2.idx")));
+
+        assertEquals(v1.version() + 1, v2.version());
+        assertEquals(kept, v2.idOf(name(500)));
+        assertEquals(price(500) + 7, v2.priceOf(kept));
+        assertEquals(-1, v2.findId(name(0)));
+        assertEquals(name(0), v2.nameOf(dropped));
+        assertEquals(1_000, v2.idOf(name(1_000)));
+
+        // an image built without the running catalog would renumber: refused
+        CatalogImage.compile(csv, dir.resolve("fresh.idx"), null);
+        MappedSkuTable fresh = CatalogImage.map(dir.resolve("fresh.idx"));
+        assertThrows(IllegalArgumentException.class, () -> CatalogSnapshot.mapped(v2, fresh));
+    }
+
+    @Test
+    @DisplayName("Lookups allocate nothing")
+    void lookupsDoNotAllocate(@TempDir Path dir) throws IOException {
+        CatalogSnapshot catalog = compile(dir, 10_000, 0);
+        String[] names = new String[10_000];
+        for (int i = 0; i < names.length; i++) names[i] = name(i).toUpperCase();
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sum = 0;
+        for (int round = 0; round < 20; round++) { // warm up so escape analysis has kicked in
+            for (String n : names) sum += catalog.findId(n);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (String n : names) sum += catalog.findId(n) + catalog.priceOf(catalog.findId(n));
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(sum != 0);
+        assertTrue(allocated < 1024, () -> allocated + " bytes allocated by 20k lookups");
+    }
+
+    private static CatalogSnapshot compile(Path dir, int skus, int priceDelta) throws IOException {
+        Path csv = dir.resolve("catalog.csv");
+        write(csv, 0, skus, priceDelta);
+        Path image = dir.resolve("catalog.idx");
+        CatalogImage.compile(csv, image, null);
+        return CatalogSnapshot.mapped(null, CatalogImage.map(image));
+    }
+
+    private static void write(Path csv, int from, int to, int priceDelta) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(csv)) {
+            for (int i = from; i < to; i++) {
+                out.write(name(i) + "," + (price(i) + priceDelta) + (i % 3 == 0 ? ",BOGO" : "") + "\n");
+            }
+        }
+    }
+
+    private static String name(int i) {
+        return "Sku-%05d".formatted(i);
+    }
+
+    private static int price(int i) {
+        return 10 + i % 990;
+    }
+}
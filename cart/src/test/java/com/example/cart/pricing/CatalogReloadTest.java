@@ -0,0 +1,175 @@
+package com.example.cart.pricing;
+
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartLine;
+import com.example.cart.metrics.CartMetrics;
+import com.example.cart.pricing.promotions.PromotionEngine;
+import com.example.cart.service.BillCache;
+import com.example.cart.service.ShoppingCartService;
+import com.example.cart.store.CartStore;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = {PriceCatalog.class, CatalogWatcher.class})
+class CatalogReloadTest {
+
+    private static final Path FILE;
+
+    static {
+        try {
+            FILE = Files.createTempDirectory("catalog").resolve("price-catalog.properties");
+            write(10, "");
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void catalogFile(DynamicPropertyRegistry registry) {
+        registry.add("cart.catalog.file", FILE::toString);
+    }
+
+    @Autowired
+    private PriceCatalog catalog;
+
+    @BeforeEach
+    void reset() throws IOException {
+        write(10, "");
+        catalog.reload();
+    }
+
+    @AfterAll
+    static void cleanUp() throws IOException {
+        Files.deleteIfExists(FILE);
+        Files.deleteIfExists(FILE.getParent());
+    }
+
+    @Test
+    @DisplayName("Editing the file publishes a new version; SKU ids survive, removed items retire")
+    void watcherReloadsFile() throws Exception {
+        CatalogSnapshot before = catalog.snapshot();
+        int melon = before.idOf("melon");
+
+        Files.writeString(FILE, """
+                prices={melon:60, kiwi:25}
+                offers={melon:'BOGO'}
+                """);
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (catalog.snapshot().version() == before.version() && System.nanoTime() < deadline) Thread.sleep(20);
+
+        CatalogSnapshot after = catalog.snapshot();
+        assertTrue(after.version() > before.version());
+        assertEquals(melon, after.idOf("Melon"));
+        assertEquals(60, after.priceOf(melon));
+        assertEquals("Kiwi", after.nameOf(after.idOf("kiwi")));
+        assertEquals(before.skuCount(), after.idOf("kiwi")); // new SKUs are appended
+        assertEquals(-1, after.findId("apple"));             // retired...
+        assertEquals("Apple", after.nameOf(before.idOf("apple"))); // ...but still named for old carts
+        assertEquals(10, before.priceOf(melon));             // old snapshot is untouched
+    }
+
+    @Test
+    @DisplayName("A bad file is rejected and the current version keeps serving")
+    void badFileKeepsCurrentVersion() throws IOException {
+        CatalogSnapshot before = catalog.snapshot();
+        Files.writeString(FILE, "prices={melon:-5}\n");
+        assertThrows(IllegalArgumentException.class, catalog::reload);
+        assertSame(before, catalog.snapshot());
+    }
+
+    @Test
+    @DisplayName("The file is read as data: an expression in it is rejected, never evaluated")
+    void expressionsAreNotEvaluated() throws IOException {
+        CatalogSnapshot before = catalog.snapshot();
+        Path marker = FILE.resolveSibling("evaluated");
+        Files.writeString(FILE, "prices={melon:T(java.nio.file.Files).createFile(T(java.nio.file.Path).of('"
+                + marker.toString().replace("\\", "/") + "')).hashCode()}\n");
+        assertThrows(IllegalStateException.class, catalog::reload);
+        assertFalse(Files.exists(marker));
+        assertSame(before, catalog.snapshot());
+    }
+
+    @Test
+    @DisplayName("Every bill is priced against exactly one version while reloads race it")
+    void pricingPinsOneSnapshot() throws Exception {
+        ShoppingCartService service = new ShoppingCartService(catalog, PromotionEngine.NONE, CartMetrics.NONE,
+                new BillCache(DataSize.ofMegabytes(1)));
+        List<String> basket = List.of("Apple", "Banana", "Melon", "Lime", "Apple", "Lime");
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread reloader = Thread.ofPlatform().start(() -> {
+            try {
+                for (int i = 0; !stop.get(); i++) {
+                    write(i % 2 == 0 ? 20 : 10, "");
+                    catalog.reload();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                Bill bill = service.price(basket);
+                int unit = bill.lines().get(0).unitPricePence();
+                for (CartLine line : bill.lines()) assertEquals(unit, line.unitPricePence(), "mixed versions");
+                assertEquals(unit * 6, bill.totalPence());
+            }
+        } finally {
+            stop.set(true);
+            reloader.join();
+        }
+    }
+
+    @Test
+    @DisplayName("Stored carts re-price against the new version on next read")
+    void storedCartFollowsReload() throws IOException {
+        CartStore store = new CartStore(catalog);
+        store.add("u1", "Apple", 3);
+        assertEquals(30, store.bill("u1").totalPence());
+        long v1 = store.bill("u1").catalogVersion();
+
+        write(15, "");
+        catalog.reload();
+        Bill bill = store.bill("u1");
+        assertEquals(45, bill.totalPence());
+        assertEquals(catalog.snapshot().version(), bill.catalogVersion());
+        assertTrue(bill.catalogVersion() > v1);
+    }
+
+    @Test
+    @DisplayName("A reload invalidates cached bills")
+    void cachedBillFollowsReload() throws IOException {
+        BillCache cache = new BillCache(DataSize.ofMegabytes(1));
+        ShoppingCartService service = new ShoppingCartService(catalog, PromotionEngine.NONE, CartMetrics.NONE, cache);
+        List<String> basket = List.of("Melon", "Melon", "Lime");
+        Bill before = service.price(basket);
+        assertSame(before, service.price(basket));
+
+        write(10, "melon:'BOGO'");
+        catalog.reload();
+        Bill after = service.price(basket);
+        assertEquals(20, after.totalPence());
+        assertEquals(catalog.snapshot().version(), after.catalogVersion());
+        assertEquals(1, cache.stats().size()); // the old version's entry was dropped, not kept beside it
+    }
+
+    /** Every item at the same unit price, no offers. */
+    private static void write(int price, String offers) throws IOException {
+        Files.writeString(FILE, "prices={apple:%d, banana:%d, melon:%d, lime:%d}%noffers={%s}%n"
+                .formatted(price, price, price, price, offers));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.cart.pricing.promotions;
+
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartLine;
+import com.example.cart.model.Discount;
+import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.service.ShoppingCartService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = PriceCatalog.class)
+@TestPropertySource(properties = {
+        "prices={apple:35, banana:20, melon:50, lime:15, lemon:40, sandwich:250, drink:120, crisps:80}",
+        "offers={melon:'BOGO', lime:'THREE_FOR_TWO'}",
+})
+class PromotionEngineTest {
+
+    @Autowired
+    private PriceCatalog catalog;
+
+    private ShoppingCartService service(Promotion... promotions) {
+        return new ShoppingCartService(catalog, new PromotionEngine(List.of(promotions)));
+    }
+
+    private static List<String> repeat(String item, int n) {
+        return Collections.nCopies(n, item);
+    }
+
+    @Test
+    @DisplayName("Multi-buy, bundle, percent-off and spend threshold; line totals add up")
+    void promotionTypes() {
+        ShoppingCartService service = service(
+                new Promotion.MultiBuy("lemons-3-for-1", "lemon", 3, 100),
+                new Promotion.Bundle("meal-deal", List.of("sandwich", "drink", "crisps"), 300),
+                new Promotion.PercentOff("apples-10", List.of("apple"), 10),
+                new Promotion.SpendThreshold("spend-10-save-1", 1000, 100));
+
+        // 7 lemons: two groups of 3 for £1, one at 40p
+        assertEquals(240, service.calculateTotalPence(repeat("Lemon", 7)));
+
+        // meal deal: 450p of food for 300p; the saving is shared by price across the three lines
+        Bill meal = service.price(List.of("Sandwich", "Drink", "Crisps"));
+        assertEquals(300, meal.totalPence());
+        assertEquals(150, meal.lines().stream().flatMap(l -> l.discounts().stream()).mapToInt(Discount::savingPence).sum());
+        assertEquals(List.of(new Discount("meal-deal", 84)), meal.lines().get(0).discounts());
+
+        // 10% off apples: 35p -> 31p (3.5p rounds to 4p), so 4 apples = 140 - 16
+        CartLine apples = service.calculateLines(repeat("Apple", 4)).get(0);
+        assertEquals(124, apples.lineTotalPence());
+        assertEquals(List.of(new Discount("apples-10", 16)), apples.discounts());
+
+        // spend threshold reached: 2 meal deals (600) + 10 apples (310) + 3 lemons (100) = 1010, less 100
+        List<String> big = new ArrayList<>();
+        for (int i = 0; i < 2; i++) big.addAll(List.of("Sandwich", "Drink", "Crisps"));
+        big.addAll(repeat("Apple", 10));
+        big.addAll(repeat("Lemon", 3));
+        Bill bill = service.price(big);
+        assertEquals(910, bill.totalPence());
+        assertEquals(bill.totalPence(), bill.lines().stream().mapToInt(CartLine::lineTotalPence).sum());
+        assertTrue(bill.lines().stream().allMatch(l -> l.discounts().stream().anyMatch(d -> d.promotion().equals("spend-10-save-1"))));
+    }
+
+    @Test
+    @DisplayName("A deal only takes units it makes cheaper than the catalog offer")
+    void dealsCompeteWithCatalogOffers() {
+        // limes are 3-for-2 (3 for 30p): "3 for 40p" never helps, "2 for 20p" helps on the units 3-for-2 leaves over
+        assertEquals(60, service(new Promotion.MultiBuy("limes-3-for-40", "lime", 3, 40))
+                .calculateTotalPence(repeat("Lime", 6)));
+        assertEquals(80, service(new Promotion.MultiBuy("limes-2-for-20", "lime", 2, 20))
+                .calculateTotalPence(repeat("Lime", 8)));
+
+        // items without promotions price exactly as before
+        ShoppingCartService plain = new ShoppingCartService(catalog);
+        ShoppingCartService promo = service(new Promotion.MultiBuy("lemons-3-for-1", "lemon", 3, 100));
+        List<String> basket = List.of("Apple", "Melon", "Melon", "Melon", "Lime", "Lime", "Lime", "Banana");
+        assertEquals(plain.price(basket), promo.price(basket));
+    }
+
+    @Test
+    @DisplayName("Overlapping bundles: the solver finds the cheapest assignment, greedy does not")
+    void overlappingDeals() {
+        List<Promotion> deals = List.of(
+                new Promotion.Bundle("drink-crisps", List.of("drink", "crisps"), 110),      // saves 90, taken first by greedy
+                new Promotion.Bundle("sandwich-drink", List.of("sandwich", "drink"), 300),  // saves 70
+                new Promotion.Bundle("crisps-apple", List.of("crisps", "apple"), 45));      // saves 70
+        List<String> basket = List.of("Sandwich", "Drink", "Crisps", "Apple");
+
+        // greedy: drink+crisps 110, sandwich 250, apple 35 = 395; best: sandwich+drink 300, crisps+apple 45 = 345
+        assertEquals(395, new ShoppingCartService(catalog, new PromotionEngine(deals, Duration.ZERO))
+                .calculateTotalPence(basket));
+        PromotionEngine engine = new PromotionEngine(deals, Duration.ofSeconds(1));
+        assertEquals(345, new ShoppingCartService(catalog, engine).calculateTotalPence(basket));
+        assertEquals(0, engine.budgetExhausted());
+
+        // quantities: 4 lemons (40p) with "3 for £1" and "2 for 65p": greedy 100 + 40, best 2 x 65
+        List<Promotion> lemons = List.of(new Promotion.MultiBuy("lemons-3-for-1", "lemon", 3, 100),
+                new Promotion.MultiBuy("lemons-2-for-65", "lemon", 2, 65));
+        assertEquals(140, new ShoppingCartService(catalog, new PromotionEngine(lemons, Duration.ZERO))
+                .calculateTotalPence(repeat("Lemon", 4)));
+        assertEquals(130, new ShoppingCartService(catalog, new PromotionEngine(lemons, Duration.ofSeconds(1)))
+                .calculateTotalPence(repeat("Lemon", 4)));
+    }
+
+    @Test
+    @DisplayName("Promotions file parses; unknown items are skipped, bad lines rejected")
+    void promotionsFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("promotions.csv");
+        Files.writeString(file, """
+                # id,TYPE,...
+                lemons-3-for-1, MULTIBUY, lemon, 3, 100
+                meal-deal,BUNDLE,sandwich+drink+crisps,300
+                kiwi-half,PERCENT,kiwi,50
+                spend-50,SPEND,5000,500
+                """);
+        PromotionEngine engine = new PromotionEngine(file.toString(), Duration.ofMillis(2));
+        assertEquals(4, engine.promotions().size());
+        assertEquals(100, new ShoppingCartService(catalog, engine).calculateTotalPence(repeat("Lemon", 3)));
+
+        Files.writeString(file, "x,MULTIBUY,lemon,3\n");
+        assertThrows(IllegalArgumentException.class, () -> new PromotionEngine(file.toString(), Duration.ofMillis(2)));
+        assertThrows(IllegalArgumentException.class, () -> new PromotionEngine(List.of(
+                new Promotion.SpendThreshold("dup", 100, 10), new Promotion.SpendThreshold("dup", 200, 20))));
+    }
+
+    @Test
+    @DisplayName("Thousands of promotions: a basket only sees those indexed under its SKUs")
+    void manyPromotions() {
+        List<Promotion> many = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) many.add(new Promotion.MultiBuy("ghost-" + i, "ghost-" + i, 2, 1));
+        many.add(new Promotion.MultiBuy("lemons-3-for-1", "lemon", 3, 100));
+        ShoppingCartService service = new ShoppingCartService(catalog, new PromotionEngine(many));
+        assertEquals(100, service.calculateTotalPence(repeat("Lemon", 3)));
+        assertEquals(35, service.calculateTotalPence(List.of("Apple")));
+    }
+}
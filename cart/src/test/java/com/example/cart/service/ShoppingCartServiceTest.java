@@ -1,15 +1,37 @@
 package com.example.cart.service;
 
+import com.example.cart.model.BatchTotalResult;
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartDelta;
 import com.example.cart.model.CartLine;
+import com.example.cart.model.CartRequest;
+import com.example.cart.metrics.CartMetrics;
+import com.example.cart.pricing.FxRates;
 import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.promotions.PromotionEngine;
+import com.example.cart.store.CartStore;
+import com.example.cart.store.Versioned;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static java.util.List.of;
 import static org.junit.jupiter.api.Assertions.*;
@@ -116,6 +138,17 @@ class ShoppingCartServiceTest {
         assertEquals(45, lime.lineTotalPence());
     }
 
+    @Test
+    @DisplayName("Single pass -> lines and total agree, names resolved case/space-insensitively")
+    void singlePassBill() {
+        Bill bill = service.price(of(" lime", "Melon", "LIME ", "melon", "Lime", "Apple"));
+
+        assertEquals(30 + 50 + 35, bill.totalPence());
+        assertEquals(List.of("Lime", "Melon", "Apple"), bill.lines().stream().map(CartLine::item).toList());
+        assertEquals(bill.totalPence(), bill.lines().stream().mapToInt(CartLine::lineTotalPence).sum());
+        assertEquals(bill.totalPence(), service.calculateTotalPence(of(" lime", "Melon", "LIME ", "melon", "Lime", "Apple")));
+    }
+
     @Test
     @DisplayName("Unknown item -> throws IllegalArgumentException")
     void unknownItem() {
@@ -125,4 +158,164 @@ class ShoppingCartServiceTest {
         );
         assertTrue(ex.getMessage().toLowerCase().contains("unknown item"));
     }
+
+    @Test
+    @DisplayName("Cached bill -> same basket in any order is priced once, lines follow the basket's order")
+    void cachedBill() {
+        BillCache cache = new BillCache(DataSize.ofMegabytes(1));
+        ShoppingCartService cached = new ShoppingCartService(priceCatalog, PromotionEngine.NONE, CartMetrics.NONE, cache);
+
+        Bill first = cached.price(of("Melon", "Lime", "Melon", "Apple"));
+        Bill again = cached.price(of("Melon", "Lime", "Melon", "Apple"));
+        Bill reordered = cached.price(of("Apple", "Melon", "Melon", "Lime"));
+
+        assertSame(first, again);
+        assertEquals(first.totalPence(), reordered.totalPence());
+        assertEquals(List.of("Apple", "Melon", "Lime"), reordered.lines().stream().map(CartLine::item).toList());
+        assertEquals(service.price(of("Apple", "Melon", "Melon", "Lime")), reordered);
+        assertNotEquals(first.totalPence(), cached.price(of("Melon", "Lime", "Apple", "Apple")).totalPence());
+
+        BillCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(2, stats.size());
+        assertTrue(stats.estimatedBytes() > 0);
+    }
+
+    @Test
+    @DisplayName("Batch: once the client is gone only the window already queued was priced; other errors stay generic")
+    void batchStopsWhenSinkFailsAndHidesInternalErrors() {
+        AtomicInteger priced = new AtomicInteger();
+        ShoppingCartService counting = new ShoppingCartService(priceCatalog) {
+            @Override
+            public Bill price(List<String> items) {
+                priced.incrementAndGet();
+                if (items.contains("Boom")) throw new IllegalStateException("secret internals");
+                return super.price(items);
+            }
+        };
+        BatchPricingService batch = new BatchPricingService(counting, new FxRates("GBP", ""), CartMetrics.NONE, 2, 10_000, 4);
+        try {
+            List<CartRequest> baskets = IntStream.range(0, 1_000).mapToObj(i -> new CartRequest(of("Apple"))).toList();
+            assertThrows(UncheckedIOException.class, () -> batch.priceAll(baskets, true, "GBP", Locale.UK, r -> {
+                throw new UncheckedIOException(new IOException("client went away"));
+            }));
+            assertTrue(priced.get() <= 5, "priced " + priced.get());
+
+            List<BatchTotalResult> results = new ArrayList<>();
+            batch.priceAll(of(new CartRequest(of("Orange")), new CartRequest(of("Boom"))), true, "GBP", Locale.UK, results::add);
+            assertEquals("Unknown item: Orange", results.get(0).error());
+            assertEquals("Internal error pricing this basket", results.get(1).error());
+        } finally {
+            batch.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Events: changes within the coalesce window are one delta, built from one bill read for every subscriber")
+    void eventsCoalesceAndReadTheBillOnce() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        CartStore store = new CartStore(priceCatalog) {
+            @Override
+            public Versioned<Bill> versionedBill(String userId) {
+                reads.incrementAndGet();
+                return super.versionedBill(userId);
+            }
+        };
+        CartEventService events = new CartEventService(store, new FxRates("GBP", ""),
+                Duration.ofMillis(200), Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofSeconds(10));
+        events.start();
+        try {
+            RecordingEmitter a = new RecordingEmitter(null);
+            RecordingEmitter b = new RecordingEmitter(null);
+            events.subscribe("u1", "GBP", Locale.UK, a);
+            events.subscribe("u1", "GBP", Locale.UK, b);
+            a.await(1);
+            b.await(1);
+            assertEquals(2, reads.get()); // each subscriber's full cart
+
+            store.add("u1", "Apple", 1);
+            store.add("u1", "Melon", 2);
+            store.add("u1", "Apple", 1);
+            for (RecordingEmitter emitter : of(a, b)) {
+                CartDelta delta = emitter.await(2).get(1);
+                assertFalse(delta.full());
+                assertEquals(4, delta.count());
+                assertEquals(120, delta.totalPence()); // 2 apples, melons buy-one-get-one
+            }
+            assertEquals(3, reads.get()); // one flush, one read
+            Thread.sleep(300);
+            assertEquals(2, a.deltas.size());
+        } finally {
+            events.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Events: a subscriber stuck in a write past max-lag is dropped; the others keep receiving")
+    void eventsDropABlockedSubscriber() throws Exception {
+        CartStore store = new CartStore(priceCatalog);
+        CartEventService events = new CartEventService(store, new FxRates("GBP", ""),
+                Duration.ofMillis(10), Duration.ofMinutes(1), Duration.ofMillis(50), Duration.ofMillis(200));
+        events.start();
+        CountDownLatch unblock = new CountDownLatch(1);
+        try {
+            RecordingEmitter stuck = new RecordingEmitter(unblock);
+            RecordingEmitter healthy = new RecordingEmitter(null);
+            events.subscribe("u1", "GBP", Locale.UK, stuck);
+            events.subscribe("u1", "GBP", Locale.UK, healthy);
+            healthy.await(1);
+
+            store.add("u1", "Apple", 1);
+            assertEquals(35, healthy.await(2).get(1).totalPence());
+            assertTrue(stuck.failed.await(5, TimeUnit.SECONDS), "blocked subscriber was not dropped");
+            assertEquals(1, events.subscriptions());
+
+            store.add("u1", "Lime", 1);
+            assertEquals(50, healthy.await(3).get(2).totalPence());
+            assertTrue(stuck.deltas.isEmpty());
+        } finally {
+            unblock.countDown();
+            events.shutdown();
+        }
+    }
+
+    /** Records the deltas sent to it; with a latch, every send blocks until it opens. */
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<CartDelta> deltas = new CopyOnWriteArrayList<>();
+        final CountDownLatch failed = new CountDownLatch(1);
+        private final CountDownLatch blockedUntil;
+
+        RecordingEmitter(CountDownLatch blockedUntil) {
+            this.blockedUntil = blockedUntil;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (blockedUntil != null) {
+                try {
+                    blockedUntil.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof CartDelta delta) deltas.add(delta);
+            }
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            failed.countDown();
+        }
+
+        List<CartDelta> await(int n) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (deltas.size() < n) {
+                assertTrue(System.nanoTime() < deadline, "waited for " + n + " events, got " + deltas);
+                Thread.sleep(10);
+            }
+            return deltas;
+        }
+    }
 }
@@ -0,0 +1,456 @@
+package com.example.cart.store;
+
+import com.example.cart.metrics.CartMetrics;
+import com.example.cart.model.Bill;
+import com.example.cart.model.CartOperation;
+import com.example.cart.model.CartQuantitiesView;
+import com.example.cart.model.CartView;
+import com.example.cart.pricing.PriceCatalog;
+import com.example.cart.pricing.SkuCounts;
+import com.example.cart.pricing.promotions.PromotionEngine;
+import com.example.cart.service.ShoppingCartService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = PriceCatalog.class)
+@TestPropertySource(locations = "classpath:price-catalog.properties")
+class CartStoreTest {
+
+    @Autowired
+    private PriceCatalog catalog;
+
+    private CartStore store;
+
+    @BeforeEach
+    void setUp() {
+        this.store = new CartStore(catalog);
+    }
+
+    @Test
+    @DisplayName("Add/remove keep canonical names grouped by first-added item")
+    void addAndRemove() {
+        store.add("u1", "apple", 1);
+        store.add("u1", " Melon ", 1);
+        store.add("u1", "APPLE", 1);
+
+        CartView view = view("u1");
+        assertEquals(List.of("Apple", "Apple", "Melon"), view.cart());
+        assertEquals(3, view.count());
+
+        view = store.toView(store.remove("u1", "apple"));
+        assertEquals(List.of("Apple", "Melon"), view.cart());
+
+        view = store.toView(store.remove("u1", "Orange")); // unknown -> no-op
+        assertEquals(2, view.count());
+    }
+
+    private CartView view(String userId) {
+        return store.toView(store.counts(userId));
+    }
+
+    @Test
+    @DisplayName("Quantity view is name -> qty in first-added order")
+    void quantitiesView() {
+        store.add("u1", "Melon", 200);
+        store.add("u1", "lime", 3);
+
+        CartQuantitiesView view = store.toQuantities(store.counts("u1"));
+        assertEquals(List.of("Melon", "Lime"), List.copyOf(view.cart().keySet()));
+        assertEquals(200, view.cart().get("Melon"));
+        assertEquals(203, view.count());
+    }
+
+    @Test
+    @DisplayName("Unknown item cannot be added")
+    void unknownItemRejected() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> store.add("u1", "Orange", 1));
+        assertTrue(ex.getMessage().contains("Unknown item"));
+        assertEquals(0, view("u1").count());
+    }
+
+    @Test
+    @DisplayName("Large quantities cost one line, not one entry per unit")
+    void largeQuantity() {
+        for (int i = 0; i < 9_000; i++) store.add("u1", "Lime", 1);
+        store.add("u1", "Lime", 1_000);
+
+        SkuCounts counts = store.counts("u1");
+        assertEquals(1, counts.size());
+        assertEquals(10_000, counts.totalUnits());
+        assertEquals(10_000, view("u1").count());
+        assertEquals("Lime", view("u1").cart().get(9_999));
+    }
+
+    @Test
+    @DisplayName("Carts are isolated per user and clear empties in place")
+    void clearAndIsolation() {
+        store.add("u1", "Banana", 1);
+        store.add("u2", "Banana", 1);
+        store.clear("u1");
+
+        assertEquals(0, view("u1").count());
+        assertEquals(1, view("u2").count());
+    }
+
+    @Test
+    @DisplayName("Running bill matches a full re-price after every mutation")
+    void runningBillMatchesFullPrice() {
+        ShoppingCartService service = new ShoppingCartService(catalog);
+        String[] fruits = {"Apple", "Banana", "Melon", "Lime"};
+        Random rnd = new Random(42);
+
+        for (int i = 0; i < 2_000; i++) {
+            String fruit = fruits[rnd.nextInt(fruits.length)];
+            if (rnd.nextInt(3) == 0) store.remove("u1", fruit);
+            else store.add("u1", fruit, 1);
+
+            Bill expected = service.price(store.counts("u1"));
+            Bill running = store.bill("u1");
+            assertEquals(expected.totalPence(), running.totalPence());
+            assertEquals(expected.lines(), running.lines());
+        }
+
+        store.clear("u1");
+        assertEquals(List.of(), store.bill("u1").lines());
+        assertEquals(0, store.bill("u1").totalPence());
+    }
+
+    @Test
+    @DisplayName("Unchanged cart returns the same bill instance")
+    void billIsCachedUntilMutation() {
+        store.add("u1", "Melon", 1);
+        Bill first = store.bill("u1");
+        assertSame(first, store.bill("u1"));
+
+        store.add("u1", "Melon", 1);
+        Bill second = store.bill("u1");
+        assertNotSame(first, second);
+        assertEquals(50, second.totalPence()); // BOGOF
+    }
+
+    @Test
+    @DisplayName("Contended cart on virtual threads: no lost updates, no pinned carriers")
+    void virtualThreadsDoNotPin() throws Exception {
+        Path jfr = Files.createTempFile("pinning", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            try (ExecutorService vts = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < 2_000; i++) {
+                    vts.submit(() -> {
+                        store.add("hot", "Lime", 1);
+                        store.bill("hot");
+                        LockSupport.parkNanos(10_000); // yield so carriers interleave
+                        return store.add("hot", "Apple", 1);
+                    });
+                }
+            }
+
+            recording.stop();
+            recording.dump(jfr);
+            List<RecordedEvent> pinned = RecordingFile.readAllEvents(jfr);
+            assertTrue(pinned.isEmpty(), () -> "carrier pinned: " + pinned.get(0));
+        } finally {
+            Files.deleteIfExists(jfr);
+        }
+
+        assertEquals(4_000, store.counts("hot").totalUnits());
+    }
+
+    @Test
+    @DisplayName("Journal restores carts after restart, from snapshot plus tail, past a torn record")
+    void journalRecovery(@TempDir Path dir) throws Exception {
+        try (MappedCartJournal journal = journal(dir)) {
+            CartStore first = new CartStore(catalog, journal);
+            first.recover();
+            first.add("u1", "Melon", 3);
+            first.add("u2", "Lime", 4);
+            journal.snapshot();                // u1 and u2 now live in the snapshot
+            first.remove("u1", "Melon");
+            first.add("u1", "Apple", 2);
+            first.clear("u2");
+            first.add("u3", "Banana", 1);
+            first.add("u4", "Apple", 1);
+            first.update("u4", List.of(CartOperation.clear(), CartOperation.add("Lime", 2),
+                    CartOperation.set("Melon", 3)), List.of());
+        }
+
+        // simulate a crash mid-append: garbage where the next record would start
+        Path tail;
+        try (Stream<Path> files = Files.list(dir)) {
+            tail = files.filter(f -> f.toString().endsWith(".log")).sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        try (FileChannel ch = FileChannel.open(tail, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            long end = 0;
+            for (ch.read(header.clear(), end); header.getInt(0) > 0; ch.read(header.clear(), end)) {
+                end += 8 + header.getInt(0);
+            }
+            ch.write(ByteBuffer.allocate(8).putInt(0, 24).putInt(4, 0xBAD), end);
+        }
+
+        try (MappedCartJournal journal = journal(dir)) {
+            CartStore second = new CartStore(catalog, journal);
+            second.recover();
+            assertEquals(Map.of("Melon", 2, "Apple", 2), second.toQuantities(second.counts("u1")).cart());
+            assertEquals(0, second.counts("u2").size());
+            assertEquals(1, second.counts("u3").totalUnits());
+            assertEquals(Map.of("Lime", 2, "Melon", 3), second.toQuantities(second.counts("u4")).cart());
+            assertEquals(120, second.bill("u1").totalPence()); // Melon BOGOF 50 + 2 x Apple 35
+        }
+    }
+
+    @Test
+    @DisplayName("Under steady writes, snapshots run once per interval, not back to back")
+    void snapshotsKeepTheirInterval(@TempDir Path dir) throws Exception {
+        try (MappedCartJournal journal = new MappedCartJournal(dir, 1 << 16, false, Duration.ofMillis(5),
+                Duration.ofMillis(200))) {
+            CartStore store = new CartStore(catalog, journal);
+            store.recover();
+            long end = System.nanoTime() + 1_000_000_000L;
+            for (int i = 0; System.nanoTime() < end; i++) {
+                store.add("u" + (i % 100), "Melon", 1);
+                store.remove("u" + (i % 100), "Melon");
+                Thread.sleep(1);
+            }
+        }
+        long generation;
+        try (Stream<Path> files = Files.list(dir)) {
+            generation = files.map(f -> f.getFileName().toString())
+                    .filter(n -> n.startsWith("snapshot-") && n.endsWith(".snap"))
+                    .mapToLong(n -> Long.parseLong(n.substring("snapshot-".length(), n.length() - ".snap".length())))
+                    .max().orElseThrow();
+        }
+        assertTrue(generation <= 10, "snapshot generation " + generation + " after ~5 intervals");
+    }
+
+    private static MappedCartJournal journal(Path dir) {
+        return new MappedCartJournal(dir, 1 << 16, true, Duration.ofMillis(1), Duration.ofHours(1));
+    }
+
+    @Test
+    @DisplayName("SkuCounts keeps order and quantities past the hash-index threshold")
+    void skuCountsIndexed() {
+        SkuCounts counts = new SkuCounts();
+        for (int sku = 0; sku < 50; sku++) counts.add(sku, sku + 1);
+        counts.remove(10, 11); // drop a line
+        counts.remove(20, 5);
+
+        assertEquals(49, counts.size());
+        assertEquals(0, counts.qtyOf(10));
+        assertEquals(16, counts.qtyOf(20));
+        assertEquals(50, counts.qtyOf(49));
+        assertEquals(11, counts.skuAt(10));
+    }
+
+    @Test
+    @DisplayName("Every change moves the version on; If-Match only lets the current one through")
+    void versionsAndIfMatch() {
+        Versioned<SkuCounts> first = store.add("u1", "Apple", 1, List.of());
+        assertEquals(first.version(), store.version("u1"));
+
+        String tag = store.etag(first.version());
+        Versioned<SkuCounts> second = store.add("u1", "Apple", 1, List.of(tag));
+        assertTrue(second.version() > first.version());
+        assertEquals(2, second.value().totalUnits());
+
+        assertThrows(CartVersionMismatchException.class, () -> store.add("u1", "Apple", 1, List.of(tag)));
+        assertThrows(CartVersionMismatchException.class, () -> store.remove("u1", "Orange", List.of(tag)));
+        assertEquals(second.version(), store.version("u1"));
+        assertEquals(2, store.counts("u1").totalUnits());
+
+        assertEquals(second.version(), store.remove("u1", "Orange", List.of("*")).version()); // no-op, no new version
+        assertThrows(CartVersionMismatchException.class,
+                () -> new CartStore(catalog).add("u1", "Apple", 1, List.of(tag))); // another store's tag never matches
+        long cleared = store.clear("u1", List.of(store.etag(second.version()) + ".q"));
+        assertTrue(cleared > second.version());
+    }
+
+    @Test
+    @DisplayName("A batch of ops applies in order, or not at all")
+    void updateIsAllOrNothing() {
+        store.add("u1", "Apple", 1);
+        Versioned<Bill> bill = store.update("u1", List.of(
+                CartOperation.clear(),
+                CartOperation.add("Lime", 4),
+                CartOperation.remove("Lime", 1),
+                CartOperation.remove("Orange", 1),   // not sold: ignored, like remove()
+                CartOperation.set("Melon", 2)), List.of());
+        assertEquals(Map.of("Lime", 3, "Melon", 2), Map.of(
+                bill.value().lines().get(0).item(), bill.value().lines().get(0).qty(),
+                bill.value().lines().get(1).item(), bill.value().lines().get(1).qty()));
+        assertEquals(30 + 50, bill.value().totalPence());
+        assertEquals(store.version("u1"), bill.version());
+
+        assertThrows(IllegalArgumentException.class, () -> store.update("u1",
+                List.of(CartOperation.clear(), CartOperation.add("Orange", 1)), List.of()));
+        assertThrows(CartVersionMismatchException.class, () -> store.update("u1",
+                List.of(CartOperation.clear()), List.of(store.etag(bill.version() - 1))));
+        // limits are checked on where the whole batch ends up, before any op lands
+        assertThrows(IllegalArgumentException.class, () -> store.update("u1", List.of(
+                CartOperation.set("Apple", 3), CartOperation.add("Lime", 6_000), CartOperation.add("Lime", 6_000)), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> store.update("u1", List.of(
+                CartOperation.set("Apple", 3), CartOperation.add("Lime", Integer.MAX_VALUE)), List.of()));
+        assertSame(bill.value(), store.bill("u1"));
+    }
+
+    @Test
+    @DisplayName("Past the memory budget carts spill to disk, reload on access, and stay in journal snapshots")
+    void spillAndReload(@TempDir Path dir) throws Exception {
+        Path journalDir = Files.createDirectory(dir.resolve("journal"));
+        int users = 300;
+        try (FileCartSpill spill = new FileCartSpill(dir.resolve("spill"), Duration.ofHours(1));
+             MappedCartJournal journal = journal(journalDir)) {
+            CartStore bounded = bounded(journal, spill, DataSize.ofKilobytes(16), Duration.ZERO, Duration.ZERO);
+            bounded.recover();
+            try (ExecutorService vts = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int t = 0; t < 8; t++) {
+                    vts.submit(() -> {
+                        for (int u = 0; u < users; u++) bounded.add("u" + u, "Apple", 1);
+                    });
+                }
+            }
+            bounded.cleanUp();
+            CartStore.Stats stats = bounded.stats();
+            assertTrue(stats.resident() < users, "budget never enforced");
+            assertTrue(stats.resident() + stats.spilled() >= users); // reloaded carts keep their file until re-spilled
+            assertTrue(stats.evictedForSize() > 0);
+            assertTrue(stats.estimatedBytes() <= DataSize.ofKilobytes(16).toBytes());
+
+            journal.snapshot(); // most carts are only on disk now
+            for (int u = 0; u < users; u++) assertEquals(8, bounded.counts("u" + u).totalUnits(), "u" + u);
+            assertTrue(bounded.stats().reloads() > 0);
+            assertEquals(users, bounded.userIds().size());
+
+            assertEquals(8, bounded.evict("u0").totalUnits());
+            assertEquals(0, bounded.counts("u0").totalUnits());
+            bounded.close();
+        }
+
+        try (MappedCartJournal journal = journal(journalDir)) {
+            CartStore restarted = new CartStore(catalog, journal);
+            restarted.recover();
+            assertEquals(users - 1, restarted.size());
+            assertEquals(8, restarted.counts("u" + (users - 1)).totalUnits());
+        }
+    }
+
+    @Test
+    @DisplayName("Idle carts spill and come back; carts past the absolute TTL are dropped")
+    void idleAndAbsoluteTtl(@TempDir Path dir) throws Exception {
+        try (FileCartSpill spill = new FileCartSpill(dir, Duration.ofHours(1))) {
+            CartStore idle = bounded(CartJournal.NONE, spill, DataSize.ofBytes(0), Duration.ofMillis(50), Duration.ZERO);
+            long version = idle.add("u1", "Melon", 2, List.of()).version();
+            Thread.sleep(1_500); // the timer wheel's finest buckets span about a second
+            idle.cleanUp();
+            assertEquals(0, idle.size());
+            assertEquals(2, idle.counts("u1").totalUnits());
+            assertEquals(version, idle.version("u1"), "a reloaded cart keeps its version, so its ETag still matches");
+            assertEquals(1, idle.stats().evictedIdle() + idle.stats().evictedForSize());
+            assertEquals(1, idle.stats().reloads());
+            idle.close();
+
+            CartStore absolute = bounded(CartJournal.NONE, spill, DataSize.ofBytes(0), Duration.ofHours(1), Duration.ofMillis(50));
+            absolute.add("u2", "Melon", 2);
+            Thread.sleep(150);
+            assertEquals(0, absolute.counts("u2").totalUnits());
+            assertEquals(1, absolute.stats().expired());
+            assertEquals(0, absolute.stats().reloads());
+            absolute.close();
+        }
+    }
+
+    @Test
+    @DisplayName("A lookup racing the spill of the same cart takes it back whole; nothing is lost under churn")
+    void lookupRacesSpill(@TempDir Path dir) throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (FileCartSpill files = new FileCartSpill(dir, Duration.ofHours(1))) {
+            CartSpill gated = new CartSpill() {
+                @Override public boolean write(Entry entry) {
+                    if (entry.userId().equals("u1") && writing.getCount() > 0) {
+                        writing.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return files.write(entry);
+                }
+                @Override public Entry read(String userId) { return files.read(userId); }
+                @Override public void delete(String userId) { files.delete(userId); }
+                @Override public void forEach(Consumer<Entry> action) { files.forEach(action); }
+                @Override public long size() { return files.size(); }
+                @Override public void close() {}
+            };
+            // a 1-byte budget evicts every cart as soon as it is written
+            CartStore churn = bounded(CartJournal.NONE, gated, DataSize.ofBytes(1), Duration.ZERO, Duration.ZERO);
+            try (ExecutorService vts = Executors.newVirtualThreadPerTaskExecutor()) {
+                // the add's own read-back may already race the spill, so it runs off the test thread too
+                Future<Long> added = vts.submit(() -> churn.add("u1", "Melon", 2).totalUnits());
+                assertTrue(writing.await(5, TimeUnit.SECONDS), "u1 was never spilled");
+
+                // u1 is parked, its file half-written: a lookup now gets the parked cart, not a stale or empty one
+                Future<Long> units = vts.submit(() -> churn.counts("u1").totalUnits());
+                Thread.sleep(50);
+                release.countDown();
+                assertEquals(2, added.get(5, TimeUnit.SECONDS));
+                assertEquals(2, units.get(5, TimeUnit.SECONDS));
+            }
+
+            int threads = 8, adds = 200;
+            try (ExecutorService vts = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int t = 0; t < threads; t++) {
+                    vts.submit(() -> {
+                        for (int i = 0; i < adds; i++) {
+                            churn.add("u" + (i % 4), "Apple", 1);
+                            churn.counts("u" + (i % 4));
+                        }
+                    });
+                }
+            }
+            churn.cleanUp();
+            for (int u = 0; u < 4; u++) {
+                long melons = u == 1 ? 2 : 0;
+                assertEquals(threads * adds / 4 + melons, churn.counts("u" + u).totalUnits(), "u" + u);
+            }
+            assertTrue(churn.stats().reloads() > 0);
+            churn.close();
+        }
+    }
+
+    private CartStore bounded(CartJournal journal, CartSpill spill, DataSize maxSize, Duration idleTtl, Duration absoluteTtl) {
+        return new CartStore(catalog, journal, PromotionEngine.NONE, CartMetrics.NONE, spill, maxSize, idleTtl, absoluteTtl);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.cart.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyFormatTest {
+
+    @Test
+    @DisplayName("Formats exactly as NumberFormat does, across locales, currencies and signs")
+    void matchesNumberFormat() {
+        List<Locale> locales = List.of(Locale.UK, Locale.US, Locale.GERMANY, Locale.FRANCE, Locale.JAPAN,
+                Locale.forLanguageTag("de-CH"), Locale.forLanguageTag("hi-IN"), Locale.forLanguageTag("ar-EG"));
+        List<String> currencies = List.of("GBP", "EUR", "USD", "JPY", "CHF", "BHD");
+        long[] amounts = {0, 5, -5, 235, -235, 123_456, 100_000_000, -987_654_321, Long.MAX_VALUE};
+
+        for (Locale locale : locales) {
+            for (String currency : currencies) {
+                NumberFormat nf = NumberFormat.getCurrencyInstance(locale);
+                nf.setCurrency(Currency.getInstance(currency));
+                int digits = MoneyFormat.fractionDigits(currency);
+                nf.setMinimumFractionDigits(digits);
+                nf.setMaximumFractionDigits(digits);
+                for (long minor : amounts) {
+                    assertEquals(nf.format(BigDecimal.valueOf(minor, digits)), MoneyFormat.format(minor, currency, locale),
+                            () -> minor + " " + currency + " in " + locale);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Money: minor units with a currency")
+    void money() {
+        assertEquals("£2.35", Money.of(235, "GBP").format(Locale.UK));
+        assertEquals("1.234,56\u00a0€", Money.of(123_456, "EUR").format(Locale.GERMANY));
+        assertEquals(0, Money.of(235, "JPY").fractionDigits());
+        assertEquals(Money.of(300, "EUR"), Money.of(100, "EUR").plus(Money.of(200, "EUR")));
+        assertThrows(IllegalArgumentException.class, () -> Money.of(1, "GBP").plus(Money.of(1, "EUR")));
+        assertThrows(IllegalArgumentException.class, () -> Money.of(1, "XYZ"));
+    }
+
+    @Test
+    @DisplayName("Formatters are cached per currency and locale, for a bounded number of locales")
+    void cacheIsBounded() {
+        assertSame(MoneyFormat.of("EUR", Locale.GERMANY), MoneyFormat.of("EUR", Locale.GERMANY));
+        assertEquals(0, MoneyFormat.fractionDigits("JPY"));
+        assertThrows(IllegalArgumentException.class, () -> MoneyFormat.fractionDigits("XYZ"));
+
+        for (int i = 0; i < 2 * MoneyFormat.MAX_LOCALES; i++) {
+            Locale made = new Locale.Builder().setLanguage("en").setRegion("GB").setVariant("x" + i + "abcd").build();
+            assertEquals("£2.35", MoneyFormat.format(235, "GBP", made));
+        }
+        assertTrue(MoneyFormat.cachedLocales() <= MoneyFormat.MAX_LOCALES);
+    }
+}
@@ -16,10 +16,11 @@ const FRUITS = [
 ];
 
 export default function Cart() {
-  const { axiosPrivate, logout, user } = useAuth();
+  const { axiosPrivate, logout, user, token } = useAuth();
   const userId = user?.sub ?? "anon";
 
-  const [items, setItems] = useState([]);
+  const [cart, setCart] = useState({}); // name -> qty
+  const [count, setCount] = useState(0);
   const [bill, setBill] = useState(null);
   const [error, setError] = useState("");
   const [loading, setLoading] = useState(false);
@@ -27,82 +28,110 @@ export default function Cart() {
   // derive fruit quantities
   const qty = useMemo(() => {
     const m = { apple: 0, banana: 0, melon: 0, lime: 0 };
-    for (const it of items) {
-      const k = String(it).toLowerCase();
-      if (m[k] !== undefined) m[k] += 1;
+    for (const [name, n] of Object.entries(cart)) {
+      const k = name.toLowerCase();
+      if (m[k] !== undefined) m[k] = n;
     }
     return m;
-  }, [items]);
+  }, [cart]);
 
-  const loadCart = async () => {
-    const res = await axiosPrivate.get("/api/cart", {
-      headers: { "X-User-Id": userId },
-    });
-    setItems(res.data.cart || []);
-  };
-
-  const calcTotal = async () => {
-    const res = await axiosPrivate.post(
-      "/api/cart/total",
-      {},
-      { headers: { "X-User-Id": userId } }
-    );
-    setBill(res.data);
-  };
-
-  const refreshCartAndBill = async () => {
+  // one round trip: apply the changes and get back the cart with its bill
+  const update = async (ops, failure) => {
     setLoading(true);
     setError("");
     try {
-      await loadCart();
-      await calcTotal();
+      const res = await axiosPrivate.patch(
+        "/api/cart",
+        { ops },
+        { headers: { "X-User-Id": userId } }
+      );
+      setCart(res.data.cart || {});
+      setCount(res.data.count || 0);
+      setBill(res.data.bill);
     } catch {
-      setError("Something went wrong. Please try again.");
+      setError(failure);
     } finally {
       setLoading(false);
     }
   };
 
-  const addOne = async (name) => {
-    try {
-      await axiosPrivate.post(
-        "/api/cart/items",
-        { item: name },
-        { headers: { "X-User-Id": userId } }
-      );
-      await refreshCartAndBill();
-    } catch {
-      setError("Failed to add item");
-    }
-  };
+  const refreshCartAndBill = () =>
+    update([], "Something went wrong. Please try again.");
 
-  const removeOne = async (name) => {
-    try {
-      await axiosPrivate.delete(`/api/cart/items/${encodeURIComponent(name)}`, {
-        headers: { "X-User-Id": userId },
-      });
-      await refreshCartAndBill();
-    } catch {
-      setError("Failed to remove item");
-    }
-  };
+  const addOne = (name) =>
+    update([{ op: "add", item: name }], "Failed to add item");
 
-  const clearCart = async () => {
-    try {
-      await axiosPrivate.delete("/api/cart", {
-        headers: { "X-User-Id": userId },
-      });
-      await refreshCartAndBill();
-    } catch {
-      setError("Failed to clear cart");
-    }
-  };
+  const removeOne = (name) =>
+    update([{ op: "remove", item: name }], "Failed to remove item");
+
+  const clearCart = () => update([{ op: "clear" }], "Failed to clear cart");
 
   useEffect(() => {
     refreshCartAndBill();
     // eslint-disable-next-line react-hooks/exhaustive-deps
   }, []);
 
+  // live updates (e.g. the same cart open on another device), instead of polling.
+  // fetch rather than EventSource, which cannot send the Authorization header.
+  useEffect(() => {
+    const ctrl = new AbortController();
+    const apply = (delta) => {
+      setCart((prev) => {
+        const next = delta.full ? {} : { ...prev };
+        for (const name of delta.removed) delete next[name];
+        for (const line of delta.lines) next[line.item] = line.qty;
+        return next;
+      });
+      setCount(delta.count);
+      setBill((prev) => {
+        const lines = new Map((delta.full ? [] : prev?.lines ?? []).map((l) => [l.item, l]));
+        for (const name of delta.removed) lines.delete(name);
+        for (const line of delta.lines) lines.set(line.item, line);
+        return {
+          ...prev,
+          currency: delta.currency,
+          totalPence: delta.totalPence,
+          totalFormatted: delta.totalFormatted,
+          lines: [...lines.values()],
+        };
+      });
+    };
+    (async () => {
+      while (!ctrl.signal.aborted) {
+        try {
+          const res = await fetch("/api/cart/events", {
+            headers: { Authorization: `Bearer ${token}`, "X-User-Id": userId },
+            signal: ctrl.signal,
+          });
+          if (res.status === 401) return logout();
+          const reader = res.body.pipeThrough(new TextDecoderStream()).getReader();
+          let buf = "";
+          for (;;) {
+            const { value, done } = await reader.read();
+            if (done) break;
+            buf += value;
+            let end;
+            while ((end = buf.indexOf("\n\n")) >= 0) {
+              const data = buf
+                .slice(0, end)
+                .split("\n")
+                .filter((l) => l.startsWith("data:"))
+                .map((l) => l.slice(5))
+                .join("\n");
+              buf = buf.slice(end + 2);
+              if (data) apply(JSON.parse(data));
+            }
+          }
+        } catch {
+          if (ctrl.signal.aborted) return;
+        }
+        await new Promise((r) => setTimeout(r, 2000)); // reconnect; the first event resyncs everything
+      }
+    })();
+    return () => ctrl.abort();
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [token, userId]);
+
   return (
     <div className="cart-page">
       <div className="cart-header">
@@ -150,7 +179,7 @@ export default function Cart() {
           ))}
         </div>
         <div className="card-footer">
-          <button onClick={clearCart} disabled={loading || items.length === 0}>
+          <button onClick={clearCart} disabled={loading || count === 0}>
             Clear cart
           </button>
           <span>{loading ? "Updating…" : "Click + / − to update quantities."}</span>
@@ -158,7 +187,7 @@ export default function Cart() {
       </section>
 
       {/* Bill */}
-      {bill && items.length > 0 && (
+      {bill && count > 0 && (
         <section className="card bill-card">
           <h3>Bill</h3>
           <div className="table-wrap">